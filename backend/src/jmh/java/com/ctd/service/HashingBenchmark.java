@@ -0,0 +1,134 @@
+package com.ctd.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HashingService contro il percorso precedente: MessageDigest.getInstance per
+ * ogni hash, String.getBytes e hex con String.format("%02x").
+ * Con -prof gc si vedono anche le allocazioni per operazione.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HashingBenchmark {
+
+    @Param({"64", "4096", "262144"})
+    private int length;
+
+    private final HashingService hashingService = new HashingService();
+
+    private String text;
+    private byte[] bytes;
+    private ByteBuffer direct;
+    private Map<String, Object> document;
+
+    @Setup
+    public void setUp() {
+        // Testo misto: ASCII, caratteri a due e tre byte e coppie surrogate
+        StringBuilder builder = new StringBuilder(length);
+        String alphabet = "Protocollo clinico à é — 𝄞 ";
+        while (builder.length() < length) {
+            builder.append(alphabet);
+        }
+        text = builder.substring(0, length);
+        if (Character.isHighSurrogate(text.charAt(length - 1))) {
+            text = text.substring(0, length - 1) + 'x';
+        }
+        bytes = text.getBytes(StandardCharsets.UTF_8);
+        direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+
+        document = new LinkedHashMap<>();
+        document.put("title", "Protocol");
+        document.put("version", 3);
+        document.put("sections", List.of(Map.of("type", "STRING", "value", text)));
+    }
+
+    @Benchmark
+    public String legacyString() throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return formatHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Benchmark
+    public String hashString() {
+        return hashingService.hash(text);
+    }
+
+    @Benchmark
+    public String legacyBytes() throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        return formatHex(digest.digest(bytes));
+    }
+
+    @Benchmark
+    public String hashBytes() {
+        return hashingService.hash(bytes);
+    }
+
+    // Buffer diretto: prima andava copiato in un byte[] sull'heap
+    @Benchmark
+    public String legacyDirectBuffer() throws NoSuchAlgorithmException {
+        byte[] copy = new byte[direct.remaining()];
+        direct.duplicate().get(copy);
+        return formatHex(MessageDigest.getInstance("SHA-256").digest(copy));
+    }
+
+    @Benchmark
+    public String hashDirectBuffer() {
+        return hashingService.hash(direct);
+    }
+
+    @Benchmark
+    public String legacyStream() throws IOException, NoSuchAlgorithmException {
+        return formatHex(MessageDigest.getInstance("SHA-256").digest(new ByteArrayInputStream(bytes).readAllBytes()));
+    }
+
+    @Benchmark
+    public String hashStream() throws IOException {
+        return hashingService.hash(new ByteArrayInputStream(bytes));
+    }
+
+    @Benchmark
+    public String legacyCanonical() throws NoSuchAlgorithmException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        CanonicalJson.update(digest, document);
+        return formatHex(digest.digest());
+    }
+
+    @Benchmark
+    public String hashCanonical() {
+        return hashingService.hashCanonical(document);
+    }
+
+    private static String formatHex(byte[] hash) {
+        StringBuilder result = new StringBuilder();
+        for (byte b : hash) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+}
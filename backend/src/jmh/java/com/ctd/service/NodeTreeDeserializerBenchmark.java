@@ -0,0 +1,139 @@
+package com.ctd.service;
+
+import com.ctd.xanadu.content.Author;
+import com.ctd.xanadu.content.Content;
+import com.ctd.xanadu.node.DocumentNode;
+import com.ctd.xanadu.node.Node;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * NodeTreeDeserializer contro il percorso precedente: readValue in una Map e
+ * discesa ricorsiva. I Content si creano allo stesso modo (restoreContent),
+ * quindi la differenza e' solo nel parsing. Forme: root con tutti i nodi come
+ * figli, albero con fanout 8 e catene profonde MAX_DEPTH del serializer (50).
+ * Con -prof gc si vedono le mappe intermedie del percorso precedente.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NodeTreeDeserializerBenchmark {
+
+    private static final int CHAIN = 50;
+
+    @Param({"1000", "10000"})
+    private int nodes;
+
+    @Param({"wide", "fanout", "chains"})
+    private String shape;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final XanaduService xanaduService = new XanaduService(objectMapper);
+    private final NodeTreeDeserializer deserializer = new NodeTreeDeserializer(objectMapper, xanaduService);
+    private final Author defaultAuthor = xanaduService.createAuthor("benchmark");
+
+    private String json;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        deserializer.init();
+        List<Map<String, Object>> all = new ArrayList<>(nodes);
+        Map<String, Object> root = node(all);
+        switch (shape) {
+            case "wide":
+                while (all.size() < nodes) {
+                    children(root).add(node(all));
+                }
+                break;
+            case "fanout":
+                // In ampiezza: ogni nodo riceve fino a 8 figli, nell'ordine in cui e' stato creato
+                for (int parent = 0; all.size() < nodes; parent++) {
+                    for (int i = 0; i < 8 && all.size() < nodes; i++) {
+                        children(all.get(parent)).add(node(all));
+                    }
+                }
+                break;
+            default:
+                while (all.size() < nodes) {
+                    Map<String, Object> parent = root;
+                    for (int i = 1; i < CHAIN && all.size() < nodes; i++) {
+                        Map<String, Object> child = node(all);
+                        children(parent).add(child);
+                        parent = child;
+                    }
+                }
+        }
+        json = objectMapper.writeValueAsString(root);
+    }
+
+    @Benchmark
+    public Node tokenStream() {
+        return deserializer.deserialize(json, defaultAuthor);
+    }
+
+    @Benchmark
+    public Node mapBased() throws JsonProcessingException {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> tree = objectMapper.readValue(json, Map.class);
+        return mapBased(tree, null);
+    }
+
+    // Il percorso precedente, con la stessa creazione dei Content
+    @SuppressWarnings("unchecked")
+    private Node mapBased(Map<String, Object> json, Node parent) {
+        Map<String, Object> contentData = (Map<String, Object>) json.get("content");
+        Content<?> content = xanaduService.restoreContent((String) contentData.get("type"),
+            contentData.get("value"), (String) contentData.get("authorName"), defaultAuthor);
+        DocumentNode.builder builder = DocumentNode.builder.get().withContent(content);
+        Node node = parent != null ? builder.withParent(parent).build() : builder.detached().build();
+
+        Object children = json.get("children");
+        if (children instanceof List) {
+            for (Map<String, Object> child : (List<Map<String, Object>>) children) {
+                mapBased(child, node).content().link(content);
+            }
+        }
+        return node;
+    }
+
+    private static Map<String, Object> node(List<Map<String, Object>> all) {
+        int n = all.size();
+        Map<String, Object> content = new LinkedHashMap<>();
+        content.put("type", n % 3 == 0 ? "IntegerContent" : "StringContent");
+        content.put("value", n % 3 == 0 ? (Object) n : "section " + n);
+        content.put("authorName", "author " + (n % 16));
+        content.put("version", Map.of("hasParent", false));
+        content.put("links", List.of());
+
+        Map<String, Object> node = new LinkedHashMap<>();
+        node.put("content", content);
+        node.put("children", new ArrayList<Map<String, Object>>());
+        all.add(node);
+        return node;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> children(Map<String, Object> node) {
+        return (List<Map<String, Object>>) node.get("children");
+    }
+}
@@ -0,0 +1,76 @@
+package com.ctd.xanadu.content;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/*
+ * A hub content linked from 1k-100k others. linkAll measures the de-dup
+ * check on every add (quadratic with the old list scan), relinkAll the
+ * lookup of links already present, and iterate the walk over the hub's
+ * links; run with -prof gc to see that iterating allocates nothing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LinkStoreBenchmark {
+
+	@Param({ "1000", "10000", "100000" })
+	private int links;
+
+	private final Author author = Author.getNewAuthor("benchmark");
+	private List<StringContent> spokes;
+	private StringContent hub;
+
+	@Setup
+	public void setUp() {
+		spokes = new ArrayList<>(links);
+		for (int i = 0; i < links; i++) {
+			spokes.add(StringContent.builder.get().withContent("spoke " + i).withAuthor(author).build());
+		}
+		hub = linkAll();
+	}
+
+	@Benchmark
+	public StringContent linkAll() {
+		StringContent target = StringContent.builder.get().withContent("hub").withAuthor(author).build();
+		for (StringContent spoke : spokes) {
+			target.link(spoke);
+		}
+		return target;
+	}
+
+	@Benchmark
+	public int relinkAll() {
+		for (StringContent spoke : spokes) {
+			hub.link(spoke);
+		}
+		return hub.links().size();
+	}
+
+	@Benchmark
+	public int iterate() {
+		int linked = 0;
+		for (Link<?, ?> link : hub.links()) {
+			if (link.first() == hub) {
+				linked++;
+			}
+		}
+		return linked;
+	}
+}
@@ -0,0 +1,83 @@
+package com.ctd.xanadu.node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ctd.xanadu.content.Author;
+import com.ctd.xanadu.content.StringContent;
+
+/*
+ * Wide nodes: one parent with 10k-100k children, each a leaf. buildWide is
+ * dominated by the per-leaf footprint, so run it with -prof gc to see the
+ * bytes allocated per node; addDuplicate and iterate measure the lookup and
+ * the snapshot walk on the wide parent.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChildVectorBenchmark {
+
+	@Param({ "10000", "100000" })
+	private int children;
+
+	private final Author author = Author.getNewAuthor("benchmark");
+	private StringContent content;
+	private DocumentNode wide;
+	private List<DocumentNode> leaves;
+
+	@Setup
+	public void setUp() {
+		content = StringContent.builder.get().withContent("section").withAuthor(author).build();
+		wide = buildWide();
+		leaves = new ArrayList<>(children);
+		for (Node child : wide.children()) {
+			leaves.add((DocumentNode) child);
+		}
+	}
+
+	@Benchmark
+	public DocumentNode buildWide() {
+		DocumentNode parent = DocumentNode.builder.get().withContent(content).detached().build();
+		for (int i = 0; i < children; i++) {
+			DocumentNode.builder.get().withContent(content).withParent(parent).build();
+		}
+		return parent;
+	}
+
+	@Benchmark
+	public int addDuplicate() {
+		int size = 0;
+		for (int i = 0; i < children; i += 97) {
+			wide.addChild(leaves.get(i));
+			size = wide.children().size();
+		}
+		return size;
+	}
+
+	@Benchmark
+	public int iterate() {
+		int leafCount = 0;
+		for (Node child : wide.children()) {
+			if (child.children().contains(RootNode.getInstance())) {
+				leafCount++;
+			}
+		}
+		return leafCount;
+	}
+}
@@ -37,14 +37,17 @@ public class CorsConfig {
             "Accept",
             "Origin",
             "Access-Control-Request-Method",
-            "Access-Control-Request-Headers"
+            "Access-Control-Request-Headers",
+            "If-None-Match"
         ));
 
         // Exposed headers (visible to browser JS)
         configuration.setExposedHeaders(Arrays.asList(
             "Access-Control-Allow-Origin",
             "Access-Control-Allow-Credentials",
-            "Authorization"
+            "Authorization",
+            "ETag",
+            "X-Next-Cursor"
         ));
 
         // Allow credentials (cookies, authorization headers)
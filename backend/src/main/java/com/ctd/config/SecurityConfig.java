@@ -1,5 +1,6 @@
 package com.ctd.config;
 
+import com.ctd.model.Role;
 import com.ctd.security.JwtAuthenticationFilter;
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
@@ -65,6 +66,7 @@ public class SecurityConfig {
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/api/verification/**").permitAll()
                 .requestMatchers("/actuator/health").permitAll()
+                .requestMatchers("/actuator/**").hasRole(Role.ADMIN.name())
                 .requestMatchers("/api/documents/**").authenticated()
                 .anyRequest().authenticated()
             )
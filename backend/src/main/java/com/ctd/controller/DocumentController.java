@@ -1,54 +1,85 @@
 package com.ctd.controller;
 
+import com.ctd.dto.projection.DocumentSummary;
+import com.ctd.dto.projection.VersionLineage;
+import com.ctd.dto.projection.VersionSummary;
+import com.ctd.dto.projection.VersionTag;
 import com.ctd.dto.request.AddSectionRequest;
 import com.ctd.dto.request.CreateDocumentRequest;
+import com.ctd.dto.request.KeysetCursor;
 import com.ctd.dto.request.TranscludeRequest;
 import com.ctd.dto.request.UpdateDocumentRequest;
 import com.ctd.dto.response.DocumentResponse;
+import com.ctd.exception.BadRequestException;
 import com.ctd.model.Document;
 import com.ctd.model.DocumentVersion;
 import com.ctd.model.Transclusion;
 import com.ctd.model.User;
-import com.ctd.repository.DocumentRepository;
-import com.ctd.repository.DocumentVersionRepository;
 import com.ctd.repository.UserRepository;
-import com.ctd.service.IotaService;
+import com.ctd.service.ContentNodeStore;
+import com.ctd.service.NodeArenaEncoder;
+import com.ctd.service.NodeTreeDeserializer;
+import com.ctd.service.NodeTreeSerializer;
+import com.ctd.service.NodeTreeSerializer.SerializedTree;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ctd.security.UserPrincipal;
 import com.ctd.service.DocumentService;
+import com.ctd.service.VersionDiffService;
+import com.ctd.service.VersionDiffService.VersionDiff;
+import com.ctd.service.HashingService;
+import com.ctd.service.VersionSnapshotCache;
 import com.ctd.service.XanaduService;
 import com.ctd.xanadu.content.Author;
 import com.ctd.xanadu.node.Node;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 @RestController
 @RequestMapping("/api/documents")
 @RequiredArgsConstructor
 public class DocumentController {
 
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int DEFAULT_HISTORY_SIZE = 100;
+    private static final int MAX_HISTORY_SIZE = 1000;
+    private static final int DEFAULT_TREE_SIZE = 500;
+    private static final int MAX_TREE_SIZE = 2000;
+    private static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     private final DocumentService documentService;
+    private final VersionDiffService versionDiffService;
     private final UserRepository userRepository;
     private final XanaduService xanaduService;
-    private final IotaService iotaService;
-    private final DocumentVersionRepository versionRepository;
-    private final DocumentRepository documentRepository;
     private final ObjectMapper objectMapper;
+    private final NodeTreeSerializer nodeTreeSerializer;
+    private final NodeTreeDeserializer nodeTreeDeserializer;
+    private final ContentNodeStore contentNodeStore;
+    private final NodeArenaEncoder nodeArenaEncoder;
+    private final VersionSnapshotCache versionSnapshotCache;
+    private final HashingService hashingService;
 
     @PostMapping
     @PreAuthorize("hasAnyRole('SPONSOR', 'RESEARCHER', 'HOSPITAL')")
     public ResponseEntity<DocumentResponse> createDocument(
             @Valid @RequestBody CreateDocumentRequest request,
+            @RequestParam(required = false) Set<String> include,
             @AuthenticationPrincipal UserPrincipal currentUser) {
 
         User user = userRepository.findById(currentUser.getId())
@@ -61,13 +92,25 @@ public class DocumentController {
             user
         );
 
-        return ResponseEntity.ok(toResponse(document));
+        return ResponseEntity.ok(toResponse(document.getId(), includesContent(include)));
     }
 
+    /**
+     * Dettaglio documento. Di default solo i metadati (nessuna lettura di JSONB);
+     * con include=content anche il contentJson della versione corrente, scritto
+     * cosi' com'e' senza passare da mappe. Per la struttura in streaming vedi
+     * /versions/{versionId}/structure.
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<DocumentResponse> getDocument(@PathVariable UUID id) {
-        Document document = documentService.getDocumentById(id);
-        return ResponseEntity.ok(toResponse(document));
+    public ResponseEntity<DocumentResponse> getDocument(
+            @PathVariable UUID id,
+            @RequestParam(required = false) Set<String> include,
+            WebRequest webRequest) {
+        if (notModified(webRequest, documentETag(documentService.getCurrentVersionTag(id)))) {
+            return null;
+        }
+
+        return ResponseEntity.ok(toResponse(id, includesContent(include)));
     }
 
     @PutMapping("/{id}")
@@ -75,6 +118,7 @@ public class DocumentController {
     public ResponseEntity<DocumentResponse> updateDocument(
             @PathVariable UUID id,
             @Valid @RequestBody UpdateDocumentRequest request,
+            @RequestParam(required = false) Set<String> include,
             @AuthenticationPrincipal UserPrincipal currentUser) {
 
         User user = userRepository.findById(currentUser.getId())
@@ -88,56 +132,196 @@ public class DocumentController {
             user
         );
 
-        return ResponseEntity.ok(toResponse(document));
+        return ResponseEntity.ok(toResponse(document.getId(), includesContent(include)));
     }
 
+    /**
+     * Elenco documenti paginato (keyset, dal piu' recente), senza contentJson.
+     * Se ci sono altre pagine il cursore per la successiva e' nell'header X-Next-Cursor.
+     */
     @GetMapping
-    public ResponseEntity<List<DocumentResponse>> getMyDocuments(
-            @AuthenticationPrincipal UserPrincipal currentUser) {
+    public ResponseEntity<List<DocumentSummary>> getMyDocuments(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int limit) {
 
-        User user = userRepository.findById(currentUser.getId())
-            .orElseThrow(() -> new RuntimeException("User not found"));
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        KeysetCursor after = cursor != null && !cursor.isEmpty() ? KeysetCursor.decode(cursor) : null;
 
-        List<Document> documents = documentService.getDocumentsAccessibleByUser(user);
+        // Un elemento in piu' per sapere se esiste una pagina successiva
+        List<DocumentSummary> page = documentService.listDocuments(after, pageSize + 1);
+        if (page.size() <= pageSize) {
+            return ResponseEntity.ok(page);
+        }
 
-        return ResponseEntity.ok(
-            documents.stream()
-                .map(this::toResponse)
-                .collect(Collectors.toList())
-        );
+        page = page.subList(0, pageSize);
+        DocumentSummary last = page.get(pageSize - 1);
+        return ResponseEntity.ok()
+            .header(NEXT_CURSOR_HEADER, new KeysetCursor(last.getCreatedAt(), last.getId()).encode())
+            .body(page);
     }
 
+    /**
+     * Version history paginata, dalla versione piu' recente, senza contentJson.
+     * fromVersion/toVersion restringono il range (inclusivo); se ci sono altre
+     * versioni l'header X-Next-Cursor porta il numero da passare come cursor.
+     * L'ETag deriva dalle righe della pagina: cambia anche quando il worker
+     * notarizza una versione piu' vecchia di quella corrente.
+     */
     @GetMapping("/{id}/versions")
-    public ResponseEntity<List<DocumentVersion>> getVersionHistory(@PathVariable UUID id) {
-        List<DocumentVersion> versions = documentService.getVersionHistory(id);
-        return ResponseEntity.ok(versions);
+    public ResponseEntity<List<VersionSummary>> getVersionHistory(
+            @PathVariable UUID id,
+            @RequestParam(required = false) Integer fromVersion,
+            @RequestParam(required = false) Integer toVersion,
+            @RequestParam(required = false) Integer cursor,
+            @RequestParam(defaultValue = "" + DEFAULT_HISTORY_SIZE) int limit,
+            WebRequest webRequest) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_HISTORY_SIZE));
+        int from = fromVersion != null ? fromVersion : 1;
+        int to = toVersion != null ? toVersion : Integer.MAX_VALUE;
+        if (cursor != null) {
+            to = Math.min(to, cursor - 1);
+        }
+
+        List<VersionSummary> page = documentService.getVersionHistory(id, from, to, pageSize + 1);
+        if (page.isEmpty()) {
+            // Documento inesistente: 404 invece di una pagina vuota
+            documentService.getCurrentVersionTag(id);
+        }
+        if (notModified(webRequest, historyETag(page))) {
+            return null;
+        }
+        if (page.size() <= pageSize) {
+            return ResponseEntity.ok(page);
+        }
+
+        page = page.subList(0, pageSize);
+        return ResponseEntity.ok()
+            .header(NEXT_CURSOR_HEADER, String.valueOf(page.get(pageSize - 1).getVersionNumber()))
+            .body(page);
     }
 
+    /**
+     * Struttura di una versione. Di default restituisce il contentJson salvato
+     * cosi' com'e'; con view=materialized ricostruisce e riserializza il Node tree,
+     * letto da un NodeArena off-heap invece che da DocumentNode sull'heap.
+     * Entrambe le viste leggono prima dalla snapshot cache su disco, senza
+     * caricare il contenuto dal database.
+     * L'ETag deriva dal contentHash, quindi le richieste condizionali ricevono 304.
+     */
     @GetMapping("/{id}/versions/{versionId}/structure")
-    public ResponseEntity<Map<String, Object>> getNodeStructure(
+    public ResponseEntity<StreamingResponseBody> getNodeStructure(
             @PathVariable UUID id,
-            @PathVariable UUID versionId) {
+            @PathVariable UUID versionId,
+            @RequestParam(required = false) String view,
+            WebRequest webRequest) {
 
-        DocumentVersion version = documentService.getVersion(versionId);
+        VersionTag tag = documentService.getVersionTag(versionId);
 
         // Verifica che la versione appartenga al documento
-        if (!version.getDocument().getId().equals(id)) {
-            throw new IllegalArgumentException("Version does not belong to document");
+        if (!tag.getDocumentId().equals(id)) {
+            throw new BadRequestException("Version does not belong to document");
         }
 
-        // Deserializza il Node tree dal JSON
-        Author defaultAuthor = xanaduService.createAuthor(version.getAuthor().getName());
-        Node rootNode = xanaduService.deserializeNodeTree(version.getContentJson(), defaultAuthor);
+        // Il check condizionale avviene prima di caricare il JSONB
+        boolean materialized = "materialized".equalsIgnoreCase(view);
+        String eTag = materialized ? tag.getContentHash() + "-materialized" : tag.getContentHash();
+        if (notModified(webRequest, eTag)) {
+            return null;
+        }
 
-        // Serializza con ricorsione completa
-        Map<String, Object> structure = xanaduService.serializeNodeTree(rootNode);
+        VersionSnapshotCache.Snapshot snapshot = versionSnapshotCache.get(tag);
 
-        return ResponseEntity.ok(structure);
+        if (!materialized && snapshot != null && snapshot.isExact()) {
+            // L'arena riscrive esattamente i byte salvati
+            Node rootNode = snapshot.root(name -> name != null ? xanaduService.createAuthor(name) : null);
+            return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> nodeTreeSerializer.write(rootNode, out));
+        }
+
+        String defaultAuthor = tag.getAuthorName();
+        Function<String, Author> authors = name -> xanaduService.createAuthor(name != null ? name : defaultAuthor);
+        if (materialized && snapshot != null && snapshot.isEncoded()) {
+            Node rootNode = snapshot.root(authors);
+            return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> nodeTreeSerializer.write(rootNode, out));
+        }
+
+        // Dopo un miss della cache il contenuto e' gia' stato letto: non si rilegge dal database
+        byte[] stored = snapshot != null && snapshot.storedJson() != null
+            ? snapshot.storedJson()
+            : documentService.getVersionContent(versionId).getContentJson().getBytes(StandardCharsets.UTF_8);
+
+        if (!materialized) {
+            // Nessuna trasformazione: i byte salvati vanno direttamente in response
+            return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> out.write(stored));
+        }
+
+        // Codifica il tree nell'arena: nessun nodo viene agganciato al RootNode
+        Node rootNode = nodeArenaEncoder.encode(stored).root(authors);
+
+        // Serializza in streaming direttamente sulla response
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(out -> nodeTreeSerializer.write(rootNode, out));
+    }
+
+    @GetMapping("/{id}/versions/{versionId}/ancestors")
+    public ResponseEntity<List<VersionLineage>> getAncestors(
+            @PathVariable UUID id,
+            @PathVariable UUID versionId,
+            @RequestParam(defaultValue = "" + Integer.MAX_VALUE) int depth) {
+        return ResponseEntity.ok(documentService.getAncestors(id, versionId, Math.max(0, depth)));
+    }
+
+    @GetMapping("/{id}/versions/{versionId}/descendants")
+    public ResponseEntity<List<VersionLineage>> getDescendants(
+            @PathVariable UUID id,
+            @PathVariable UUID versionId,
+            @RequestParam(defaultValue = "" + Integer.MAX_VALUE) int depth) {
+        return ResponseEntity.ok(documentService.getDescendants(id, versionId, Math.max(0, depth)));
+    }
+
+    /**
+     * Antenato comune e percorso tra due versioni (solo id, per merge e diff)
+     */
+    @GetMapping("/{id}/versions/lineage")
+    public ResponseEntity<Map<String, Object>> getLineage(
+            @PathVariable UUID id,
+            @RequestParam UUID from,
+            @RequestParam UUID to) {
+        return ResponseEntity.ok(documentService.getLineage(id, from, to));
+    }
+
+    /**
+     * Edit script tra due versioni del documento, calcolato lato server e scritto
+     * in streaming. Le versioni sono immutabili: l'ETag e' la coppia di contentHash.
+     */
+    @GetMapping("/{id}/diff")
+    public ResponseEntity<StreamingResponseBody> diffVersions(
+            @PathVariable UUID id,
+            @RequestParam UUID from,
+            @RequestParam UUID to,
+            WebRequest webRequest) {
+        VersionDiff diff = versionDiffService.diff(id, from, to);
+        if (notModified(webRequest, diff.getETag())) {
+            return null;
+        }
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(diff::writeTo);
     }
 
     @GetMapping("/{id}/version-tree")
-    public ResponseEntity<Map<String, Object>> getVersionTree(@PathVariable UUID id) {
-        Map<String, Object> tree = documentService.getVersionTree(id);
+    public ResponseEntity<Map<String, Object>> getVersionTree(
+            @PathVariable UUID id,
+            @RequestParam(defaultValue = "" + Integer.MAX_VALUE) int depth,
+            @RequestParam(defaultValue = "" + DEFAULT_TREE_SIZE) int limit) {
+        Map<String, Object> tree = documentService.getVersionTree(
+            id, Math.max(0, depth), Math.max(1, Math.min(limit, MAX_TREE_SIZE)));
         return ResponseEntity.ok(tree);
     }
 
@@ -184,7 +368,8 @@ public class DocumentController {
         }
 
         // Estrai tutti i link dal contentJson ricorsivamente
-        List<Map<String, Object>> allLinks = extractLinksRecursive(currentVersion.getContentJson());
+        List<Map<String, Object>> allLinks = extractLinksRecursive(readContentJson(
+            documentService.getVersionContent(currentVersion.getId()).getContentJson()));
 
         return ResponseEntity.ok(Map.of(
             "documentId", id,
@@ -223,6 +408,7 @@ public class DocumentController {
     public ResponseEntity<DocumentResponse> addSection(
             @PathVariable UUID id,
             @Valid @RequestBody AddSectionRequest request,
+            @RequestParam(required = false) Set<String> include,
             @AuthenticationPrincipal UserPrincipal currentUser) {
 
         User user = userRepository.findById(currentUser.getId())
@@ -235,47 +421,32 @@ public class DocumentController {
             throw new IllegalStateException("Document has no current version");
         }
 
-        // Deserializza il Node tree corrente
+        // Ricostruisce il Node tree corrente: da content_nodes con gli hash dei sottoalberi, altrimenti dal JSON
         Author xanaduAuthor = xanaduService.createAuthor(user.getName());
-        Node rootNode = xanaduService.deserializeNodeTree(currentVersion.getContentJson(), xanaduAuthor);
+        Node rootNode = currentVersion.getRootNodeHash() != null
+            ? contentNodeStore.restore(currentVersion.getRootNodeHash(), xanaduAuthor)
+            : nodeTreeDeserializer.deserialize(
+                documentService.getVersionContent(currentVersion.getId()).getContentJson(), xanaduAuthor);
 
         // Aggiungi nuova sezione con tipo specificato
         xanaduService.addTypedSection(rootNode, request.getContentType(), request.getValue(), xanaduAuthor);
 
-        // Re-serializza
-        Map<String, Object> newContentJson = xanaduService.serializeNodeTree(rootNode);
-
-        // Calcola hash e notarizza
-        String jsonString = serializeToString(newContentJson);
-        String contentHash = iotaService.calculateHash(jsonString);
-        String iotaTxId = iotaService.notarize(contentHash, "Added section: " + request.getContentType());
-
-        // Crea nuova versione
-        int newVersionNumber = currentVersion.getVersionNumber() + 1;
-        DocumentVersion newVersion = DocumentVersion.builder()
-            .document(document)
-            .versionNumber(newVersionNumber)
-            .contentJson(newContentJson)
-            .contentHash(contentHash)
-            .author(user)
-            .parentVersion(currentVersion)
-            .iotaTxId(iotaTxId)
-            .build();
-
-        newVersion = versionRepository.save(newVersion);
+        // Re-serializza calcolando l'hash nello stesso passaggio
+        SerializedTree serialized = nodeTreeSerializer.serialize(rootNode);
 
-        // Aggiorna current version del documento
-        document.setCurrentVersion(newVersion);
-        documentRepository.save(document);
+        // Crea nuova versione come current version; la notarizzazione parte in background
+        documentService.appendVersion(document, currentVersion, serialized, user,
+            "Added section: " + request.getContentType());
 
-        return ResponseEntity.ok(toResponse(document));
+        return ResponseEntity.ok(toResponse(document.getId(), includesContent(include)));
     }
 
-    private String serializeToString(Map<String, Object> json) {
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readContentJson(String json) {
         try {
-            return objectMapper.writeValueAsString(json);
-        } catch (Exception e) {
-            throw new RuntimeException("Failed to serialize JSON", e);
+            return objectMapper.readValue(json, Map.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to parse content JSON", e);
         }
     }
 
@@ -292,22 +463,57 @@ public class DocumentController {
         return ResponseEntity.noContent().build();
     }
 
-    private DocumentResponse toResponse(Document doc) {
-        DocumentVersion currentVersion = doc.getCurrentVersion();
+    /**
+     * Valuta If-None-Match contro l'ETag dato e lo imposta sulla response.
+     * Un ETag null (documento senza versione corrente) disattiva il check.
+     */
+    private boolean notModified(WebRequest webRequest, String eTag) {
+        return eTag != null && webRequest.checkNotModified(eTag);
+    }
+
+    private String documentETag(VersionTag tag) {
+        if (tag.getVersionId() == null) {
+            return null;
+        }
+        // Lo stato cambia quando il worker completa la notarizzazione (iotaTxId)
+        return tag.getVersionId() + "-" + tag.getContentHash() + "-" + tag.getNotarizationStatus();
+    }
+
+    // Righe lette (compresa quella in piu' per il cursore) con i campi che il worker aggiorna
+    private String historyETag(List<VersionSummary> page) {
+        StringBuilder rows = new StringBuilder(page.size() * 80);
+        for (VersionSummary version : page) {
+            rows.append(version.getId()).append(':')
+                .append(version.getNotarizationStatus()).append(':')
+                .append(version.getIotaTxId()).append(';');
+        }
+        return "versions-" + hashingService.hash(rows.toString());
+    }
+
+    private static boolean includesContent(Set<String> include) {
+        return include != null && include.contains("content");
+    }
+
+    private DocumentResponse toResponse(UUID documentId, boolean includeContent) {
+        DocumentSummary summary = documentService.getDocumentSummary(documentId);
+        String contentJson = includeContent && summary.getCurrentVersionId() != null
+            ? documentService.getVersionContent(summary.getCurrentVersionId()).getContentJson()
+            : null;
 
         return DocumentResponse.builder()
-            .id(doc.getId())
-            .title(doc.getTitle())
-            .docType(doc.getDocType())
-            .createdBy(doc.getCreatedBy().getId())
-            .createdByName(doc.getCreatedBy().getName())
-            .currentVersionId(currentVersion != null ? currentVersion.getId() : null)
-            .currentVersionNumber(currentVersion != null ? currentVersion.getVersionNumber() : null)
-            .contentJson(currentVersion != null ? currentVersion.getContentJson() : null)
-            .contentHash(currentVersion != null ? currentVersion.getContentHash() : null)
-            .iotaTxId(currentVersion != null ? currentVersion.getIotaTxId() : null)
-            .createdAt(doc.getCreatedAt())
-            .updatedAt(doc.getUpdatedAt())
+            .id(summary.getId())
+            .title(summary.getTitle())
+            .docType(summary.getDocType())
+            .createdBy(summary.getCreatedBy())
+            .createdByName(summary.getCreatedByName())
+            .currentVersionId(summary.getCurrentVersionId())
+            .currentVersionNumber(summary.getCurrentVersionNumber())
+            .contentJson(contentJson)
+            .contentHash(summary.getContentHash())
+            .iotaTxId(summary.getIotaTxId())
+            .notarizationStatus(summary.getNotarizationStatus())
+            .createdAt(summary.getCreatedAt())
+            .updatedAt(summary.getUpdatedAt())
             .build();
     }
 }
@@ -0,0 +1,40 @@
+package com.ctd.controller;
+
+import com.ctd.service.IntegrityScanService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * /actuator/integrity: GET stato, POST avvio (resume=true per riprendere), DELETE stop
+ */
+@Component
+@Endpoint(id = "integrity")
+@RequiredArgsConstructor
+public class IntegrityScanEndpoint {
+
+    private final IntegrityScanService integrityScanService;
+
+    @ReadOperation
+    public Map<String, Object> status() {
+        return integrityScanService.status();
+    }
+
+    @WriteOperation
+    public Map<String, Object> start(@Nullable Boolean resume) {
+        integrityScanService.startAsync(Boolean.TRUE.equals(resume));
+        return integrityScanService.status();
+    }
+
+    @DeleteOperation
+    public Map<String, Object> stop() {
+        integrityScanService.requestStop();
+        return integrityScanService.status();
+    }
+}
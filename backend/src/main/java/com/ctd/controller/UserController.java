@@ -1,6 +1,6 @@
 package com.ctd.controller;
 
-import com.ctd.model.Document;
+import com.ctd.dto.projection.DocumentSummary;
 import com.ctd.model.User;
 import com.ctd.repository.DocumentRepository;
 import com.ctd.repository.DocumentVersionRepository;
@@ -43,12 +43,13 @@ public class UserController {
     }
 
     @GetMapping("/{userId}/documents")
-    public ResponseEntity<List<Document>> getUserDocuments(@PathVariable UUID userId) {
-        User user = userRepository.findById(userId)
-            .orElseThrow(() -> new RuntimeException("User not found"));
+    public ResponseEntity<List<DocumentSummary>> getUserDocuments(@PathVariable UUID userId) {
+        if (!userRepository.existsById(userId)) {
+            throw new RuntimeException("User not found");
+        }
 
-        List<Document> documents = documentRepository.findByCreatedBy(user);
-        return ResponseEntity.ok(documents);
+        // Vista di elenco: una sola query, senza contentJson
+        return ResponseEntity.ok(documentRepository.findSummariesByCreator(userId));
     }
 
     @GetMapping("/{userId}/stats")
@@ -57,7 +58,7 @@ public class UserController {
             .orElseThrow(() -> new RuntimeException("User not found"));
 
         // Conta documenti creati
-        long documentCount = documentRepository.findByCreatedBy(user).size();
+        long documentCount = documentRepository.countByCreatedBy(user);
 
         // Conta versioni authored
         long versionCount = versionRepository.countByAuthor(user);
@@ -1,13 +1,21 @@
 package com.ctd.controller;
 
+import com.ctd.dto.projection.VersionNotary;
+import com.ctd.dto.request.VerifyBatchRequest;
+import com.ctd.dto.request.VerifyProofRequest;
 import com.ctd.dto.response.VerificationResponse;
-import com.ctd.model.DocumentVersion;
-import com.ctd.service.DocumentService;
-import com.ctd.service.IotaService;
+import com.ctd.service.VerificationService;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -15,24 +23,67 @@ import java.util.UUID;
 @RequiredArgsConstructor
 public class VerificationController {
 
-    private final DocumentService documentService;
-    private final IotaService iotaService;
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final VerificationService verificationService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping("/version/{versionId}")
     public ResponseEntity<VerificationResponse> verifyVersion(@PathVariable UUID versionId) {
-        DocumentVersion version = documentService.getVersion(versionId);
+        return ResponseEntity.ok(verificationService.verifyVersion(versionId));
+    }
+
+    /**
+     * Verifica in blocco (per id o per documento); una riga NDJSON per versione,
+     * nell'ordine in cui le verifiche terminano. Gli id inesistenti escono per
+     * primi come {"versionId":..., "status":"NOT_FOUND"}
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<StreamingResponseBody> verifyBatch(@Valid @RequestBody VerifyBatchRequest request) {
+        List<VersionNotary> versions = verificationService.resolve(request);
+        List<UUID> unresolved = verificationService.unresolved(request, versions);
 
-        String iotaTxId = version.getIotaTxId();
-        String storedHash = version.getContentHash();
+        StreamingResponseBody body = out -> {
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+                for (UUID versionId : unresolved) {
+                    generator.writeStartObject();
+                    generator.writeStringField("versionId", versionId.toString());
+                    generator.writeStringField("status", "NOT_FOUND");
+                    generator.writeEndObject();
+                    generator.writeRaw('\n');
+                }
+                verificationService.verifyBatch(versions, new VerificationService.ResultSink() {
+                    @Override
+                    public void accept(VerificationResponse response) throws IOException {
+                        objectMapper.writeValue(generator, response);
+                        generator.writeRaw('\n');
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        generator.flush();
+                    }
+                });
+            }
+        };
+
+        return ResponseEntity.ok()
+            .contentType(NDJSON)
+            .body(body);
+    }
 
-        boolean verified = iotaService.verify(iotaTxId, storedHash);
+    @PostMapping("/proof")
+    public ResponseEntity<VerificationResponse> verifyProof(@Valid @RequestBody VerifyProofRequest request) {
+        boolean verified = verificationService.verifyInclusion(
+            request.getContentHash(), request.getProof(), request.getNotaryRoot(), request.getIotaTxId());
 
         return ResponseEntity.ok(VerificationResponse.builder()
-            .versionId(versionId)
-            .iotaTxId(iotaTxId)
-            .contentHash(storedHash)
+            .iotaTxId(request.getIotaTxId())
+            .contentHash(request.getContentHash())
+            .notaryRoot(request.getNotaryRoot())
             .verified(verified)
-            .message(verified ? "Content verified on IOTA" : "Verification failed")
+            .message(verified ? "Inclusion proof verified on IOTA" : "Verification failed")
             .build());
     }
 }
@@ -0,0 +1,11 @@
+package com.ctd.dto.projection;
+
+/**
+ * Nodo letto da content_nodes durante la ricostruzione di un tree
+ */
+public interface ContentNodeRow {
+    String getHash();
+    String getContent();
+    String getChildren();
+    Boolean getLinked();
+}
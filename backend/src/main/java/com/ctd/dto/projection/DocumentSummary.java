@@ -0,0 +1,26 @@
+package com.ctd.dto.projection;
+
+import com.ctd.model.Document.DocumentType;
+import com.ctd.model.NotarizationStatus;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Vista di elenco di un documento: i campi di DocumentResponse senza contentJson,
+ * letti con una sola query (creatore e versione corrente in join)
+ */
+public interface DocumentSummary {
+    UUID getId();
+    String getTitle();
+    DocumentType getDocType();
+    UUID getCreatedBy();
+    String getCreatedByName();
+    UUID getCurrentVersionId();
+    Integer getCurrentVersionNumber();
+    String getContentHash();
+    String getIotaTxId();
+    NotarizationStatus getNotarizationStatus();
+    Instant getCreatedAt();
+    Instant getUpdatedAt();
+}
@@ -0,0 +1,18 @@
+package com.ctd.dto.projection;
+
+import java.util.UUID;
+
+/**
+ * Contenuto salvato di una versione, senza caricare l'entity. Le versioni in
+ * content_nodes hanno contentJson null e rootNodeHash valorizzato: si leggono
+ * tramite DocumentService.getVersionContent, che le ricostruisce; lo stesso
+ * vale per le versioni salvate come delta (deltaDepth > 0).
+ */
+public interface VersionContent {
+    UUID getDocumentId();
+    String getAuthorName();
+    String getContentHash();
+    String getContentJson();
+    String getRootNodeHash();
+    Integer getDeltaDepth();
+}
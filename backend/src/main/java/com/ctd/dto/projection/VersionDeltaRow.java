@@ -0,0 +1,15 @@
+package com.ctd.dto.projection;
+
+import java.util.UUID;
+
+/**
+ * Anello della catena di delta: la patch rispetto al parent, oppure il contenuto
+ * completo (inline o in content_nodes) per lo snapshot da cui si parte
+ */
+public interface VersionDeltaRow {
+    UUID getVersionId();
+    String getContentDelta();
+    String getContentJson();
+    String getRootNodeHash();
+    Integer getDepth();
+}
@@ -0,0 +1,14 @@
+package com.ctd.dto.projection;
+
+import java.util.UUID;
+
+/**
+ * Riga minima per il controllo di integrita': id, hash salvato e contentJson come testo (o radice in content_nodes)
+ */
+public interface VersionHashRow {
+    UUID getVersionId();
+    String getContentHash();
+    String getContentJson();
+    String getRootNodeHash();
+    String getHashScheme();
+}
@@ -0,0 +1,12 @@
+package com.ctd.dto.projection;
+
+import java.util.UUID;
+
+/**
+ * Passo di una lineage tra versioni: solo id, con la distanza dal punto di partenza
+ */
+public interface VersionLineage {
+    UUID getVersionId();
+    UUID getParentVersionId();
+    Integer getDepth();
+}
@@ -0,0 +1,17 @@
+package com.ctd.dto.projection;
+
+import com.ctd.model.NotarizationStatus;
+
+import java.util.UUID;
+
+/**
+ * Campi di notarizzazione di una versione, senza contentJson: bastano per la verifica
+ */
+public interface VersionNotary {
+    UUID getVersionId();
+    String getContentHash();
+    String getIotaTxId();
+    String getNotaryRoot();
+    String getNotaryProof();
+    NotarizationStatus getNotarizationStatus();
+}
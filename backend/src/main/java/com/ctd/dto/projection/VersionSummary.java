@@ -0,0 +1,22 @@
+package com.ctd.dto.projection;
+
+import com.ctd.model.NotarizationStatus;
+
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Riga della version history: metadati senza contentJson, autore e parent
+ * risolti nella stessa query. Il contenuto si legge a parte da /structure.
+ */
+public interface VersionSummary {
+    UUID getId();
+    Integer getVersionNumber();
+    UUID getAuthorId();
+    String getAuthorName();
+    String getContentHash();
+    String getIotaTxId();
+    NotarizationStatus getNotarizationStatus();
+    UUID getParentVersionId();
+    Instant getCreatedAt();
+}
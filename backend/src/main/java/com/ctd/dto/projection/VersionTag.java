@@ -0,0 +1,24 @@
+package com.ctd.dto.projection;
+
+import java.util.UUID;
+
+import com.ctd.model.HashScheme;
+import com.ctd.model.NotarizationStatus;
+
+/**
+ * Identita', hash e stato di notarizzazione di una versione: basta per ETag
+ * e richieste condizionali. authorName serve come autore di default quando
+ * il tree viene letto dalla snapshot cache senza caricare il contenuto;
+ * rootNodeHash (null se la versione non e' in content_nodes) serve al diff;
+ * hashScheme dice se la snapshot cache puo' ricalcolare il contentHash.
+ */
+public interface VersionTag {
+    UUID getDocumentId();
+    UUID getVersionId();
+    UUID getParentVersionId();
+    String getContentHash();
+    String getAuthorName();
+    String getRootNodeHash();
+    HashScheme getHashScheme();
+    NotarizationStatus getNotarizationStatus();
+}
@@ -0,0 +1,25 @@
+package com.ctd.dto.request;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+import java.util.UUID;
+
+@Data
+public class VerifyBatchRequest {
+
+    @Size(max = 10000, message = "At most 10000 versions per request")
+    private List<UUID> versionIds;
+
+    private UUID documentId;  // alternativa a versionIds: tutte le versioni del documento
+
+    @JsonIgnore
+    @AssertTrue(message = "Provide either versionIds or documentId")
+    public boolean isTargetValid() {
+        boolean hasIds = versionIds != null && !versionIds.isEmpty();
+        return hasIds != (documentId != null);
+    }
+}
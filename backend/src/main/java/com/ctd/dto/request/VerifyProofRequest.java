@@ -0,0 +1,23 @@
+package com.ctd.dto.request;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class VerifyProofRequest {
+
+    @NotBlank(message = "Content hash is required")
+    private String contentHash;
+
+    @NotNull(message = "Proof is required")
+    private List<String> proof;  // "L:hex" / "R:hex", from leaf to root
+
+    @NotBlank(message = "Notary root is required")
+    private String notaryRoot;
+
+    @NotBlank(message = "IOTA transaction ID is required")
+    private String iotaTxId;
+}
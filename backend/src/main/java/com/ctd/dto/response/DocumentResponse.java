@@ -1,11 +1,13 @@
 package com.ctd.dto.response;
 
 import com.ctd.model.Document.DocumentType;
+import com.ctd.model.NotarizationStatus;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonRawValue;
 import lombok.Builder;
 import lombok.Data;
 
 import java.time.Instant;
-import java.util.Map;
 import java.util.UUID;
 
 @Data
@@ -18,9 +20,13 @@ public class DocumentResponse {
     private String createdByName;
     private UUID currentVersionId;
     private Integer currentVersionNumber;
-    private Map<String, Object> contentJson;
+    // Solo con ?include=content
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonRawValue
+    private String contentJson;
     private String contentHash;
     private String iotaTxId;
+    private NotarizationStatus notarizationStatus;
     private Instant createdAt;
     private Instant updatedAt;
 }
@@ -1,5 +1,6 @@
 package com.ctd.dto.response;
 
+import com.ctd.model.NotarizationStatus;
 import lombok.Builder;
 import lombok.Data;
 
@@ -11,6 +12,8 @@ public class VerificationResponse {
     private UUID versionId;
     private String iotaTxId;
     private String contentHash;
+    private String notaryRoot;
+    private NotarizationStatus notarizationStatus;
     private boolean verified;
     private String message;
 }
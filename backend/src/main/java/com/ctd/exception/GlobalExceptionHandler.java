@@ -59,6 +59,14 @@ public class GlobalExceptionHandler {
             .body(Map.of("errors", errors));
     }
 
+    // Errore del client (cursore non valido, versione di un altro documento): niente stack trace
+    @ExceptionHandler(BadRequestException.class)
+    public ResponseEntity<?> handleBadRequest(BadRequestException ex) {
+        log.warn("Bad request: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+            .body(Map.of("error", ex.getMessage()));
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<?> handleGenericException(Exception ex) {
         log.error("Unexpected error", ex);
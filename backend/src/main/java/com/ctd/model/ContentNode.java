@@ -0,0 +1,38 @@
+package com.ctd.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+/**
+ * Nodo immutabile del Node tree, condiviso tra tutte le versioni che lo contengono.
+ * La chiave e' l'hash Merkle del nodo: stesso content e stessi figli, stessa riga.
+ */
+@Entity
+@Table(name = "content_nodes")
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ContentNode {
+
+    @Id
+    @Column(length = 64)
+    private String hash;
+
+    // Oggetto content cosi' come serializzato, byte per byte, senza i link (con i link se linked e' null)
+    @Column(nullable = false, columnDefinition = "text")
+    private String content;
+
+    // Content collegato a quello del parent; null per le righe con i link salvati nel content
+    @Column
+    private Boolean linked;
+
+    // Hash dei figli in ordine, separati da virgola (vuoto per le foglie)
+    @Column(nullable = false, columnDefinition = "text")
+    private String children;
+
+    @Column(name = "created_at", nullable = false, insertable = false, updatable = false)
+    private Instant createdAt;
+}
@@ -1,6 +1,8 @@
 package com.ctd.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonRawValue;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.annotations.JdbcTypeCode;
@@ -9,7 +11,6 @@ import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.jpa.domain.support.AuditingEntityListener;
 
 import java.time.Instant;
-import java.util.Map;
 import java.util.UUID;
 
 @Entity
@@ -34,13 +35,35 @@ public class DocumentVersion {
     @Column(name = "version_number", nullable = false)
     private Integer versionNumber;
 
+    // JSON gia' serializzato: passa a/da JSONB senza costruire mappe.
+    // Null per le versioni salvate in content_nodes (vedi rootNodeHash)
     @JdbcTypeCode(SqlTypes.JSON)
-    @Column(name = "content_json", nullable = false, columnDefinition = "jsonb")
-    private Map<String, Object> contentJson;
+    @Column(name = "content_json", columnDefinition = "jsonb")
+    @JsonRawValue
+    private String contentJson;
+
+    // Radice del tree in content_nodes, condiviso nodo per nodo con le altre versioni
+    @Column(name = "root_node_hash", length = 64)
+    private String rootNodeHash;
+
+    // JSON Patch rispetto al parent quando la versione e' salvata come delta
+    @Column(name = "content_delta", columnDefinition = "text")
+    @JsonIgnore
+    private String contentDelta;
+
+    // Delta da rigiocare dall'ultimo snapshot per ricostruire questa versione
+    @Column(name = "delta_depth", nullable = false)
+    @Builder.Default
+    private Integer deltaDepth = 0;
 
     @Column(name = "content_hash", nullable = false, length = 64)
     private String contentHash;
 
+    // Null per le versioni scritte prima del marcatore (forse SHA-256 dell'intero documento)
+    @Enumerated(EnumType.STRING)
+    @Column(name = "hash_scheme", length = 20)
+    private HashScheme hashScheme;
+
     @ManyToOne(fetch = FetchType.EAGER)
     @JoinColumn(name = "author_id", nullable = false)
     @JsonIgnoreProperties({"passwordHash", "iotaDid", "createdAt", "updatedAt"})
@@ -57,4 +80,16 @@ public class DocumentVersion {
 
     @Column(name = "iota_tx_id")
     private String iotaTxId;
+
+    // Root del batch ancorato con iotaTxId e inclusion proof di contentHash
+    @Column(name = "notary_root", length = 64)
+    private String notaryRoot;
+
+    @Column(name = "notary_proof", columnDefinition = "text")
+    private String notaryProof;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "notarization_status", nullable = false, length = 20)
+    @Builder.Default
+    private NotarizationStatus notarizationStatus = NotarizationStatus.PENDING;
 }
@@ -0,0 +1,11 @@
+package com.ctd.model;
+
+/**
+ * Schema della Merkle root in content_hash. MERKLE e' il primo (campi della
+ * foglia separati da 0x1f, senza version e link), MERKLE_V2 quello corrente
+ * (vedi MerkleHash).
+ */
+public enum HashScheme {
+    MERKLE,
+    MERKLE_V2
+}
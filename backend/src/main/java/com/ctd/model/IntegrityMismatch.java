@@ -0,0 +1,55 @@
+package com.ctd.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Entity
+@Table(name = "integrity_mismatches")
+@EntityListeners(AuditingEntityListener.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IntegrityMismatch {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Column(name = "scan_id", nullable = false)
+    private UUID scanId;
+
+    @Column(name = "version_id", nullable = false)
+    private UUID versionId;
+
+    @Column(name = "stored_hash", nullable = false, length = 64)
+    private String storedHash;
+
+    @Column(name = "computed_hash", length = 64)
+    private String computedHash;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private Outcome outcome = Outcome.MISMATCH;
+
+    // Valorizzato quando il contentJson non e' nemmeno leggibile
+    @Column(columnDefinition = "text")
+    private String error;
+
+    @CreatedDate
+    @Column(name = "detected_at", nullable = false, updatable = false)
+    private Instant detectedAt;
+
+    public enum Outcome {
+        MISMATCH,
+        // Versione pre-Merkle il cui hash dell'intero documento non si riesce a riprodurre dal JSONB
+        LEGACY
+    }
+}
@@ -0,0 +1,69 @@
+package com.ctd.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.annotation.LastModifiedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.time.Instant;
+import java.util.UUID;
+
+@Entity
+@Table(name = "integrity_scans")
+@EntityListeners(AuditingEntityListener.class)
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class IntegrityScan {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    @Builder.Default
+    private Status status = Status.RUNNING;
+
+    // Ultima versione elaborata: la scansione riprende da qui
+    @Column(name = "cursor_id")
+    private UUID cursorId;
+
+    @Column(name = "rows_scanned", nullable = false)
+    @Builder.Default
+    private Long rowsScanned = 0L;
+
+    @Column(name = "bytes_scanned", nullable = false)
+    @Builder.Default
+    private Long bytesScanned = 0L;
+
+    @Column(nullable = false)
+    @Builder.Default
+    private Long mismatches = 0L;
+
+    // Versioni pre-Merkle non verificabili: riportate a parte, non sono discrepanze
+    @Column(name = "legacy_rows", nullable = false)
+    @Builder.Default
+    private Long legacyRows = 0L;
+
+    @CreatedDate
+    @Column(name = "started_at", nullable = false, updatable = false)
+    private Instant startedAt;
+
+    @LastModifiedDate
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt;
+
+    @Column(name = "finished_at")
+    private Instant finishedAt;
+
+    public enum Status {
+        RUNNING,
+        INTERRUPTED,
+        COMPLETED,
+        FAILED
+    }
+}
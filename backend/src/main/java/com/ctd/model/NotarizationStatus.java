@@ -0,0 +1,7 @@
+package com.ctd.model;
+
+public enum NotarizationStatus {
+    PENDING,
+    NOTARIZED,
+    FAILED
+}
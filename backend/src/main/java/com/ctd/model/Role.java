@@ -5,7 +5,9 @@ public enum Role {
     RESEARCHER,
     HOSPITAL,
     ETHICS_COMMITTEE,
-    AUDITOR;
+    AUDITOR,
+    // Operazioni su /actuator (es. scan di integrita'); si assegna solo da database, non con la registrazione
+    ADMIN;
 
     public boolean canEdit() {
         return this == SPONSOR || this == RESEARCHER || this == HOSPITAL;
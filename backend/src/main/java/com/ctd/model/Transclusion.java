@@ -46,4 +46,16 @@ public class Transclusion {
 
     @Column(name = "iota_tx_id")
     private String iotaTxId;
+
+    // Root del batch ancorato con iotaTxId e inclusion proof di contentHash
+    @Column(name = "notary_root", length = 64)
+    private String notaryRoot;
+
+    @Column(name = "notary_proof", columnDefinition = "text")
+    private String notaryProof;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "notarization_status", nullable = false, length = 20)
+    @Builder.Default
+    private NotarizationStatus notarizationStatus = NotarizationStatus.PENDING;
 }
@@ -0,0 +1,44 @@
+package com.ctd.repository;
+
+import com.ctd.dto.projection.ContentNodeRow;
+import com.ctd.model.ContentNode;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ContentNodeRepository extends JpaRepository<ContentNode, String> {
+
+    @Query(value = "SELECT hash FROM content_nodes WHERE hash IN (:hashes)", nativeQuery = true)
+    List<String> findExistingHashes(@Param("hashes") Collection<String> hashes);
+
+    @Query(value = "SELECT hash, content, children, linked FROM content_nodes WHERE hash IN (:hashes)", nativeQuery = true)
+    List<ContentNodeRow> findByHashes(@Param("hashes") Collection<String> hashes);
+
+    // Mark dalle radici di tutte le versioni, sweep di tutto il resto
+    @Modifying
+    @Query(value = "WITH RECURSIVE live(hash, children) AS (" +
+                   "  SELECT n.hash, n.children FROM content_nodes n" +
+                   "  WHERE n.hash IN (SELECT root_node_hash FROM document_versions WHERE root_node_hash IS NOT NULL)" +
+                   "  UNION" +
+                   "  SELECT n.hash, n.children" +
+                   "  FROM content_nodes n JOIN live l ON n.hash = ANY(string_to_array(l.children, ','))" +
+                   ") DELETE FROM content_nodes c WHERE NOT EXISTS (SELECT 1 FROM live WHERE live.hash = c.hash)",
+           nativeQuery = true)
+    int deleteUnreachable();
+
+    // Tutti i nodi raggiungibili dalla radice in un solo round trip; UNION non ripete i sottoalberi condivisi
+    @Query(value = "WITH RECURSIVE tree(hash, content, children, linked) AS (" +
+                   "  SELECT hash, content, children, linked FROM content_nodes WHERE hash = :root" +
+                   "  UNION" +
+                   "  SELECT n.hash, n.content, n.children, n.linked" +
+                   "  FROM content_nodes n JOIN tree t ON n.hash = ANY(string_to_array(t.children, ','))" +
+                   ") SELECT hash, content, children, linked FROM tree",
+           nativeQuery = true)
+    List<ContentNodeRow> findTree(@Param("root") String rootHash);
+}
@@ -1,13 +1,18 @@
 package com.ctd.repository;
 
+import com.ctd.dto.projection.DocumentSummary;
+import com.ctd.dto.projection.VersionTag;
 import com.ctd.model.Document;
 import com.ctd.model.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
 @Repository
@@ -15,7 +20,56 @@ public interface DocumentRepository extends JpaRepository<Document, UUID> {
 
     List<Document> findByCreatedBy(User user);
 
-    // Clinical trials require transparency - all authenticated users can view all documents
-    @Query("SELECT d FROM Document d ORDER BY d.createdAt DESC")
-    List<Document> findAccessibleByUser(@Param("user") User user);
+    // Clinical trials require transparency - all authenticated users can view all documents.
+    // Keyset su (createdAt, id): creatore e versione corrente in join, contentJson mai letto
+    @Query("SELECT d.id AS id, d.title AS title, d.docType AS docType, " +
+           "c.id AS createdBy, c.name AS createdByName, " +
+           "v.id AS currentVersionId, v.versionNumber AS currentVersionNumber, " +
+           "v.contentHash AS contentHash, v.iotaTxId AS iotaTxId, v.notarizationStatus AS notarizationStatus, " +
+           "d.createdAt AS createdAt, d.updatedAt AS updatedAt " +
+           "FROM Document d JOIN d.createdBy c LEFT JOIN d.currentVersion v " +
+           "ORDER BY d.createdAt DESC, d.id DESC")
+    List<DocumentSummary> findSummaries(Limit limit);
+
+    @Query("SELECT d.id AS id, d.title AS title, d.docType AS docType, " +
+           "c.id AS createdBy, c.name AS createdByName, " +
+           "v.id AS currentVersionId, v.versionNumber AS currentVersionNumber, " +
+           "v.contentHash AS contentHash, v.iotaTxId AS iotaTxId, v.notarizationStatus AS notarizationStatus, " +
+           "d.createdAt AS createdAt, d.updatedAt AS updatedAt " +
+           "FROM Document d JOIN d.createdBy c LEFT JOIN d.currentVersion v " +
+           "WHERE d.createdAt < :createdAt OR (d.createdAt = :createdAt AND d.id < :id) " +
+           "ORDER BY d.createdAt DESC, d.id DESC")
+    List<DocumentSummary> findSummariesAfter(@Param("createdAt") Instant createdAt, @Param("id") UUID id, Limit limit);
+
+    @Query("SELECT d.id AS id, d.title AS title, d.docType AS docType, " +
+           "c.id AS createdBy, c.name AS createdByName, " +
+           "v.id AS currentVersionId, v.versionNumber AS currentVersionNumber, " +
+           "v.contentHash AS contentHash, v.iotaTxId AS iotaTxId, v.notarizationStatus AS notarizationStatus, " +
+           "d.createdAt AS createdAt, d.updatedAt AS updatedAt " +
+           "FROM Document d JOIN d.createdBy c LEFT JOIN d.currentVersion v WHERE d.id = :id")
+    Optional<DocumentSummary> findSummaryById(@Param("id") UUID id);
+
+    @Query("SELECT d.id AS id, d.title AS title, d.docType AS docType, " +
+           "c.id AS createdBy, c.name AS createdByName, " +
+           "v.id AS currentVersionId, v.versionNumber AS currentVersionNumber, " +
+           "v.contentHash AS contentHash, v.iotaTxId AS iotaTxId, v.notarizationStatus AS notarizationStatus, " +
+           "d.createdAt AS createdAt, d.updatedAt AS updatedAt " +
+           "FROM Document d JOIN d.createdBy c LEFT JOIN d.currentVersion v WHERE c.id = :userId " +
+           "ORDER BY d.createdAt DESC, d.id DESC")
+    List<DocumentSummary> findSummariesByCreator(@Param("userId") UUID userId);
+
+    long countByCreatedBy(User user);
+
+    @Query("SELECT d.id AS documentId, v.id AS versionId, v.parentVersion.id AS parentVersionId, " +
+           "v.contentHash AS contentHash, a.name AS authorName, v.rootNodeHash AS rootNodeHash, " +
+           "v.notarizationStatus AS notarizationStatus " +
+           "FROM Document d LEFT JOIN d.currentVersion v LEFT JOIN v.author a WHERE d.id = :id")
+    Optional<VersionTag> findCurrentVersionTag(@Param("id") UUID id);
+
+    // Versioni correnti, dalla piu' recente: warm-up della snapshot cache
+    @Query("SELECT d.id AS documentId, v.id AS versionId, v.parentVersion.id AS parentVersionId, " +
+           "v.contentHash AS contentHash, a.name AS authorName, v.rootNodeHash AS rootNodeHash, " +
+           "v.notarizationStatus AS notarizationStatus " +
+           "FROM Document d JOIN d.currentVersion v JOIN v.author a ORDER BY v.createdAt DESC")
+    List<VersionTag> findCurrentVersionTags(Limit limit);
 }
@@ -1,11 +1,22 @@
 package com.ctd.repository;
 
+import com.ctd.dto.projection.VersionContent;
+import com.ctd.dto.projection.VersionDeltaRow;
+import com.ctd.dto.projection.VersionHashRow;
+import com.ctd.dto.projection.VersionLineage;
+import com.ctd.dto.projection.VersionNotary;
+import com.ctd.dto.projection.VersionSummary;
+import com.ctd.dto.projection.VersionTag;
 import com.ctd.model.Document;
 import com.ctd.model.DocumentVersion;
 import com.ctd.model.User;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
@@ -20,4 +31,113 @@ public interface DocumentVersionRepository extends JpaRepository<DocumentVersion
     Optional<DocumentVersion> findByIotaTxId(String iotaTxId);
 
     long countByAuthor(User author);
+
+    // Version history: una query, range inclusivo sui numeri di versione, dalla piu' recente
+    @Query("SELECT v.id AS id, v.versionNumber AS versionNumber, a.id AS authorId, a.name AS authorName, " +
+           "v.contentHash AS contentHash, v.iotaTxId AS iotaTxId, v.notarizationStatus AS notarizationStatus, " +
+           "p.id AS parentVersionId, v.createdAt AS createdAt " +
+           "FROM DocumentVersion v JOIN v.author a LEFT JOIN v.parentVersion p " +
+           "WHERE v.document.id = :documentId AND v.versionNumber BETWEEN :fromVersion AND :toVersion " +
+           "ORDER BY v.versionNumber DESC")
+    List<VersionSummary> findHistory(@Param("documentId") UUID documentId,
+                                     @Param("fromVersion") int fromVersion,
+                                     @Param("toVersion") int toVersion,
+                                     Limit limit);
+
+    @Query("SELECT v.document.id AS documentId, v.author.name AS authorName, " +
+           "v.contentHash AS contentHash, v.contentJson AS contentJson, v.rootNodeHash AS rootNodeHash, " +
+           "v.deltaDepth AS deltaDepth " +
+           "FROM DocumentVersion v WHERE v.id = :id")
+    Optional<VersionContent> findContentById(@Param("id") UUID id);
+
+    @Query("SELECT v.document.id AS documentId, v.id AS versionId, v.parentVersion.id AS parentVersionId, " +
+           "v.contentHash AS contentHash, a.name AS authorName, v.rootNodeHash AS rootNodeHash, " +
+           "v.notarizationStatus AS notarizationStatus " +
+           "FROM DocumentVersion v JOIN v.author a WHERE v.id = :id")
+    Optional<VersionTag> findTagById(@Param("id") UUID id);
+
+    @Query("SELECT v.id AS versionId, v.contentHash AS contentHash, v.iotaTxId AS iotaTxId, " +
+           "v.notaryRoot AS notaryRoot, v.notaryProof AS notaryProof, v.notarizationStatus AS notarizationStatus " +
+           "FROM DocumentVersion v WHERE v.id = :id")
+    Optional<VersionNotary> findNotaryById(@Param("id") UUID id);
+
+    @Query("SELECT v.id AS versionId, v.contentHash AS contentHash, v.iotaTxId AS iotaTxId, " +
+           "v.notaryRoot AS notaryRoot, v.notaryProof AS notaryProof, v.notarizationStatus AS notarizationStatus " +
+           "FROM DocumentVersion v WHERE v.id IN :ids")
+    List<VersionNotary> findNotaryByIdIn(@Param("ids") Collection<UUID> ids);
+
+    @Query("SELECT v.id AS versionId, v.contentHash AS contentHash, v.iotaTxId AS iotaTxId, " +
+           "v.notaryRoot AS notaryRoot, v.notaryProof AS notaryProof, v.notarizationStatus AS notarizationStatus " +
+           "FROM DocumentVersion v WHERE v.document.id = :documentId ORDER BY v.versionNumber")
+    List<VersionNotary> findNotaryByDocumentId(@Param("documentId") UUID documentId);
+
+    // Keyset su id: ogni pagina parte dall'ultimo id letto, senza OFFSET
+    @Query(value = "SELECT v.id AS versionId, v.content_hash AS contentHash, " +
+                   "CAST(v.content_json AS text) AS contentJson, v.root_node_hash AS rootNodeHash, " +
+                   "v.hash_scheme AS hashScheme " +
+                   "FROM document_versions v WHERE v.id > :after ORDER BY v.id LIMIT :limit",
+           nativeQuery = true)
+    List<VersionHashRow> findHashRowsAfter(@Param("after") UUID after, @Param("limit") int limit);
+
+    // Lineage con WITH RECURSIVE: un solo round trip qualunque sia la lunghezza della catena.
+    // depth e' la distanza dalla versione di partenza; maxDepth limita la risalita/discesa.
+
+    @Query(value = "WITH RECURSIVE lineage(id, parent_version_id, depth) AS (" +
+                   "  SELECT id, parent_version_id, 0 FROM document_versions WHERE id = :versionId" +
+                   "  UNION ALL" +
+                   "  SELECT v.id, v.parent_version_id, l.depth + 1" +
+                   "  FROM document_versions v JOIN lineage l ON v.id = l.parent_version_id" +
+                   "  WHERE l.depth < :maxDepth" +
+                   ") SELECT id AS versionId, parent_version_id AS parentVersionId, depth " +
+                   "FROM lineage WHERE depth > 0 ORDER BY depth",
+           nativeQuery = true)
+    List<VersionLineage> findAncestors(@Param("versionId") UUID versionId, @Param("maxDepth") int maxDepth);
+
+    @Query(value = "WITH RECURSIVE lineage(id, parent_version_id, depth) AS (" +
+                   "  SELECT id, parent_version_id, 0 FROM document_versions WHERE id = :versionId" +
+                   "  UNION ALL" +
+                   "  SELECT v.id, v.parent_version_id, l.depth + 1" +
+                   "  FROM document_versions v JOIN lineage l ON v.parent_version_id = l.id" +
+                   "  WHERE l.depth < :maxDepth" +
+                   ") SELECT id AS versionId, parent_version_id AS parentVersionId, depth " +
+                   "FROM lineage WHERE depth > 0 ORDER BY depth",
+           nativeQuery = true)
+    List<VersionLineage> findDescendants(@Param("versionId") UUID versionId, @Param("maxDepth") int maxDepth);
+
+    // Percorso from -> antenato comune -> to; depth e' la posizione nel percorso (from = 0)
+    @Query(value = "WITH RECURSIVE " +
+                   "a(id, parent_version_id, depth) AS (" +
+                   "  SELECT id, parent_version_id, 0 FROM document_versions WHERE id = :from" +
+                   "  UNION ALL" +
+                   "  SELECT v.id, v.parent_version_id, a.depth + 1" +
+                   "  FROM document_versions v JOIN a ON v.id = a.parent_version_id WHERE a.depth < :maxDepth" +
+                   "), b(id, parent_version_id, depth) AS (" +
+                   "  SELECT id, parent_version_id, 0 FROM document_versions WHERE id = :to" +
+                   "  UNION ALL" +
+                   "  SELECT v.id, v.parent_version_id, b.depth + 1" +
+                   "  FROM document_versions v JOIN b ON v.id = b.parent_version_id WHERE b.depth < :maxDepth" +
+                   "), lca AS (" +
+                   "  SELECT a.depth AS da, b.depth AS db FROM a JOIN b ON a.id = b.id" +
+                   "  ORDER BY a.depth + b.depth LIMIT 1" +
+                   ") SELECT id AS versionId, parent_version_id AS parentVersionId, step AS depth FROM (" +
+                   "  SELECT a.id, a.parent_version_id, a.depth AS step FROM a, lca WHERE a.depth <= lca.da" +
+                   "  UNION ALL" +
+                   "  SELECT b.id, b.parent_version_id, lca.da + lca.db - b.depth FROM b, lca WHERE b.depth < lca.db" +
+                   ") path ORDER BY step",
+           nativeQuery = true)
+    List<VersionLineage> findPath(@Param("from") UUID from, @Param("to") UUID to, @Param("maxDepth") int maxDepth);
+
+    // Catena di delta fino allo snapshot piu' vicino: si risale finche' la riga e' un delta
+    @Query(value = "WITH RECURSIVE chain(id, parent_version_id, content_delta, content_json, root_node_hash, depth) AS (" +
+                   "  SELECT id, parent_version_id, content_delta, content_json, root_node_hash, 0" +
+                   "  FROM document_versions WHERE id = :versionId" +
+                   "  UNION ALL" +
+                   "  SELECT v.id, v.parent_version_id, v.content_delta, v.content_json, v.root_node_hash, c.depth + 1" +
+                   "  FROM document_versions v JOIN chain c ON v.id = c.parent_version_id" +
+                   "  WHERE c.content_delta IS NOT NULL AND c.depth < :maxDepth" +
+                   ") SELECT id AS versionId, content_delta AS contentDelta, " +
+                   "CAST(content_json AS text) AS contentJson, root_node_hash AS rootNodeHash, depth " +
+                   "FROM chain ORDER BY depth",
+           nativeQuery = true)
+    List<VersionDeltaRow> findDeltaChain(@Param("versionId") UUID versionId, @Param("maxDepth") int maxDepth);
 }
@@ -0,0 +1,14 @@
+package com.ctd.repository;
+
+import com.ctd.model.IntegrityMismatch;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.UUID;
+
+@Repository
+public interface IntegrityMismatchRepository extends JpaRepository<IntegrityMismatch, UUID> {
+
+    List<IntegrityMismatch> findTop100ByScanIdOrderByDetectedAtDesc(UUID scanId);
+}
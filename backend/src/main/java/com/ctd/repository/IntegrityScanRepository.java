@@ -0,0 +1,14 @@
+package com.ctd.repository;
+
+import com.ctd.model.IntegrityScan;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface IntegrityScanRepository extends JpaRepository<IntegrityScan, UUID> {
+
+    Optional<IntegrityScan> findFirstByOrderByStartedAtDesc();
+}
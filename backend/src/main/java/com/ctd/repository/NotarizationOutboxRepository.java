@@ -0,0 +1,39 @@
+package com.ctd.repository;
+
+import com.ctd.model.NotarizationOutbox;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+@Repository
+public interface NotarizationOutboxRepository extends JpaRepository<NotarizationOutbox, UUID> {
+
+    // SKIP LOCKED: piu' worker (o istanze) non si contendono le stesse righe
+    @Query(value = "SELECT * FROM notarization_outbox " +
+                   "WHERE status = 'PENDING' AND next_attempt_at <= :now " +
+                   "ORDER BY created_at LIMIT :limit FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<NotarizationOutbox> findDueForUpdate(@Param("now") Instant now, @Param("limit") int limit);
+
+    // Chiude la riga solo se chi chiama ha ancora il lease: scaduto e ripreso da un altro worker, 0 righe
+    @Modifying
+    @Query(value = "UPDATE notarization_outbox SET status = 'DONE', last_error = NULL " +
+                   "WHERE id = :id AND status = 'PENDING' AND next_attempt_at = :lease",
+           nativeQuery = true)
+    int completeLeased(@Param("id") UUID id, @Param("lease") Instant lease);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM NotarizationOutbox o WHERE o.id = :id")
+    Optional<NotarizationOutbox> findByIdForUpdate(@Param("id") UUID id);
+
+    long countByStatus(NotarizationOutbox.Status status);
+}
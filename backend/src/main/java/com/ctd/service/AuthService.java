@@ -1,6 +1,8 @@
 package com.ctd.service;
 
+import com.ctd.exception.BadRequestException;
 import com.ctd.exception.UnauthorizedException;
+import com.ctd.model.Role;
 import com.ctd.model.User;
 import com.ctd.repository.UserRepository;
 import com.ctd.security.UserPrincipal;
@@ -32,6 +34,9 @@ public class AuthService implements UserDetailsService {
         if (userRepository.existsByEmail(user.getEmail())) {
             throw new UnauthorizedException("Email already registered");
         }
+        if (user.getRole() == Role.ADMIN) {
+            throw new BadRequestException("Role not available for registration");
+        }
 
         // Hash password
         user.setPasswordHash(passwordEncoder.encode(user.getPasswordHash()));
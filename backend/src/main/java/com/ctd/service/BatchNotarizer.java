@@ -0,0 +1,217 @@
+package com.ctd.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Raccoglie gli hash da notarizzare, costruisce un Merkle tree per batch e
+ * ancora su IOTA una sola root. Ogni elemento riceve la propria inclusion proof.
+ *
+ * Il flush avviene quando il batch raggiunge max-size oppure ogni max-delay-ms.
+ *
+ * leaf  = SHA-256(0x00 | utf8(contentHash))
+ * node  = SHA-256(0x01 | left | right); un nodo dispari sale invariato
+ * proof = sibling dal basso verso l'alto, "L:hex" se il sibling sta a sinistra, "R:hex" altrimenti
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BatchNotarizer {
+
+    private static final byte LEAF = 0x00;
+    private static final byte NODE = 0x01;
+    private static final HexFormat HEX = HexFormat.of();
+    // Lato del fratello e SHA-256 in esadecimale minuscolo, come li scrive proofFor
+    private static final Pattern PROOF_STEP = Pattern.compile("[LR]:[0-9a-f]{64}");
+
+    private final IotaService iotaService;
+
+    @Value("${notary.batch.max-size:64}")
+    private int maxBatchSize;
+
+    @Value("${notary.batch.max-delay-ms:100}")
+    private long maxDelayMs;
+
+    private final Object lock = new Object();
+    private List<PendingHash> pending = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "notary-batch");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, maxDelayMs, maxDelayMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdown();
+        flush();
+    }
+
+    /**
+     * Accoda un hash e attende l'ancoraggio del batch che lo contiene
+     */
+    public Receipt notarize(String contentHash, String metadata) {
+        try {
+            return submit(contentHash, metadata).join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    public CompletableFuture<Receipt> submit(String contentHash, String metadata) {
+        PendingHash item = new PendingHash(contentHash, metadata, new CompletableFuture<>());
+        boolean full;
+        synchronized (lock) {
+            pending.add(item);
+            full = pending.size() >= maxBatchSize;
+        }
+        if (full) {
+            scheduler.execute(this::flush);
+        }
+        return item.result;
+    }
+
+    void flush() {
+        List<PendingHash> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ArrayList<>();
+        }
+
+        try {
+            List<byte[][]> levels = buildLevels(batch);
+            String root = HEX.formatHex(levels.get(levels.size() - 1)[0]);
+            String txId = iotaService.notarize(root, "Batch of " + batch.size() + ": " + batch.get(0).metadata);
+
+            for (int i = 0; i < batch.size(); i++) {
+                batch.get(i).result.complete(new Receipt(txId, root, proofFor(levels, i)));
+            }
+            log.info("Notarized batch of {} hashes, root: {}, txId: {}", batch.size(), root, txId);
+        } catch (RuntimeException e) {
+            log.error("Batch notarization failed for {} hashes", batch.size(), e);
+            batch.forEach(item -> item.result.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * Ricalcola la root a partire da un hash e dalla sua inclusion proof
+     */
+    public static String computeRoot(String contentHash, List<String> proof) {
+        MessageDigest md = digest();
+        byte[] current = leaf(md, contentHash);
+        for (String step : proof) {
+            if (step == null || !PROOF_STEP.matcher(step).matches()) {
+                throw new IllegalArgumentException("Malformed proof step: " + step);
+            }
+            byte[] sibling = HEX.parseHex(step, 2, step.length());
+            current = step.charAt(0) == 'L' ? node(md, sibling, current) : node(md, current, sibling);
+        }
+        return HEX.formatHex(current);
+    }
+
+    private static List<byte[][]> buildLevels(List<PendingHash> batch) {
+        MessageDigest md = digest();
+        List<byte[][]> levels = new ArrayList<>();
+        byte[][] level = new byte[batch.size()][];
+        for (int i = 0; i < level.length; i++) {
+            level[i] = leaf(md, batch.get(i).contentHash);
+        }
+        levels.add(level);
+
+        while (level.length > 1) {
+            byte[][] next = new byte[(level.length + 1) / 2][];
+            for (int i = 0; i < next.length; i++) {
+                int left = i * 2;
+                next[i] = left + 1 < level.length ? node(md, level[left], level[left + 1]) : level[left];
+            }
+            levels.add(next);
+            level = next;
+        }
+        return levels;
+    }
+
+    private static List<String> proofFor(List<byte[][]> levels, int index) {
+        List<String> proof = new ArrayList<>();
+        for (int l = 0; l < levels.size() - 1; l++) {
+            byte[][] level = levels.get(l);
+            int sibling = index ^ 1;
+            if (sibling < level.length) {
+                proof.add((sibling < index ? "L:" : "R:") + HEX.formatHex(level[sibling]));
+            }
+            index >>= 1;
+        }
+        return proof;
+    }
+
+    private static byte[] leaf(MessageDigest md, String contentHash) {
+        md.update(LEAF);
+        return md.digest(contentHash.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] node(MessageDigest md, byte[] left, byte[] right) {
+        md.update(NODE);
+        md.update(left);
+        return md.digest(right);
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not available", e);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class PendingHash {
+        private final String contentHash;
+        private final String metadata;
+        private final CompletableFuture<Receipt> result;
+    }
+
+    /**
+     * Esito della notarizzazione di un singolo hash all'interno di un batch
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Receipt {
+        private final String txId;
+        private final String root;
+        private final List<String> proof;
+
+        public String encodedProof() {
+            return String.join(",", proof);
+        }
+
+        public static List<String> decodeProof(String encoded) {
+            return encoded == null || encoded.isEmpty() ? List.of() : Arrays.asList(encoded.split(","));
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.ctd.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Codifica JSON canonica in stile RFC 8785 (JCS), per hash deterministici:
+ * chiavi ordinate per unita' UTF-16, nessuno spazio, escape minimi, numeri
+ * nella forma piu' corta. L'output e' UTF-8 e va direttamente su uno
+ * stream o su un MessageDigest, senza costruire String intermedie.
+ *
+ * Valori ammessi: Map con chiavi String, Collection, array Object[], String,
+ * Number, Boolean, Enum, UUID e simili (via toString), JsonNode, null.
+ *
+ * I numeri JCS sono double IEEE 754: un intero (Long, BigInteger) oltre
+ * +-(2^53 - 1) non si rappresenta esattamente, e arrotondarlo farebbe
+ * collidere valori diversi sullo stesso hash. Quegli interi si rifiutano con
+ * IllegalArgumentException, come NaN e infiniti; chi deve firmarli li passi
+ * come String.
+ */
+public final class CanonicalJson {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+    private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final BigInteger MAX_SAFE_INTEGER = BigInteger.ONE.shiftLeft(53).subtract(BigInteger.ONE);
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[512];
+    private int position;
+
+    private CanonicalJson(OutputStream out) {
+        this.out = out;
+    }
+
+    public static void write(Object value, OutputStream out) throws IOException {
+        CanonicalJson encoder = new CanonicalJson(out);
+        encoder.value(value);
+        encoder.flush();
+    }
+
+    /**
+     * Aggiorna il digest con la forma canonica del valore (senza chiamare digest())
+     */
+    public static void update(MessageDigest digest, Object value) {
+        try {
+            write(value, new DigestSink(digest));
+        } catch (IOException e) {
+            // DigestSink non lancia mai IOException
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void value(Object value) throws IOException {
+        if (value == null) {
+            raw(NULL);
+        } else if (value instanceof String) {
+            string((String) value);
+        } else if (value instanceof Boolean) {
+            raw((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof Number) {
+            number((Number) value);
+        } else if (value instanceof Map) {
+            object((Map<?, ?>) value);
+        } else if (value instanceof Collection) {
+            array(((Collection<?>) value).iterator());
+        } else if (value instanceof Object[]) {
+            array(Arrays.asList((Object[]) value).iterator());
+        } else if (value instanceof JsonNode) {
+            node((JsonNode) value);
+        } else if (value instanceof Enum) {
+            string(((Enum<?>) value).name());
+        } else {
+            string(value.toString());
+        }
+    }
+
+    private void object(Map<?, ?> map) throws IOException {
+        String[] keys = new String[map.size()];
+        int i = 0;
+        for (Object key : map.keySet()) {
+            if (!(key instanceof String)) {
+                throw new IllegalArgumentException("Canonical JSON keys must be strings: " + key);
+            }
+            keys[i++] = (String) key;
+        }
+        // String.compareTo confronta unita' UTF-16, come richiesto da RFC 8785
+        Arrays.sort(keys);
+
+        put('{');
+        for (i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                put(',');
+            }
+            string(keys[i]);
+            put(':');
+            value(map.get(keys[i]));
+        }
+        put('}');
+    }
+
+    private void array(Iterator<?> items) throws IOException {
+        put('[');
+        boolean first = true;
+        while (items.hasNext()) {
+            if (!first) {
+                put(',');
+            }
+            value(items.next());
+            first = false;
+        }
+        put(']');
+    }
+
+    private void node(JsonNode node) throws IOException {
+        switch (node.getNodeType()) {
+            case OBJECT:
+                String[] keys = new String[node.size()];
+                Iterator<String> names = node.fieldNames();
+                for (int i = 0; names.hasNext(); i++) {
+                    keys[i] = names.next();
+                }
+                Arrays.sort(keys);
+                put('{');
+                for (int i = 0; i < keys.length; i++) {
+                    if (i > 0) {
+                        put(',');
+                    }
+                    string(keys[i]);
+                    put(':');
+                    node(node.get(keys[i]));
+                }
+                put('}');
+                break;
+            case ARRAY:
+                put('[');
+                for (int i = 0; i < node.size(); i++) {
+                    if (i > 0) {
+                        put(',');
+                    }
+                    node(node.get(i));
+                }
+                put(']');
+                break;
+            case STRING:
+                string(node.textValue());
+                break;
+            case NUMBER:
+                number(node.numberValue());
+                break;
+            case BOOLEAN:
+                raw(node.booleanValue() ? TRUE : FALSE);
+                break;
+            case NULL:
+            case MISSING:
+                raw(NULL);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported JSON node: " + node.getNodeType());
+        }
+    }
+
+    private void number(Number number) throws IOException {
+        if (number instanceof Integer || number instanceof Short || number instanceof Byte) {
+            ascii(Integer.toString(number.intValue()));
+            return;
+        }
+        if (number instanceof Long || number instanceof BigInteger) {
+            // Entro +-(2^53 - 1) le cifre intere coincidono con ecmaScript(double)
+            BigInteger value = number instanceof BigInteger ? (BigInteger) number : BigInteger.valueOf(number.longValue());
+            if (value.abs().compareTo(MAX_SAFE_INTEGER) > 0) {
+                throw new IllegalArgumentException("Canonical JSON cannot encode " + number + " exactly");
+            }
+            ascii(number.toString());
+            return;
+        }
+
+        double d = number.doubleValue();
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            throw new IllegalArgumentException("Canonical JSON cannot encode " + d);
+        }
+        ascii(ecmaScript(d));
+    }
+
+    /* Number::toString di ECMAScript (RFC 8785, 3.2.2.3): le cifre piu' corte
+       che rileggono lo stesso double, poi notazione decimale (con zeri di
+       riempimento) per esponenti tra 1e-6 e 1e21, altrimenti "1.5e-7" / "1e+25".
+       Double.toString non basta: prima di Java 19 non e' sempre la piu' corta */
+    private static String ecmaScript(double d) {
+        if (d == 0) {
+            // anche -0
+            return "0";
+        }
+        if (d < 0) {
+            return "-" + ecmaScript(-d);
+        }
+        BigDecimal digits = shortest(d);
+        String s = digits.unscaledValue().toString();
+        int k = s.length();
+        // d = s * 10^(n - k)
+        int n = k - digits.scale();
+
+        StringBuilder out = new StringBuilder(k + 8);
+        if (k <= n && n <= 21) {
+            out.append(s);
+            for (int i = k; i < n; i++) {
+                out.append('0');
+            }
+        } else if (0 < n && n <= 21) {
+            out.append(s, 0, n).append('.').append(s, n, k);
+        } else if (-6 < n && n <= 0) {
+            out.append("0.");
+            for (int i = n; i < 0; i++) {
+                out.append('0');
+            }
+            out.append(s);
+        } else {
+            out.append(s.charAt(0));
+            if (k > 1) {
+                out.append('.').append(s, 1, k);
+            }
+            int exponent = n - 1;
+            out.append('e').append(exponent < 0 ? '-' : '+').append(Math.abs(exponent));
+        }
+        return out.toString();
+    }
+
+    /* Il decimale con meno cifre significative che rilegge d; a parita' di
+       cifre il piu' vicino, cioe' il valore esatto arrotondato (HALF_EVEN):
+       se una stringa di p cifre sta nell'intervallo di d, ci sta anche questa */
+    private static BigDecimal shortest(double d) {
+        BigDecimal exact = new BigDecimal(d);
+        for (int precision = 1; precision < 17; precision++) {
+            BigDecimal candidate = exact.round(new MathContext(precision, RoundingMode.HALF_EVEN));
+            if (candidate.doubleValue() == d) {
+                return candidate.stripTrailingZeros();
+            }
+        }
+        // 17 cifre bastano sempre per un double
+        return exact.round(new MathContext(17, RoundingMode.HALF_EVEN)).stripTrailingZeros();
+    }
+
+    private void string(String s) throws IOException {
+        put('"');
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '"': put('\\'); put('"'); break;
+                    case '\\': put('\\'); put('\\'); break;
+                    case '\b': put('\\'); put('b'); break;
+                    case '\f': put('\\'); put('f'); break;
+                    case '\n': put('\\'); put('n'); break;
+                    case '\r': put('\\'); put('r'); break;
+                    case '\t': put('\\'); put('t'); break;
+                    default:
+                        if (c < 0x20) {
+                            unicodeEscape(c);
+                        } else {
+                            put(c);
+                        }
+                }
+            } else if (c < 0x800) {
+                put(0xc0 | (c >> 6));
+                put(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                put(0xf0 | (cp >> 18));
+                put(0x80 | ((cp >> 12) & 0x3f));
+                put(0x80 | ((cp >> 6) & 0x3f));
+                put(0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // Surrogato isolato: non codificabile in UTF-8, resta come escape
+                unicodeEscape(c);
+            } else {
+                put(0xe0 | (c >> 12));
+                put(0x80 | ((c >> 6) & 0x3f));
+                put(0x80 | (c & 0x3f));
+            }
+        }
+        put('"');
+    }
+
+    private void unicodeEscape(char c) throws IOException {
+        put('\\');
+        put('u');
+        put(HEX[(c >> 12) & 0x0f]);
+        put(HEX[(c >> 8) & 0x0f]);
+        put(HEX[(c >> 4) & 0x0f]);
+        put(HEX[c & 0x0f]);
+    }
+
+    private void ascii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            put(s.charAt(i));
+        }
+    }
+
+    private void raw(byte[] bytes) throws IOException {
+        for (byte b : bytes) {
+            put(b);
+        }
+    }
+
+    private void put(int b) throws IOException {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = (byte) b;
+    }
+
+    private void flush() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private static final class DigestSink extends OutputStream {
+        private final MessageDigest digest;
+
+        private DigestSink(MessageDigest digest) {
+            this.digest = digest;
+        }
+
+        @Override
+        public void write(int b) {
+            digest.update((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            digest.update(b, off, len);
+        }
+    }
+}
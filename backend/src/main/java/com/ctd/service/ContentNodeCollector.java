@@ -0,0 +1,69 @@
+package com.ctd.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Raccolta dei content_nodes orfani in background. La raccolta visita tutti i
+ * tree salvati con il lock esclusivo, che ferma le scritture: invece di farla
+ * a ogni cancellazione, le cancellazioni la segnalano e un solo thread la
+ * esegue al piu' una volta per intervallo. All'avvio e' gia' segnalata, per
+ * i nodi rimasti da cancellazioni precedenti a un riavvio.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ContentNodeCollector {
+
+    private final ContentNodeStore contentNodeStore;
+
+    @Value("${versions.storage.gc-interval-ms:600000}")
+    private long intervalMs;
+
+    private final AtomicBoolean requested = new AtomicBoolean(true);
+    private ScheduledExecutorService scheduler;
+
+    @PostConstruct
+    void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "content-node-collector");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.scheduleWithFixedDelay(this::collect, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() {
+        scheduler.shutdown();
+    }
+
+    /**
+     * Segnala che delle versioni sono state cancellate: i loro nodi si raccolgono al prossimo giro
+     */
+    public void request() {
+        requested.set(true);
+    }
+
+    void collect() {
+        if (!requested.getAndSet(false)) {
+            return;
+        }
+        try {
+            contentNodeStore.collectGarbage();
+        } catch (RuntimeException e) {
+            // Si riprova al giro successivo
+            requested.set(true);
+            log.warn("Content node collection failed", e);
+        }
+    }
+}
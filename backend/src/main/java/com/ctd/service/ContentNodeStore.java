@@ -0,0 +1,643 @@
+package com.ctd.service;
+
+import com.ctd.dto.projection.ContentNodeRow;
+import com.ctd.repository.ContentNodeRepository;
+import com.ctd.xanadu.content.Author;
+import com.ctd.xanadu.content.Content;
+import com.ctd.xanadu.content.version.Version;
+import com.ctd.xanadu.node.DocumentNode;
+import com.ctd.xanadu.node.MerkleHash;
+import com.ctd.xanadu.node.Node;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Storage content-addressed dei Node tree: ogni nodo e' una riga immutabile di
+ * content_nodes con chiave il suo hash Merkle, e una versione salva solo l'hash
+ * della radice. I sottoalberi invariati sono condivisi tra le versioni, quindi
+ * una nuova versione scrive soltanto i nodi lungo i percorsi modificati.
+ *
+ * La chiave e' l'hash Merkle del sottoalbero (vedi MerkleHash), per cui quella
+ * della radice coincide con il contentHash della versione. I link non fanno
+ * parte della riga: contengono il valore del parent e dei figli, e salvarli
+ * riscriverebbe la radice a ogni sezione aggiunta e i figli a ogni rinomina.
+ * Si salvano il content senza link e il flag linked, e in lettura i link si
+ * rigenerano dalla struttura nello stesso ordine e con gli stessi byte di
+ * NodeTreeSerializer. Un tree i cui link non si ricavano cosi' non viene
+ * scomposto e resta inline, come un tree troncato. Le righe con linked null
+ * sono quelle scritte prima, con i link dentro il content.
+ *
+ * I nodi non piu' raggiungibili da nessuna versione vengono rimossi da
+ * collectGarbage (mark and sweep, lanciato a intervalli da ContentNodeCollector).
+ * Scritture e raccolta si escludono con un advisory lock: store lo prende
+ * condiviso, perche' un nodo gia' presente non viene riscritto e deve restare
+ * finche' la nuova versione non e' salvata.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ContentNodeStore {
+
+    // Sotto il limite di 32767 parametri per statement di PostgreSQL
+    private static final int LOOKUP_CHUNK = 10_000;
+    private static final int INSERT_CHUNK = 1_000;
+
+    // Chiave dell'advisory lock tra store e collectGarbage
+    private static final long GC_LOCK = 0x63746e6f646573L; // "ctnodes"
+
+    private final ContentNodeRepository contentNodeRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final XanaduService xanaduService;
+
+    /**
+     * Salva il tree scomposto in nodi e restituisce l'hash della radice, oppure
+     * null se il JSON non e' scomponibile (tree troncato da maxDepthReached, o
+     * link che non si ricavano dalla struttura)
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public String store(byte[] json) {
+        Decomposed tree = decompose(json);
+        if (tree == null || !tree.derivable) {
+            return null;
+        }
+
+        jdbcTemplate.execute("SELECT pg_advisory_xact_lock_shared(" + GC_LOCK + ")");
+
+        // Discesa per livelli: un nodo gia' presente implica tutto il suo sottoalbero,
+        // per cui si scende solo sotto i nodi nuovi. Un livello costa una lookup e un
+        // insert multi-riga per blocco, non un round trip per nodo
+        Set<String> visited = new HashSet<>();
+        Set<String> level = new LinkedHashSet<>(List.of(tree.root));
+        int written = 0;
+
+        while (!level.isEmpty()) {
+            Set<String> existing = findExisting(level);
+            Set<String> next = new LinkedHashSet<>();
+            List<String> fresh = new ArrayList<>();
+            for (String hash : level) {
+                if (existing.contains(hash) || !visited.add(hash)) {
+                    continue;
+                }
+                fresh.add(hash);
+                next.addAll(tree.nodes.get(hash).children);
+            }
+            insertAll(fresh, tree.nodes);
+            written += fresh.size();
+            level = next;
+        }
+
+        log.debug("Stored tree {}: {} new nodes out of {}", tree.root, written, tree.nodes.size());
+        return tree.root;
+    }
+
+    /**
+     * Cancella i nodi non raggiungibili dalla radice di nessuna versione; restituisce quanti.
+     * Visita tutti i tree salvati con il lock esclusivo: la chiama ContentNodeCollector,
+     * al piu' una volta per intervallo e solo dopo delle cancellazioni
+     */
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public int collectGarbage() {
+        jdbcTemplate.execute("SELECT pg_advisory_xact_lock(" + GC_LOCK + ")");
+        int deleted = contentNodeRepository.deleteUnreachable();
+        if (deleted > 0) {
+            log.info("Collected {} unreachable content nodes", deleted);
+        }
+        return deleted;
+    }
+
+    /**
+     * Ricostruisce il JSON della versione con radice rootHash, identico a quello serializzato
+     */
+    @Transactional(readOnly = true)
+    public String materialize(String rootHash) {
+        Map<String, ContentNodeRow> nodes = new HashMap<>();
+        for (ContentNodeRow row : contentNodeRepository.findTree(rootHash)) {
+            nodes.put(row.getHash(), row);
+        }
+        StringBuilder json = new StringBuilder(256);
+        assemble(rootHash, null, nodes, new HashMap<>(), json);
+        return json.toString();
+    }
+
+    // Stesso layout di NodeTreeSerializer; la profondita' e' limitata dal suo MAX_DEPTH
+    private void assemble(String hash, Label parent, Map<String, ContentNodeRow> nodes, Map<String, Label> labels,
+                          StringBuilder json) {
+        ContentNodeRow node = row(hash, nodes);
+        String content = node.getContent();
+        String[] children = node.getChildren().isEmpty() ? new String[0] : node.getChildren().split(",");
+
+        Label own = node.getLinked() != null ? label(hash, nodes, labels) : null;
+
+        json.append("{\"content\":");
+        if (own == null) {
+            json.append(content);
+        } else {
+            // Il content e' salvato senza link: si rimettono in coda, prima dei figli e poi del parent
+            List<String[]> links = new ArrayList<>();
+            for (String child : children) {
+                if (Boolean.TRUE.equals(row(child, nodes).getLinked())) {
+                    links.add(label(child, nodes, labels).linkTo(own));
+                }
+            }
+            if (node.getLinked() && parent != null) {
+                links.add(own.linkTo(parent));
+            }
+            json.append(content, 0, content.length() - 1).append(links(links)).append('}');
+        }
+
+        json.append(",\"children\":[");
+        for (int i = 0; i < children.length; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            assemble(children[i], own, nodes, labels, json);
+        }
+        json.append("],\"childrenCount\":").append(children.length).append('}');
+    }
+
+    /**
+     * Ricostruisce il Node tree della versione con radice rootHash, per modificarlo.
+     * Un nodo ricostruito uguale a quello salvato, figli compresi, riceve come hash
+     * la sua chiave: dopo una modifica si ricalcola solo il percorso fino alla radice
+     */
+    @Transactional(readOnly = true)
+    public Node restore(String rootHash, Author defaultAuthor) {
+        Map<String, ContentNodeRow> nodes = new HashMap<>();
+        for (ContentNodeRow row : contentNodeRepository.findTree(rootHash)) {
+            nodes.put(row.getHash(), row);
+        }
+        return restore(rootHash, null, nodes, defaultAuthor);
+    }
+
+    // Ricorsiva come assemble: la profondita' e' limitata dal MAX_DEPTH del serializer
+    private DocumentNode restore(String hash, DocumentNode parent, Map<String, ContentNodeRow> nodes,
+                                 Author defaultAuthor) {
+        ContentNodeRow row = row(hash, nodes);
+        Label stored = readLabel(row.getContent());
+        Content<?> content = xanaduService.restoreContent(stored.type, stored.raw, stored.authorName, defaultAuthor);
+
+        DocumentNode.builder builder = DocumentNode.builder.get().withContent(content);
+        // La radice ricostruita non va appesa al RootNode, che la terrebbe per sempre
+        DocumentNode node = parent != null ? builder.withParent(parent).build() : builder.detached().build();
+        // Le righe scritte prima del flag si collegano sempre al parent, come fa NodeTreeDeserializer
+        if (parent != null && !Boolean.FALSE.equals(row.getLinked())) {
+            content.link(parent.content());
+        }
+
+        // Le righe scritte prima del flag hanno una chiave di un altro schema: non e' un hash riusabile
+        boolean exact = row.getLinked() != null && stored.restoredBy(content);
+        if (!row.getChildren().isEmpty()) {
+            for (String child : row.getChildren().split(",")) {
+                exact &= restore(child, node, nodes, defaultAuthor).isHashed();
+            }
+        }
+        if (exact) {
+            node.restoreHash(MerkleHash.fromHex(hash));
+        }
+        return node;
+    }
+
+    private static ContentNodeRow row(String hash, Map<String, ContentNodeRow> nodes) {
+        ContentNodeRow node = nodes.get(hash);
+        if (node == null) {
+            throw new IllegalStateException("Content node missing: " + hash);
+        }
+        return node;
+    }
+
+    // Campi del content, letti una volta per riga: tipo e valore servono ai link del nodo, dei figli e del parent
+    private Label label(String hash, Map<String, ContentNodeRow> nodes, Map<String, Label> labels) {
+        Label label = labels.get(hash);
+        if (label == null) {
+            label = readLabel(row(hash, nodes).getContent());
+            labels.put(hash, label);
+        }
+        return label;
+    }
+
+    private Label readLabel(String content) {
+        try (JsonParser parser = objectMapper.getFactory().createParser(content)) {
+            parser.nextToken();
+            Label label = new Label();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("type".equals(field)) {
+                    label.type = parser.getValueAsString();
+                } else if ("value".equals(field) && token.isScalarValue()) {
+                    label.raw = token == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : parser.getValueAsString();
+                    label.value = String.valueOf(label.raw);
+                } else if ("authorName".equals(field)) {
+                    label.authorName = parser.getValueAsString();
+                } else if ("version".equals(field) && token == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.currentName();
+                        parser.nextToken();
+                        if ("hasParent".equals(name)) {
+                            label.versioned = parser.getValueAsBoolean();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return label;
+        } catch (IOException e) {
+            throw new IllegalStateException("Invalid stored content", e);
+        }
+    }
+
+    /**
+     * Legge i nodi dati (a blocchi), per chi visita solo una parte dei tree salvati.
+     * Il content e' sempre senza link, anche per le righe scritte prima del flag linked
+     */
+    @Transactional(readOnly = true)
+    public Map<String, PendingNode> load(Collection<String> hashes) {
+        List<String> all = new ArrayList<>(hashes);
+        Map<String, PendingNode> nodes = new HashMap<>(all.size() * 2);
+        for (int from = 0; from < all.size(); from += LOOKUP_CHUNK) {
+            for (ContentNodeRow row : contentNodeRepository.findByHashes(
+                    all.subList(from, Math.min(from + LOOKUP_CHUNK, all.size())))) {
+                List<String> children = row.getChildren().isEmpty()
+                    ? List.of() : List.of(row.getChildren().split(","));
+                String content = row.getLinked() != null ? row.getContent() : withoutLinks(row.getContent());
+                nodes.put(row.getHash(), new PendingNode(content, children, Boolean.TRUE.equals(row.getLinked())));
+            }
+        }
+        return nodes;
+    }
+
+    private Set<String> findExisting(Set<String> hashes) {
+        List<String> all = new ArrayList<>(hashes);
+        if (all.size() <= LOOKUP_CHUNK) {
+            return new HashSet<>(contentNodeRepository.findExistingHashes(all));
+        }
+        Set<String> existing = new HashSet<>();
+        for (int from = 0; from < all.size(); from += LOOKUP_CHUNK) {
+            existing.addAll(contentNodeRepository.findExistingHashes(
+                all.subList(from, Math.min(from + LOOKUP_CHUNK, all.size()))));
+        }
+        return existing;
+    }
+
+    // I nodi sono immutabili: se un'altra transazione l'ha gia' scritto non c'e' altro da fare
+    private void insertAll(List<String> hashes, Map<String, PendingNode> nodes) {
+        for (int from = 0; from < hashes.size(); from += INSERT_CHUNK) {
+            List<String> chunk = hashes.subList(from, Math.min(from + INSERT_CHUNK, hashes.size()));
+            StringBuilder sql = new StringBuilder("INSERT INTO content_nodes (hash, content, children, linked) VALUES ");
+            sql.append(String.join(",", Collections.nCopies(chunk.size(), "(?, ?, ?, ?)")));
+            sql.append(" ON CONFLICT (hash) DO NOTHING");
+
+            Object[] args = new Object[chunk.size() * 4];
+            int i = 0;
+            for (String hash : chunk) {
+                PendingNode node = nodes.get(hash);
+                args[i++] = hash;
+                args[i++] = node.content;
+                args[i++] = String.join(",", node.children);
+                args[i++] = node.linked;
+            }
+            jdbcTemplate.update(sql.toString(), args);
+        }
+    }
+
+    /**
+     * Scompone il JSON in nodi con i loro hash, dai token e senza ricostruire il Node tree.
+     * Null se il tree e' troncato; i content dei nodi sono senza link
+     */
+    Decomposed decompose(byte[] json) {
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            return readTree(parser, json);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid content JSON", e);
+        }
+    }
+
+    private Decomposed readTree(JsonParser parser, byte[] json) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Content JSON must be an object");
+        }
+
+        Map<String, PendingNode> nodes = new LinkedHashMap<>();
+        Deque<Frame> frames = new ArrayDeque<>();
+        frames.push(new Frame(null));
+        String root = null;
+        boolean derivable = true;
+
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            JsonToken token = parser.nextToken();
+
+            if (frame.inChildren) {
+                if (token == JsonToken.START_OBJECT) {
+                    frames.push(new Frame(frame));
+                } else if (token == JsonToken.END_ARRAY) {
+                    frame.inChildren = false;
+                } else {
+                    throw new IllegalArgumentException("Unexpected token in children: " + token);
+                }
+                continue;
+            }
+
+            if (token == JsonToken.END_OBJECT) {
+                frames.pop();
+                if (frame.label == null) {
+                    // Nodo troncato: non ha un content da condividere
+                    return null;
+                }
+
+                // I link salvati devono essere quelli che assemble rigenera, byte per byte
+                List<String[]> links = new ArrayList<>(frame.linkedChildren);
+                if (frame.linked) {
+                    links.add(frame.label.linkTo(frame.parent.label));
+                }
+                String content;
+                if (frame.links != null && frame.links.equals(links(links) + "}")) {
+                    content = frame.withoutLinks;
+                } else {
+                    derivable = false;
+                    content = withoutLinks(frame.content);
+                }
+
+                MerkleHash.Builder builder = MerkleHash.node(frame.leaf);
+                for (String child : frame.children) {
+                    builder.child(MerkleHash.fromHex(child));
+                }
+                String hash = MerkleHash.toHex(builder.build());
+                nodes.putIfAbsent(hash, new PendingNode(content, frame.children, frame.linked));
+                if (frames.isEmpty()) {
+                    root = hash;
+                } else {
+                    frames.peek().children.add(hash);
+                    if (frame.linked) {
+                        frames.peek().linkedChildren.add(frame.label.linkTo(frames.peek().label));
+                    }
+                }
+                continue;
+            }
+
+            if (token != JsonToken.FIELD_NAME) {
+                throw new IllegalArgumentException("Unexpected token in node: " + token);
+            }
+
+            String field = parser.currentName();
+            token = parser.nextToken();
+
+            if ("content".equals(field) && token == JsonToken.START_OBJECT) {
+                readContent(parser, json, frame);
+            } else if ("children".equals(field) && token == JsonToken.START_ARRAY) {
+                if (frame.label == null) {
+                    throw new IllegalArgumentException("Node children must follow its content");
+                }
+                frame.inChildren = true;
+            } else if ("childrenCount".equals(field)) {
+                // Derivato dai figli, ricalcolato in ricostruzione
+            } else {
+                return null;
+            }
+        }
+
+        return new Decomposed(root, nodes, derivable);
+    }
+
+    /*
+     * Legge il content con i campi della foglia Merkle e ne ritaglia i byte:
+     * tutto il content, e senza il campo links se e' l'ultimo (come lo scrive
+     * NodeTreeSerializer), insieme ai byte del campo tolto
+     */
+    private void readContent(JsonParser parser, byte[] json, Frame frame) throws IOException {
+        int start = (int) parser.currentTokenLocation().getByteOffset();
+        int previousEnd = (int) parser.currentLocation().getByteOffset();
+        int linksStart = -1;
+        String type = null;
+        Object value = null;
+        String authorName = null;
+        boolean versioned = false;
+        List<String[]> links = new ArrayList<>();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            linksStart = -1;
+
+            switch (field) {
+                case "type":
+                    type = parser.getValueAsString();
+                    break;
+                case "value":
+                    if (token == JsonToken.VALUE_NUMBER_INT) {
+                        value = parser.getIntValue();
+                    } else if (token.isScalarValue()) {
+                        value = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "authorName":
+                    authorName = parser.getValueAsString();
+                    break;
+                case "version":
+                    if (token != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        break;
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.currentName();
+                        parser.nextToken();
+                        if ("hasParent".equals(name)) {
+                            versioned = parser.getValueAsBoolean();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    break;
+                case "links":
+                    linksStart = previousEnd;
+                    if (token == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            links.add(readLink(parser));
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+            previousEnd = (int) parser.currentLocation().getByteOffset();
+        }
+        int end = (int) parser.currentLocation().getByteOffset();
+
+        if (type == null) {
+            throw new IllegalArgumentException("Content without type");
+        }
+        frame.label = new Label();
+        frame.label.type = type;
+        frame.label.value = String.valueOf(value);
+        frame.linked = frame.parent != null && frame.label.linkedTo(frame.parent.label, links);
+        frame.leaf = MerkleHash.leafHash(type, value, authorName, versioned, frame.linked);
+
+        frame.content = new String(json, start, end - start, StandardCharsets.UTF_8);
+        if (linksStart >= 0) {
+            frame.withoutLinks = new String(json, start, linksStart - start, StandardCharsets.UTF_8) + "}";
+            frame.links = new String(json, linksStart, end - linksStart, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String[] readLink(JsonParser parser) throws IOException {
+        String[] link = new String[4];
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "firstType": link[0] = parser.getValueAsString(); break;
+                case "firstValue": link[1] = parser.getValueAsString(); break;
+                case "secondType": link[2] = parser.getValueAsString(); break;
+                case "secondValue": link[3] = parser.getValueAsString(); break;
+                default: parser.skipChildren();
+            }
+        }
+        return link;
+    }
+
+    // Campo links come lo scrive NodeTreeSerializer, virgola iniziale compresa
+    private String links(List<String[]> links) {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(64 + links.size() * 96);
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                // Il generatore rifiuta un campo fuori da un oggetto: l'array si apre da solo e il nome si antepone
+                generator.writeStartArray();
+                for (String[] link : links) {
+                    generator.writeStartObject();
+                    generator.writeStringField("firstType", link[0]);
+                    generator.writeStringField("secondType", link[2]);
+                    generator.writeStringField("firstValue", link[1]);
+                    generator.writeStringField("secondValue", link[3]);
+                    generator.writeEndObject();
+                }
+                generator.writeEndArray();
+            }
+            return ",\"links\":" + out.toString(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Link serialization failed", e);
+        }
+    }
+
+    private String withoutLinks(String content) {
+        try {
+            JsonNode node = objectMapper.readTree(content);
+            if (node instanceof ObjectNode) {
+                ((ObjectNode) node).remove("links");
+            }
+            return objectMapper.writeValueAsString(node);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid content JSON", e);
+        }
+    }
+
+    static final class Decomposed {
+        final String root;
+        final Map<String, PendingNode> nodes;
+        // Link tutti ricavabili dalla struttura: il tree si puo' salvare in content_nodes
+        final boolean derivable;
+
+        Decomposed(String root, Map<String, PendingNode> nodes, boolean derivable) {
+            this.root = root;
+            this.nodes = nodes;
+            this.derivable = derivable;
+        }
+    }
+
+    static final class PendingNode {
+        final String content;
+        final List<String> children;
+        final boolean linked;
+
+        PendingNode(String content, List<String> children, boolean linked) {
+            this.content = content;
+            this.children = children;
+            this.linked = linked;
+        }
+    }
+
+    // Tipo e valore (come testo) di un content, i campi che finiscono nei link, e il resto della foglia Merkle
+    private static final class Label {
+        private String type;
+        private String value;
+        private Object raw;
+        private String authorName;
+        private boolean versioned;
+
+        // Il content ricostruito ha la stessa foglia di quello salvato (il flag linked lo decide restore)
+        private boolean restoredBy(Content<?> content) {
+            Version version = content.version();
+            return type.equals(content.typeName()) && Objects.equals(raw, content.show())
+                && Objects.equals(authorName, content.author() != null ? content.author().getName() : null)
+                && versioned == (version.parent() != version);
+        }
+
+        // firstType, firstValue, secondType, secondValue
+        private String[] linkTo(Label parent) {
+            return new String[] { type, value, parent.type, parent.value };
+        }
+
+        // Stessa regola di MerkleHash.linkedToParent
+        private boolean linkedTo(Label parent, List<String[]> links) {
+            for (String[] link : links) {
+                if (type.equals(link[0]) && value.equals(link[1])
+                        && parent.type.equals(link[2]) && parent.value.equals(link[3])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class Frame {
+        private final Frame parent;
+        private Label label;
+        private byte[] leaf;
+        private boolean linked;
+        private String content;
+        private String withoutLinks;
+        private String links;
+        private final List<String> children = new ArrayList<>();
+        private final List<String[]> linkedChildren = new ArrayList<>();
+        private boolean inChildren;
+
+        private Frame(Frame parent) {
+            this.parent = parent;
+        }
+    }
+}
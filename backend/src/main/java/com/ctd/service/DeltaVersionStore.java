@@ -0,0 +1,265 @@
+package com.ctd.service;
+
+import com.ctd.dto.projection.VersionDeltaRow;
+import com.ctd.model.DocumentVersion;
+import com.ctd.repository.DocumentVersionRepository;
+import com.ctd.service.NodeTreeSerializer.SerializedTree;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Modalita' di storage alternativa (versions.storage.mode=delta): ogni versione
+ * salva solo la JSON Patch rispetto al parent, e ogni snapshot-interval versioni
+ * un tree completo in content_nodes. Ricostruire una versione rigioca al piu'
+ * snapshot-interval - 1 delta, partendo dalla versione piu' vicina gia'
+ * materializzata nella cache LRU (limitata in byte), altrimenti dallo snapshot.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DeltaVersionStore {
+
+    private final DocumentVersionRepository versionRepository;
+    private final ContentNodeStore contentNodeStore;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${versions.storage.mode:nodes}")
+    private String mode;
+
+    @Value("${versions.storage.delta.snapshot-interval:20}")
+    private int snapshotInterval;
+
+    @Value("${versions.storage.delta.cache-max-bytes:67108864}")
+    private long cacheMaxBytes;
+
+    // versionId -> JSON materializzato (LRU); accessi sincronizzati sulla mappa
+    private final LinkedHashMap<UUID, String> materialized = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedBytes;
+
+    private Counter deltaWrites;
+    private Counter snapshotWrites;
+    private Counter cacheHits;
+    private Counter cacheMisses;
+    private DistributionSummary replayed;
+
+    @PostConstruct
+    void init() {
+        if (snapshotInterval < 1) {
+            throw new IllegalStateException("versions.storage.delta.snapshot-interval must be at least 1");
+        }
+        deltaWrites = Counter.builder("versions.delta.writes")
+            .description("Versioni salvate come JSON Patch")
+            .tag("kind", "delta")
+            .register(meterRegistry);
+        snapshotWrites = Counter.builder("versions.delta.writes")
+            .description("Versioni salvate come JSON Patch")
+            .tag("kind", "snapshot")
+            .register(meterRegistry);
+        cacheHits = Counter.builder("versions.delta.cache")
+            .description("Letture delle versioni materializzate")
+            .tag("result", "hit")
+            .register(meterRegistry);
+        cacheMisses = Counter.builder("versions.delta.cache")
+            .description("Letture delle versioni materializzate")
+            .tag("result", "miss")
+            .register(meterRegistry);
+        replayed = DistributionSummary.builder("versions.delta.replayed")
+            .description("Delta rigiocati per ricostruire una versione")
+            .register(meterRegistry);
+        Gauge.builder("versions.delta.snapshot-interval", () -> snapshotInterval)
+            .description("Versioni tra due snapshot completi")
+            .register(meterRegistry);
+        Gauge.builder("versions.delta.cache.size", this, DeltaVersionStore::cacheSize)
+            .description("Versioni materializzate in cache")
+            .register(meterRegistry);
+        Gauge.builder("versions.delta.cache.bytes", this, DeltaVersionStore::cachedBytes)
+            .description("Byte occupati dalle versioni materializzate in cache")
+            .register(meterRegistry);
+        Gauge.builder("versions.delta.cache.max-bytes", () -> cacheMaxBytes)
+            .description("Capacita' in byte della cache di versioni materializzate")
+            .register(meterRegistry);
+
+        log.info("Version storage mode: {} (snapshot every {} versions, cache {} bytes)",
+            mode, snapshotInterval, cacheMaxBytes);
+    }
+
+    public boolean enabled() {
+        return "delta".equalsIgnoreCase(mode);
+    }
+
+    /**
+     * Patch della nuova versione rispetto al parent, oppure null se va salvata
+     * completa: modalita' delta spenta, prima versione, intervallo di snapshot
+     * raggiunto, o patch non piu' piccola del contenuto stesso
+     */
+    public String encode(DocumentVersion parent, SerializedTree serialized) {
+        if (!enabled()) {
+            return null;
+        }
+        if (parent == null || parent.getDeltaDepth() + 1 >= snapshotInterval) {
+            snapshotWrites.increment();
+            return null;
+        }
+
+        try {
+            JsonNode source = objectMapper.readTree(materialize(parent.getId()));
+            JsonNode target = objectMapper.readTree(serialized.getJson());
+            byte[] patch = objectMapper.writeValueAsBytes(JsonPatch.diff(source, target));
+
+            if (patch.length >= serialized.getJson().length) {
+                snapshotWrites.increment();
+                return null;
+            }
+            // La patch deve ridare esattamente i byte serializzati, altrimenti si salva lo snapshot
+            byte[] rebuilt = objectMapper.writeValueAsBytes(JsonPatch.apply(source, objectMapper.readTree(patch)));
+            if (!Arrays.equals(rebuilt, serialized.getJson())) {
+                log.warn("Delta against version {} does not reproduce the content, storing a snapshot",
+                    parent.getId());
+                snapshotWrites.increment();
+                return null;
+            }
+
+            deltaWrites.increment();
+            return new String(patch, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Delta encoding failed", e);
+        }
+    }
+
+    /**
+     * Tiene in cache una versione appena scritta: la prossima patch partira' da li'
+     */
+    public void remember(UUID versionId, SerializedTree serialized) {
+        if (enabled()) {
+            cache(versionId, serialized.jsonString());
+        }
+    }
+
+    /**
+     * JSON della versione, dalla cache o ricostruito dalla catena di delta
+     */
+    @Transactional(readOnly = true)
+    public String materialize(UUID versionId) {
+        String cached = cached(versionId);
+        if (cached != null) {
+            cacheHits.increment();
+            return cached;
+        }
+        cacheMisses.increment();
+
+        String json = rebuild(versionId);
+        cache(versionId, json);
+        return json;
+    }
+
+    /**
+     * Come materialize ma senza passare dalla cache, per le scansioni complete
+     */
+    @Transactional(readOnly = true)
+    public String reconstruct(UUID versionId) {
+        return rebuild(versionId);
+    }
+
+    public long cachedBytes() {
+        synchronized (materialized) {
+            return cachedBytes;
+        }
+    }
+
+    public int cacheSize() {
+        synchronized (materialized) {
+            return materialized.size();
+        }
+    }
+
+    private String cached(UUID versionId) {
+        synchronized (materialized) {
+            return materialized.get(versionId);
+        }
+    }
+
+    // Toglie le versioni meno usate finche' la cache non rientra in max-bytes
+    private void cache(UUID versionId, String json) {
+        long bytes = weight(json);
+        if (bytes > cacheMaxBytes) {
+            return;
+        }
+        synchronized (materialized) {
+            String previous = materialized.put(versionId, json);
+            cachedBytes += bytes - (previous != null ? weight(previous) : 0);
+            Iterator<String> eldest = materialized.values().iterator();
+            while (cachedBytes > cacheMaxBytes && eldest.hasNext()) {
+                cachedBytes -= weight(eldest.next());
+                eldest.remove();
+            }
+        }
+    }
+
+    // Stima dello heap occupato: 2 byte per char, il caso peggiore di una String (UTF-16)
+    private static long weight(String json) {
+        return 2L * json.length();
+    }
+
+    private String rebuild(UUID versionId) {
+        List<VersionDeltaRow> chain = versionRepository.findDeltaChain(versionId, Integer.MAX_VALUE);
+        if (chain.isEmpty()) {
+            throw new IllegalStateException("Version not found: " + versionId);
+        }
+
+        // Punto di partenza: l'antenato piu' vicino in cache, altrimenti lo snapshot in fondo alla catena
+        int start = chain.size() - 1;
+        String base = null;
+        for (int i = 1; i < chain.size(); i++) {
+            String cached = cached(chain.get(i).getVersionId());
+            if (cached != null) {
+                start = i;
+                base = cached;
+                break;
+            }
+        }
+        if (base == null) {
+            VersionDeltaRow snapshot = chain.get(start);
+            if (snapshot.getContentDelta() != null) {
+                throw new IllegalStateException("Delta chain of version " + versionId + " has no snapshot");
+            }
+            base = snapshot.getContentJson() != null
+                ? snapshot.getContentJson()
+                : contentNodeStore.materialize(snapshot.getRootNodeHash());
+        }
+
+        replayed.record(start);
+        if (start == 0) {
+            return base;
+        }
+
+        try {
+            JsonNode document = objectMapper.readTree(base);
+            for (int i = start - 1; i >= 0; i--) {
+                document = JsonPatch.apply(document, objectMapper.readTree(chain.get(i).getContentDelta()));
+            }
+            return objectMapper.writeValueAsString(document);
+        } catch (IOException e) {
+            throw new IllegalStateException("Corrupted delta chain for version " + versionId, e);
+        }
+    }
+}
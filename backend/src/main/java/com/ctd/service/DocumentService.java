@@ -1,19 +1,35 @@
 package com.ctd.service;
 
+import com.ctd.dto.projection.DocumentSummary;
+import com.ctd.dto.projection.VersionContent;
+import com.ctd.dto.projection.VersionLineage;
+import com.ctd.dto.projection.VersionSummary;
+import com.ctd.dto.projection.VersionTag;
+import com.ctd.dto.request.KeysetCursor;
+import com.ctd.exception.BadRequestException;
 import com.ctd.exception.ResourceNotFoundException;
 import com.ctd.model.*;
 import com.ctd.repository.*;
+import com.ctd.service.NodeTreeSerializer.SerializedTree;
 import com.ctd.xanadu.content.Author;
 import com.ctd.xanadu.node.Node;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 
 @Service
@@ -29,7 +45,11 @@ public class DocumentService {
     private final XanaduService xanaduService;
     private final IotaService iotaService;
     private final AuditService auditService;
-    private final ObjectMapper objectMapper;
+    private final NodeTreeSerializer nodeTreeSerializer;
+    private final NotarizationOutboxService outboxService;
+    private final ContentNodeStore contentNodeStore;
+    private final ContentNodeCollector contentNodeCollector;
+    private final DeltaVersionStore deltaVersionStore;
 
     @Transactional
     public Document createDocument(String title, Document.DocumentType docType,
@@ -40,15 +60,11 @@ public class DocumentService {
         // 2. Crea documento Xanadu
         Node rootNode = xanaduService.createDocument(title, initialContent, xanaduAuthor);
 
-        // 3. Serializza in JSON
-        Map<String, Object> contentJson = xanaduService.serializeNodeTree(rootNode);
-        String jsonString = serializeToString(contentJson);
-        String contentHash = iotaService.calculateHash(jsonString);
+        // 3. Serializza in JSON (hash calcolato nello stesso passaggio)
+        SerializedTree serialized = nodeTreeSerializer.serialize(rootNode);
+        String contentHash = serialized.getContentHash();
 
-        // 4. Notarizza su IOTA (mock in MVP)
-        String iotaTxId = iotaService.notarize(contentHash, "Document creation: " + title);
-
-        // 5. Crea entity DB
+        // 4. Crea entity DB
         Document document = Document.builder()
             .title(title)
             .docType(docType)
@@ -57,27 +73,13 @@ public class DocumentService {
 
         document = documentRepository.save(document);
 
-        // 6. Crea prima versione
-        DocumentVersion version = DocumentVersion.builder()
-            .document(document)
-            .versionNumber(1)
-            .contentJson(contentJson)
-            .contentHash(contentHash)
-            .author(creator)
-            .parentVersion(null)
-            .iotaTxId(iotaTxId)
-            .build();
-
-        version = versionRepository.save(version);
+        // 5. Crea prima versione e accoda la notarizzazione su IOTA (mock in MVP)
+        DocumentVersion version = appendVersion(document, null, serialized, creator, "Document creation: " + title);
 
-        // 7. Aggiorna current version
-        document.setCurrentVersion(version);
-        documentRepository.save(document);
+        // 6. Audit log (iotaTxId assegnato in seguito dal NotarizationWorker)
+        auditService.logAction(creator, "CREATE", document, version, null, null);
 
-        // 8. Audit log
-        auditService.logAction(creator, "CREATE", document, version, null, iotaTxId);
-
-        log.info("Created document {} with version 1, IOTA tx: {}", document.getId(), iotaTxId);
+        log.info("Created document {} with version 1, notarization pending", document.getId());
         return document;
     }
 
@@ -88,9 +90,26 @@ public class DocumentService {
     }
 
     @Transactional(readOnly = true)
-    public List<Document> getDocumentsAccessibleByUser(User user) {
+    public DocumentSummary getDocumentSummary(UUID documentId) {
+        return documentRepository.findSummaryById(documentId)
+            .orElseThrow(() -> new ResourceNotFoundException("Document not found: " + documentId));
+    }
+
+    @Transactional(readOnly = true)
+    public VersionTag getCurrentVersionTag(UUID documentId) {
+        return documentRepository.findCurrentVersionTag(documentId)
+            .orElseThrow(() -> new ResourceNotFoundException("Document not found: " + documentId));
+    }
+
+    /**
+     * Una pagina dell'elenco documenti, dal piu' recente; cursor null per la prima pagina
+     */
+    @Transactional(readOnly = true)
+    public List<DocumentSummary> listDocuments(KeysetCursor cursor, int limit) {
         // TODO: implement proper permission check based on role
-        return documentRepository.findAccessibleByUser(user);
+        return cursor == null
+            ? documentRepository.findSummaries(Limit.of(limit))
+            : documentRepository.findSummariesAfter(cursor.getCreatedAt(), cursor.getId(), Limit.of(limit));
     }
 
     @Transactional(readOnly = true)
@@ -105,9 +124,87 @@ public class DocumentService {
     }
 
     @Transactional(readOnly = true)
-    public List<DocumentVersion> getVersionHistory(UUID documentId) {
-        Document document = getDocumentById(documentId);
-        return versionRepository.findByDocumentOrderByVersionNumberDesc(document);
+    public VersionTag getVersionTag(UUID versionId) {
+        return versionRepository.findTagById(versionId)
+            .orElseThrow(() -> new ResourceNotFoundException("Version not found: " + versionId));
+    }
+
+    /**
+     * Contenuto di una versione; se e' salvata in content_nodes o come delta il JSON viene ricostruito
+     */
+    @Transactional(readOnly = true)
+    public VersionContent getVersionContent(UUID versionId) {
+        VersionContent stored = versionRepository.findContentById(versionId)
+            .orElseThrow(() -> new ResourceNotFoundException("Version not found: " + versionId));
+        if (stored.getContentJson() != null) {
+            return stored;
+        }
+        String json = stored.getDeltaDepth() > 0
+            ? deltaVersionStore.materialize(versionId)
+            : contentNodeStore.materialize(stored.getRootNodeHash());
+        return new MaterializedContent(stored.getDocumentId(), stored.getAuthorName(), stored.getContentHash(),
+            json, stored.getRootNodeHash(), stored.getDeltaDepth());
+    }
+
+    /**
+     * Una pagina della version history, dalla versione toVersion (inclusa) a scendere fino a fromVersion
+     */
+    @Transactional(readOnly = true)
+    public List<VersionSummary> getVersionHistory(UUID documentId, int fromVersion, int toVersion, int limit) {
+        return versionRepository.findHistory(documentId, fromVersion, toVersion, Limit.of(limit));
+    }
+
+    /**
+     * Antenati di una versione, dal parent verso la radice (al massimo maxDepth passi)
+     */
+    @Transactional(readOnly = true)
+    public List<VersionLineage> getAncestors(UUID documentId, UUID versionId, int maxDepth) {
+        requireVersionOf(documentId, versionId);
+        return versionRepository.findAncestors(versionId, maxDepth);
+    }
+
+    /**
+     * Discendenti di una versione in ordine di distanza (al massimo maxDepth livelli)
+     */
+    @Transactional(readOnly = true)
+    public List<VersionLineage> getDescendants(UUID documentId, UUID versionId, int maxDepth) {
+        requireVersionOf(documentId, versionId);
+        return versionRepository.findDescendants(versionId, maxDepth);
+    }
+
+    /**
+     * Percorso tra due versioni attraverso l'antenato comune piu' vicino
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getLineage(UUID documentId, UUID fromVersionId, UUID toVersionId) {
+        requireVersionOf(documentId, fromVersionId);
+        requireVersionOf(documentId, toVersionId);
+
+        List<VersionLineage> path = versionRepository.findPath(fromVersionId, toVersionId, Integer.MAX_VALUE);
+
+        // Finche' si risale ogni passo e' il parent del precedente: il primo passo
+        // il cui successivo non e' il suo parent e' l'antenato comune
+        UUID commonAncestorId = null;
+        for (int i = 0; i < path.size(); i++) {
+            VersionLineage step = path.get(i);
+            if (i == path.size() - 1 || !path.get(i + 1).getVersionId().equals(step.getParentVersionId())) {
+                commonAncestorId = step.getVersionId();
+                break;
+            }
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("fromVersionId", fromVersionId);
+        result.put("toVersionId", toVersionId);
+        result.put("commonAncestorId", commonAncestorId);
+        result.put("path", path);
+        return result;
+    }
+
+    private void requireVersionOf(UUID documentId, UUID versionId) {
+        if (!getVersionTag(versionId).getDocumentId().equals(documentId)) {
+            throw new BadRequestException("Version does not belong to document");
+        }
     }
 
     @Transactional
@@ -127,33 +224,14 @@ public class DocumentService {
         // 3. Create new Xanadu document node with updated content
         Node rootNode = xanaduService.createDocument(newTitle, newContent, xanaduAuthor);
 
-        // 4. Serialize to JSON
-        Map<String, Object> contentJson = xanaduService.serializeNodeTree(rootNode);
-        String jsonString = serializeToString(contentJson);
-        String contentHash = iotaService.calculateHash(jsonString);
-
-        // 5. Notarize on IOTA (mock in MVP)
-        String iotaTxId = iotaService.notarize(contentHash, "Document update: " + newTitle);
-
-        // 6. Create new version (increment version number, link to parent)
-        int newVersionNumber = currentVersion.getVersionNumber() + 1;
-
-        DocumentVersion newVersion = DocumentVersion.builder()
-            .document(document)
-            .versionNumber(newVersionNumber)
-            .contentJson(contentJson)
-            .contentHash(contentHash)
-            .author(updater)
-            .parentVersion(currentVersion)  // Link to previous version
-            .iotaTxId(iotaTxId)
-            .build();
-
-        newVersion = versionRepository.save(newVersion);
+        // 4. Serialize to JSON (hash computed in the same pass)
+        SerializedTree serialized = nodeTreeSerializer.serialize(rootNode);
 
-        // 7. Update document's current version and title
-        document.setCurrentVersion(newVersion);
+        // 5-7. Create new version linked to parent, queue notarization, move current version
         document.setTitle(newTitle);
-        documentRepository.save(document);
+        DocumentVersion newVersion = appendVersion(document, currentVersion, serialized, updater,
+            "Document update: " + newTitle);
+        int newVersionNumber = newVersion.getVersionNumber();
 
         // 8. Audit log with change description
         Map<String, Object> auditDetails = Map.of(
@@ -162,10 +240,10 @@ public class DocumentService {
             "changeDescription", changeDescription != null ? changeDescription : "No description"
         );
 
-        auditService.logAction(updater, "UPDATE", document, newVersion, auditDetails, iotaTxId);
+        auditService.logAction(updater, "UPDATE", document, newVersion, auditDetails, null);
 
-        log.info("Updated document {} to version {}, IOTA tx: {}",
-            document.getId(), newVersionNumber, iotaTxId);
+        log.info("Updated document {} to version {}, notarization pending",
+            document.getId(), newVersionNumber);
 
         return document;
     }
@@ -178,30 +256,33 @@ public class DocumentService {
         Document sourceDocument = getDocumentById(sourceDocumentId);
         Document targetDocument = getDocumentById(targetDocumentId);
 
-        // 2. Create transclusion metadata
-        String transclusionData = String.format(
-            "Transclusion: %s[%s] -> %s[%s]",
-            sourceDocument.getTitle(),
-            sourceNodePath != null ? sourceNodePath : "root",
-            targetDocument.getTitle(),
-            targetNodePath != null ? targetNodePath : "root"
-        );
-
-        // 3. Notarize on IOTA (mock in MVP)
-        String contentHash = iotaService.calculateHash(transclusionData);
-        String iotaTxId = iotaService.notarize(contentHash, "Transclusion creation");
-
-        // 4. Create transclusion record
+        // 2. Create transclusion record to notarize (hashed in canonical JSON form)
+        DocumentVersion sourceVersion = sourceDocument.getCurrentVersion();
+        Map<String, Object> transclusionData = new HashMap<>();
+        transclusionData.put("type", "transclusion");
+        transclusionData.put("sourceDocumentId", sourceDocumentId);
+        transclusionData.put("sourceTitle", sourceDocument.getTitle());
+        transclusionData.put("sourceNodePath", sourceNodePath != null ? sourceNodePath : "root");
+        transclusionData.put("sourceContentHash", sourceVersion != null ? sourceVersion.getContentHash() : null);
+        transclusionData.put("targetDocumentId", targetDocumentId);
+        transclusionData.put("targetTitle", targetDocument.getTitle());
+        transclusionData.put("targetNodePath", targetNodePath != null ? targetNodePath : "root");
+
+        // 3. Hash to notarize on IOTA (mock in MVP)
+        String contentHash = iotaService.calculateCanonicalHash(transclusionData);
+
+        // 4. Create transclusion record and queue its notarization
         Transclusion transclusion = Transclusion.builder()
             .sourceDocument(sourceDocument)
             .sourceNodePath(sourceNodePath)
             .targetDocument(targetDocument)
             .targetNodePath(targetNodePath)
             .createdBy(creator)
-            .iotaTxId(iotaTxId)
             .build();
 
         transclusion = transclusionRepository.save(transclusion);
+        outboxService.enqueue(NotarizationOutbox.TargetType.TRANSCLUSION, transclusion.getId(),
+            contentHash, "Transclusion creation");
 
         // 5. Audit log
         Map<String, Object> auditDetails = Map.of(
@@ -216,15 +297,51 @@ public class DocumentService {
             targetDocument,
             targetDocument.getCurrentVersion(),
             auditDetails,
-            iotaTxId
+            null
         );
 
-        log.info("Created transclusion {} from doc {} to doc {}, IOTA tx: {}",
-            transclusion.getId(), sourceDocumentId, targetDocumentId, iotaTxId);
+        log.info("Created transclusion {} from doc {} to doc {}, notarization pending",
+            transclusion.getId(), sourceDocumentId, targetDocumentId);
 
         return transclusion;
     }
 
+    /**
+     * Salva una nuova versione come current version del documento e accoda la
+     * notarizzazione nella stessa transazione: la scrittura non attende il ledger
+     */
+    @Transactional
+    public DocumentVersion appendVersion(Document document, DocumentVersion parentVersion,
+                                         SerializedTree serialized, User author, String notaryMetadata) {
+        // In modalita' delta basta la patch rispetto al parent; altrimenti (o allo snapshot)
+        // solo i nodi nuovi finiscono in content_nodes, inline se il tree non e' scomponibile
+        String delta = deltaVersionStore.encode(parentVersion, serialized);
+        String rootNodeHash = delta == null ? contentNodeStore.store(serialized.getJson()) : null;
+
+        DocumentVersion version = DocumentVersion.builder()
+            .document(document)
+            .versionNumber(parentVersion != null ? parentVersion.getVersionNumber() + 1 : 1)
+            .contentJson(delta == null && rootNodeHash == null ? serialized.jsonString() : null)
+            .rootNodeHash(rootNodeHash)
+            .contentDelta(delta)
+            .deltaDepth(delta != null ? parentVersion.getDeltaDepth() + 1 : 0)
+            .contentHash(serialized.getContentHash())
+            .hashScheme(HashScheme.MERKLE_V2)
+            .author(author)
+            .parentVersion(parentVersion)
+            .notarizationStatus(NotarizationStatus.PENDING)
+            .build();
+
+        version = versionRepository.save(version);
+        deltaVersionStore.remember(version.getId(), serialized);
+        outboxService.enqueue(NotarizationOutbox.TargetType.VERSION, version.getId(),
+            version.getContentHash(), notaryMetadata);
+
+        document.setCurrentVersion(version);
+        documentRepository.save(document);
+        return version;
+    }
+
     @Transactional(readOnly = true)
     public List<Transclusion> getTransclusionsByTarget(UUID targetDocumentId) {
         Document targetDocument = getDocumentById(targetDocumentId);
@@ -257,72 +374,124 @@ public class DocumentService {
         // 5. Delete document (cascade will delete versions)
         documentRepository.delete(document);
 
+        // 6. I nodi usati solo dalle versioni cancellate restano orfani: dopo il commit si segnala
+        // la raccolta, che ContentNodeCollector esegue in background per tutte le cancellazioni insieme
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                contentNodeCollector.request();
+            }
+        });
+
         log.info("Deleted document {} by user {}", documentId, user.getId());
     }
 
+    /**
+     * Albero delle versioni in O(n): una query di projection (niente contentJson
+     * ne' lazy load), un indice parentId -> figli e una visita in ampiezza.
+     * limit tiene le versioni piu' recenti; quelle il cui parent resta fuori
+     * diventano radici. Oltre maxDepth i figli vengono omessi e il nodo ha
+     * "hasMoreChildren". "truncated" segnala che uno dei due tagli e' intervenuto.
+     */
     @Transactional(readOnly = true)
-    public Map<String, Object> getVersionTree(UUID documentId) {
-        Document document = getDocumentById(documentId);
-        List<DocumentVersion> allVersions = versionRepository.findByDocumentOrderByVersionNumberDesc(document);
+    public Map<String, Object> getVersionTree(UUID documentId, int maxDepth, int limit) {
+        UUID currentVersionId = getCurrentVersionTag(documentId).getVersionId();
+
+        List<VersionSummary> versions = versionRepository.findHistory(
+            documentId, 1, Integer.MAX_VALUE, Limit.of(limit + 1));
+        boolean truncated = versions.size() > limit;
+        if (truncated) {
+            versions = versions.subList(0, limit);
+        }
 
-        // Trova le versioni root (senza parent)
-        List<DocumentVersion> roots = allVersions.stream()
-            .filter(v -> v.getParentVersion() == null)
-            .collect(java.util.stream.Collectors.toList());
+        // Indice parent -> figli, nell'ordine della query (versione piu' recente prima)
+        Set<UUID> loaded = new HashSet<>(versions.size() * 2);
+        for (VersionSummary version : versions) {
+            loaded.add(version.getId());
+        }
+        Map<UUID, List<VersionSummary>> childrenByParent = new HashMap<>();
+        List<VersionSummary> roots = new ArrayList<>();
+        for (VersionSummary version : versions) {
+            UUID parentId = version.getParentVersionId();
+            if (parentId != null && loaded.contains(parentId)) {
+                childrenByParent.computeIfAbsent(parentId, k -> new ArrayList<>()).add(version);
+            } else {
+                roots.add(version);
+            }
+        }
 
-        // Costruisci albero per ogni root
-        List<Map<String, Object>> trees = roots.stream()
-            .map(root -> buildVersionTreeNode(root, allVersions, document.getCurrentVersion()))
-            .collect(java.util.stream.Collectors.toList());
+        // Visita iterativa: la profondita' della history non tocca lo stack
+        List<Map<String, Object>> trees = new ArrayList<>(roots.size());
+        Deque<TreeFrame> queue = new ArrayDeque<>();
+        for (VersionSummary root : roots) {
+            Map<String, Object> node = toVersionTreeNode(root, currentVersionId);
+            trees.add(node);
+            queue.add(new TreeFrame(root.getId(), node, 0));
+        }
 
-        return Map.of(
-            "documentId", documentId,
-            "trees", trees
-        );
-    }
+        while (!queue.isEmpty()) {
+            TreeFrame frame = queue.poll();
+            List<VersionSummary> children = childrenByParent.getOrDefault(frame.versionId, List.of());
+            List<Map<String, Object>> childNodes = new ArrayList<>(children.size());
+            frame.node.put("children", childNodes);
+
+            if (frame.depth >= maxDepth) {
+                if (!children.isEmpty()) {
+                    frame.node.put("hasMoreChildren", true);
+                    truncated = true;
+                }
+                continue;
+            }
+            for (VersionSummary child : children) {
+                Map<String, Object> childNode = toVersionTreeNode(child, currentVersionId);
+                childNodes.add(childNode);
+                queue.add(new TreeFrame(child.getId(), childNode, frame.depth + 1));
+            }
+        }
 
-    private Map<String, Object> buildVersionTreeNode(
-            DocumentVersion version,
-            List<DocumentVersion> allVersions,
-            DocumentVersion currentVersion) {
+        Map<String, Object> result = new HashMap<>();
+        result.put("documentId", documentId);
+        result.put("trees", trees);
+        result.put("truncated", truncated);
+        return result;
+    }
 
+    private Map<String, Object> toVersionTreeNode(VersionSummary version, UUID currentVersionId) {
         Map<String, Object> node = new HashMap<>();
         node.put("id", version.getId());
         node.put("versionNumber", version.getVersionNumber());
-        node.put("authorId", version.getAuthor().getId());
-        node.put("authorName", version.getAuthor().getName());
+        node.put("authorId", version.getAuthorId());
+        node.put("authorName", version.getAuthorName());
         node.put("createdAt", version.getCreatedAt().getEpochSecond());
         node.put("contentHash", version.getContentHash());
         node.put("iotaTxId", version.getIotaTxId());
-        node.put("isCurrent", version.getId().equals(currentVersion.getId()));
-
-        if (version.getParentVersion() != null) {
-            node.put("parentVersionId", version.getParentVersion().getId());
-        }
+        node.put("isCurrent", version.getId().equals(currentVersionId));
 
-        // Trova i children (versioni che hanno questa come parent)
-        List<DocumentVersion> children = allVersions.stream()
-            .filter(v -> v.getParentVersion() != null &&
-                         v.getParentVersion().getId().equals(version.getId()))
-            .collect(java.util.stream.Collectors.toList());
-
-        if (!children.isEmpty()) {
-            List<Map<String, Object>> childNodes = children.stream()
-                .map(child -> buildVersionTreeNode(child, allVersions, currentVersion))
-                .collect(java.util.stream.Collectors.toList());
-            node.put("children", childNodes);
-        } else {
-            node.put("children", List.of());
+        if (version.getParentVersionId() != null) {
+            node.put("parentVersionId", version.getParentVersionId());
         }
-
         return node;
     }
 
-    private String serializeToString(Map<String, Object> obj) {
-        try {
-            return objectMapper.writeValueAsString(obj);
-        } catch (Exception e) {
-            throw new RuntimeException("JSON serialization failed", e);
+    private static final class TreeFrame {
+        private final UUID versionId;
+        private final Map<String, Object> node;
+        private final int depth;
+
+        private TreeFrame(UUID versionId, Map<String, Object> node, int depth) {
+            this.versionId = versionId;
+            this.node = node;
+            this.depth = depth;
         }
     }
+
+    @Value
+    private static class MaterializedContent implements VersionContent {
+        UUID documentId;
+        String authorName;
+        String contentHash;
+        String contentJson;
+        String rootNodeHash;
+        Integer deltaDepth;
+    }
 }
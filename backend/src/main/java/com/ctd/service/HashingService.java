@@ -0,0 +1,133 @@
+package com.ctd.service;
+
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 in esadecimale senza allocazioni superflue: un MessageDigest e un
+ * buffer per thread, stringhe codificate in UTF-8 a blocchi nel buffer,
+ * hex tramite tabella. Gli input in streaming (ByteBuffer, InputStream,
+ * JSON canonico) vanno nel digest senza costruire String o byte[] intermedi.
+ */
+@Service
+public class HashingService {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    // Due caratteri per ogni valore di byte: una lookup per byte invece di due
+    private static final char[] HEX_PAIRS = new char[512];
+
+    static {
+        char[] digits = "0123456789abcdef".toCharArray();
+        for (int i = 0; i < 256; i++) {
+            HEX_PAIRS[i << 1] = digits[i >>> 4];
+            HEX_PAIRS[(i << 1) + 1] = digits[i & 0x0f];
+        }
+    }
+
+    private static final ThreadLocal<MessageDigest> SHA256 = ThreadLocal.withInitial(HashingService::newDigest);
+    private static final ThreadLocal<byte[]> BUFFER = ThreadLocal.withInitial(() -> new byte[BUFFER_SIZE]);
+
+    public String hash(String text) {
+        MessageDigest md = digest();
+        byte[] buffer = BUFFER.get();
+        int length = text.length();
+        int n = 0;
+
+        for (int i = 0; i < length; i++) {
+            // Spazio per il carattere piu' lungo (4 byte) prima di scrivere
+            if (n > BUFFER_SIZE - 4) {
+                md.update(buffer, 0, n);
+                n = 0;
+            }
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buffer[n++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[n++] = (byte) (0xc0 | (c >> 6));
+                buffer[n++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                buffer[n++] = (byte) (0xf0 | (cp >> 18));
+                buffer[n++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                buffer[n++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                buffer[n++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // Surrogato isolato: '?' come String.getBytes(UTF_8)
+                buffer[n++] = '?';
+            } else {
+                buffer[n++] = (byte) (0xe0 | (c >> 12));
+                buffer[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buffer[n++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        md.update(buffer, 0, n);
+        return toHex(md.digest());
+    }
+
+    public String hash(byte[] bytes) {
+        return toHex(digest().digest(bytes));
+    }
+
+    /**
+     * Hash dei byte rimanenti; la posizione del buffer del chiamante non cambia.
+     * Un buffer diretto o mappato passa al digest senza copie sull'heap
+     */
+    public String hash(ByteBuffer bytes) {
+        MessageDigest md = digest();
+        md.update(bytes.duplicate());
+        return toHex(md.digest());
+    }
+
+    /**
+     * Hash dello stream fino alla fine (lo stream non viene chiuso)
+     */
+    public String hash(InputStream in) throws IOException {
+        MessageDigest md = digest();
+        byte[] buffer = BUFFER.get();
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            md.update(buffer, 0, n);
+        }
+        return toHex(md.digest());
+    }
+
+    /**
+     * Hash della forma JSON canonica (RFC 8785) di un valore
+     */
+    public String hashCanonical(Object value) {
+        MessageDigest md = digest();
+        CanonicalJson.update(md, value);
+        return toHex(md.digest());
+    }
+
+    public static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length << 1];
+        for (int i = 0; i < bytes.length; i++) {
+            int pair = (bytes[i] & 0xff) << 1;
+            out[i << 1] = HEX_PAIRS[pair];
+            out[(i << 1) + 1] = HEX_PAIRS[pair + 1];
+        }
+        return new String(out);
+    }
+
+    // Reset: un'eccezione a meta' aggiornamento non deve sporcare l'hash successivo
+    private static MessageDigest digest() {
+        MessageDigest md = SHA256.get();
+        md.reset();
+        return md;
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 algorithm not available", e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.ctd.service;
+
+import com.ctd.model.IntegrityScan;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * Esecuzione da riga di comando: java -jar app.jar --integrity-scan [--resume]
+ * Exit code 0 se la scansione termina senza discrepanze, 1 altrimenti; le
+ * versioni legacy non verificabili sono riportate ma non fanno fallire il run.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class IntegrityScanRunner implements ApplicationRunner {
+
+    private final IntegrityScanService integrityScanService;
+    private final ApplicationContext applicationContext;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!args.containsOption("integrity-scan")) {
+            return;
+        }
+
+        IntegrityScan scan = integrityScanService.runNow(args.containsOption("resume"));
+        boolean clean = scan.getStatus() == IntegrityScan.Status.COMPLETED && scan.getMismatches() == 0;
+        log.info("Integrity scan {} finished with status {}, {} mismatches, {} unverifiable legacy versions",
+            scan.getId(), scan.getStatus(), scan.getMismatches(), scan.getLegacyRows());
+
+        System.exit(SpringApplication.exit(applicationContext, () -> clean ? 0 : 1));
+    }
+}
@@ -0,0 +1,330 @@
+package com.ctd.service;
+
+import com.ctd.dto.projection.VersionHashRow;
+import com.ctd.model.HashScheme;
+import com.ctd.model.IntegrityMismatch;
+import com.ctd.model.IntegrityScan;
+import com.ctd.repository.DocumentVersionRepository;
+import com.ctd.repository.IntegrityMismatchRepository;
+import com.ctd.repository.IntegrityScanRepository;
+import com.ctd.xanadu.node.MerkleHash;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Controllo di integrita' delle versioni: ogni content_json viene ri-hashato
+ * (Merkle root, vedi NodeTreeHasher) e confrontato con content_hash, secondo
+ * lo schema in hash_scheme (MERKLE o MERKLE_V2).
+ *
+ * Le versioni senza hash_scheme sono state scritte prima del marcatore e
+ * possono avere ancora lo SHA-256 dell'intero documento: se la root MERKLE non
+ * corrisponde si prova l'hash legacy, e se nemmeno quello corrisponde la riga
+ * e' riportata con esito LEGACY, a parte rispetto alle discrepanze (JSONB non
+ * conserva i byte originali, quindi l'hash legacy non e' sempre riproducibile).
+ *
+ * Le versioni vengono lette a pagine con keyset su id; ogni pagina e' hashata
+ * in parallelo su un ForkJoinPool dedicato e alla fine il cursore viene salvato
+ * insieme alle discrepanze trovate, cosi' una scansione interrotta (stop o
+ * riavvio) riprende dall'ultima pagina completata.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IntegrityScanService {
+
+    private static final UUID FIRST_ID = new UUID(0L, 0L);
+
+    private final DocumentVersionRepository versionRepository;
+    private final IntegrityScanRepository scanRepository;
+    private final IntegrityMismatchRepository mismatchRepository;
+    private final NodeTreeHasher nodeTreeHasher;
+    private final ContentNodeStore contentNodeStore;
+    private final DeltaVersionStore deltaVersionStore;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${integrity.scan.page-size:2000}")
+    private int pageSize;
+
+    @Value("${integrity.scan.parallelism:0}")
+    private int parallelism;
+
+    private ForkJoinPool hashPool;
+    private ExecutorService launcher;
+    private Counter rowsCounter;
+    private Counter bytesCounter;
+    private Counter mismatchCounter;
+    private Counter legacyCounter;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile boolean stopRequested;
+
+    // Throughput della sola esecuzione corrente (una ripresa riparte da zero)
+    private volatile long runStartedNanos;
+    private volatile long runRows;
+    private volatile long runBytes;
+
+    @PostConstruct
+    void start() {
+        hashPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        launcher = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "integrity-scan");
+            t.setDaemon(true);
+            return t;
+        });
+        rowsCounter = Counter.builder("integrity.scan.rows")
+            .description("Versioni ri-hashate dal controllo di integrita'")
+            .register(meterRegistry);
+        bytesCounter = Counter.builder("integrity.scan.bytes")
+            .description("Byte di content_json ri-hashati")
+            .baseUnit("bytes")
+            .register(meterRegistry);
+        mismatchCounter = Counter.builder("integrity.scan.mismatches")
+            .description("Versioni il cui content_json non corrisponde a content_hash")
+            .register(meterRegistry);
+        legacyCounter = Counter.builder("integrity.scan.legacy")
+            .description("Versioni pre-Merkle il cui hash non e' riproducibile")
+            .register(meterRegistry);
+    }
+
+    @PreDestroy
+    void stop() {
+        stopRequested = true;
+        launcher.shutdown();
+        hashPool.shutdown();
+    }
+
+    /**
+     * Avvia una scansione in background; con resume riprende l'ultima non completata
+     */
+    public IntegrityScan startAsync(boolean resume) {
+        IntegrityScan scan = prepare(resume);
+        launcher.execute(() -> run(scan));
+        return scan;
+    }
+
+    /**
+     * Esegue la scansione nel thread chiamante (uso da CLI)
+     */
+    public IntegrityScan runNow(boolean resume) {
+        return run(prepare(resume));
+    }
+
+    public void requestStop() {
+        if (running.get()) {
+            stopRequested = true;
+        }
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("running", running.get());
+
+        scanRepository.findFirstByOrderByStartedAtDesc().ifPresent(scan -> {
+            status.put("scanId", scan.getId());
+            status.put("status", scan.getStatus());
+            status.put("cursor", scan.getCursorId());
+            status.put("rowsScanned", scan.getRowsScanned());
+            status.put("bytesScanned", scan.getBytesScanned());
+            status.put("mismatches", scan.getMismatches());
+            status.put("legacyRows", scan.getLegacyRows());
+            status.put("startedAt", scan.getStartedAt());
+            status.put("finishedAt", scan.getFinishedAt());
+            status.put("recentMismatches", mismatchRepository.findTop100ByScanIdOrderByDetectedAtDesc(scan.getId())
+                .stream()
+                .map(m -> {
+                    Map<String, Object> entry = new LinkedHashMap<>();
+                    entry.put("versionId", m.getVersionId());
+                    entry.put("outcome", m.getOutcome());
+                    entry.put("storedHash", m.getStoredHash());
+                    entry.put("computedHash", m.getComputedHash());
+                    entry.put("error", m.getError());
+                    return entry;
+                })
+                .collect(Collectors.toList()));
+        });
+
+        double seconds = runStartedNanos == 0 ? 0 : (System.nanoTime() - runStartedNanos) / 1e9;
+        status.put("rowsPerSecond", seconds > 0 ? runRows / seconds : 0);
+        status.put("mbPerSecond", seconds > 0 ? runBytes / 1e6 / seconds : 0);
+        return status;
+    }
+
+    private IntegrityScan prepare(boolean resume) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("Integrity scan already running");
+        }
+        stopRequested = false;
+
+        try {
+            IntegrityScan scan = resume
+                ? scanRepository.findFirstByOrderByStartedAtDesc()
+                    .filter(s -> s.getStatus() != IntegrityScan.Status.COMPLETED)
+                    .orElseGet(IntegrityScan::new)
+                : new IntegrityScan();
+            if (scan.getId() != null) {
+                log.info("Resuming integrity scan {} after version {}", scan.getId(), scan.getCursorId());
+            }
+            scan.setStatus(IntegrityScan.Status.RUNNING);
+            scan.setFinishedAt(null);
+            return scanRepository.save(scan);
+        } catch (RuntimeException e) {
+            running.set(false);
+            throw e;
+        }
+    }
+
+    private IntegrityScan run(IntegrityScan scan) {
+        runStartedNanos = System.nanoTime();
+        runRows = 0;
+        runBytes = 0;
+
+        try {
+            UUID cursor = scan.getCursorId() != null ? scan.getCursorId() : FIRST_ID;
+            while (true) {
+                if (stopRequested) {
+                    scan = finish(scan, IntegrityScan.Status.INTERRUPTED);
+                    break;
+                }
+
+                List<VersionHashRow> page = versionRepository.findHashRowsAfter(cursor, pageSize);
+                if (page.isEmpty()) {
+                    scan = finish(scan, IntegrityScan.Status.COMPLETED);
+                    break;
+                }
+
+                UUID scanId = scan.getId();
+                List<Check> checks = hashPool.submit(() -> page.parallelStream()
+                    .map(row -> check(scanId, row))
+                    .collect(Collectors.toList())).get();
+
+                long bytes = 0;
+                long legacy = 0;
+                List<IntegrityMismatch> mismatches = new ArrayList<>();
+                for (Check c : checks) {
+                    bytes += c.bytes;
+                    if (c.mismatch != null) {
+                        mismatches.add(c.mismatch);
+                        if (c.mismatch.getOutcome() == IntegrityMismatch.Outcome.LEGACY) {
+                            legacy++;
+                        }
+                    }
+                }
+                long failed = mismatches.size() - legacy;
+
+                cursor = page.get(page.size() - 1).getVersionId();
+                scan.setCursorId(cursor);
+                scan.setRowsScanned(scan.getRowsScanned() + page.size());
+                scan.setBytesScanned(scan.getBytesScanned() + bytes);
+                scan.setMismatches(scan.getMismatches() + failed);
+                scan.setLegacyRows(scan.getLegacyRows() + legacy);
+                scan = savePage(scan, mismatches);
+
+                runRows += page.size();
+                runBytes += bytes;
+                rowsCounter.increment(page.size());
+                bytesCounter.increment(bytes);
+                mismatchCounter.increment(failed);
+                legacyCounter.increment(legacy);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            scan = finish(scan, IntegrityScan.Status.INTERRUPTED);
+        } catch (ExecutionException | RuntimeException e) {
+            log.error("Integrity scan {} failed at version {}", scan.getId(), scan.getCursorId(), e);
+            scan = finish(scan, IntegrityScan.Status.FAILED);
+        } finally {
+            running.set(false);
+        }
+
+        log.info("Integrity scan {} {}: {} versions, {} bytes, {} mismatches, {} unverifiable legacy",
+            scan.getId(), scan.getStatus(), scan.getRowsScanned(), scan.getBytesScanned(), scan.getMismatches(),
+            scan.getLegacyRows());
+        return scan;
+    }
+
+    private Check check(UUID scanId, VersionHashRow row) {
+        byte[] json = new byte[0];
+        String computed = null;
+        String error = null;
+        IntegrityMismatch.Outcome outcome = IntegrityMismatch.Outcome.MISMATCH;
+        try {
+            // Versioni in content_nodes o come delta: si verifica il tree ricostruito (nodi condivisi e patch comprese)
+            String content = row.getContentJson() != null ? row.getContentJson()
+                : row.getRootNodeHash() != null ? contentNodeStore.materialize(row.getRootNodeHash())
+                : deltaVersionStore.reconstruct(row.getVersionId());
+            json = content.getBytes(StandardCharsets.UTF_8);
+            // Senza marcatore si prova il primo schema Merkle, poi lo SHA-256 pre-Merkle
+            HashScheme scheme = row.getHashScheme() != null ? HashScheme.valueOf(row.getHashScheme()) : HashScheme.MERKLE;
+            computed = MerkleHash.toHex(nodeTreeHasher.hash(json, scheme));
+            if (computed.equals(row.getContentHash())) {
+                return new Check(json.length, null);
+            }
+            if (row.getHashScheme() == null) {
+                computed = nodeTreeHasher.legacyHash(json);
+                if (computed.equals(row.getContentHash())) {
+                    return new Check(json.length, null);
+                }
+                outcome = IntegrityMismatch.Outcome.LEGACY;
+            }
+        } catch (RuntimeException e) {
+            // Qualunque errore su una riga (JSON illeggibile, nodo mancante, accesso al DB) resta su quella riga
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getName();
+            outcome = IntegrityMismatch.Outcome.MISMATCH;
+        }
+
+        return new Check(json.length, IntegrityMismatch.builder()
+            .scanId(scanId)
+            .versionId(row.getVersionId())
+            .storedHash(row.getContentHash())
+            .computedHash(computed)
+            .outcome(outcome)
+            .error(error)
+            .build());
+    }
+
+    // Discrepanze e cursore nella stessa transazione: una pagina e' tutta salvata o da rifare
+    private IntegrityScan savePage(IntegrityScan scan, List<IntegrityMismatch> mismatches) {
+        return transactionTemplate.execute(tx -> {
+            mismatchRepository.saveAll(mismatches);
+            return scanRepository.save(scan);
+        });
+    }
+
+    private IntegrityScan finish(IntegrityScan scan, IntegrityScan.Status status) {
+        scan.setStatus(status);
+        scan.setFinishedAt(status == IntegrityScan.Status.COMPLETED ? Instant.now() : null);
+        return scanRepository.save(scan);
+    }
+
+    private static final class Check {
+        private final long bytes;
+        private final IntegrityMismatch mismatch;
+
+        private Check(long bytes, IntegrityMismatch mismatch) {
+            this.bytes = bytes;
+            this.mismatch = mismatch;
+        }
+    }
+}
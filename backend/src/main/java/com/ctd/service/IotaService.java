@@ -1,21 +1,37 @@
 package com.ctd.service;
 
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.nio.charset.StandardCharsets;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.UUID;
 
 @Service
+@RequiredArgsConstructor
 @Slf4j
 public class IotaService {
 
+    private final HashingService hashingService;
+
     @Value("${iota.enabled:false}")
     private boolean iotaEnabled;
 
+    private static final int MAX_MOCK_LEDGER = 10_000;
+
+    // Ledger locale per la modalita' mock: txId -> hash ancorato, solo le tx piu' recenti;
+    // le piu' vecchie si verificano come quelle ancorate prima di un riavvio
+    private final Map<String, String> mockLedger = Collections.synchronizedMap(new LinkedHashMap<>(256, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_MOCK_LEDGER;
+        }
+    });
+
     /**
      * Notarizza un hash su IOTA Tangle
      * MVP: ritorna mock transaction ID
@@ -23,6 +39,7 @@ public class IotaService {
     public String notarize(String contentHash, String metadata) {
         if (!iotaEnabled) {
             String mockTxId = "MOCK_TX_" + UUID.randomUUID().toString();
+            mockLedger.put(mockTxId, contentHash);
             log.info("MOCK IOTA notarization - hash: {}, txId: {}", contentHash, mockTxId);
             return mockTxId;
         }
@@ -42,13 +59,30 @@ public class IotaService {
     public boolean verify(String txId, String expectedHash) {
         if (!iotaEnabled) {
             log.info("MOCK IOTA verification - txId: {}, hash: {}", txId, expectedHash);
-            return txId != null && txId.startsWith("MOCK_TX_");
+            return verifyMock(txId, expectedHash);
         }
 
         // TODO Phase 2: fetch da IOTA e confronta hash
         throw new UnsupportedOperationException("Real IOTA verification not yet implemented");
     }
 
+    /**
+     * Verifica piu' transazioni in una sola chiamata: txId -> hash atteso.
+     * Le tx di un batch notarizzato condividono la root, quindi il chiamante
+     * passa ogni txId una volta sola.
+     */
+    public Map<String, Boolean> verifyAll(Map<String, String> expectedByTxId) {
+        Map<String, Boolean> results = new HashMap<>(expectedByTxId.size() * 2);
+        if (!iotaEnabled) {
+            log.info("MOCK IOTA batch verification - {} transactions", expectedByTxId.size());
+            expectedByTxId.forEach((txId, hash) -> results.put(txId, verifyMock(txId, hash)));
+            return results;
+        }
+
+        // TODO Phase 2: fetch multiplo dei blocchi da IOTA e confronto degli hash
+        throw new UnsupportedOperationException("Real IOTA verification not yet implemented");
+    }
+
     /**
      * Crea un DID IOTA per un utente
      * MVP: ritorna mock DID
@@ -64,24 +98,20 @@ public class IotaService {
         throw new UnsupportedOperationException("Real IOTA DID creation not yet implemented");
     }
 
-    /**
-     * Calcola SHA-256 hash di una stringa JSON
-     */
-    public String calculateHash(String content) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(content.getBytes(StandardCharsets.UTF_8));
-            return bytesToHex(hash);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not available", e);
+    private boolean verifyMock(String txId, String expectedHash) {
+        if (txId == null) {
+            return false;
         }
+        // Tx ancorate prima del riavvio (o uscite dal ledger locale) non ci sono piu'
+        String anchored = mockLedger.get(txId);
+        return anchored != null ? anchored.equals(expectedHash) : txId.startsWith("MOCK_TX_");
     }
 
-    private String bytesToHex(byte[] bytes) {
-        StringBuilder result = new StringBuilder();
-        for (byte b : bytes) {
-            result.append(String.format("%02x", b));
-        }
-        return result.toString();
+    /**
+     * Calcola SHA-256 della forma JSON canonica (RFC 8785) di un valore:
+     * l'hash non dipende dall'ordine delle chiavi e i byte vanno direttamente nel digest
+     */
+    public String calculateCanonicalHash(Object value) {
+        return hashingService.hashCanonical(value);
     }
 }
@@ -0,0 +1,177 @@
+package com.ctd.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Iterator;
+
+/**
+ * Sottoinsieme di JSON Patch (RFC 6902) per le versioni salvate come delta:
+ * operazioni add, remove e replace con path JSON Pointer (RFC 6901).
+ *
+ * diff() confronta gli array per posizione (aggiunte e rimozioni in coda, il
+ * caso tipico di una nuova sezione) e sostituisce per intero un oggetto le cui
+ * chiavi cambiano insieme o ordine: apply() restituisce cosi' un albero che si
+ * serializza negli stessi byte del target.
+ */
+public final class JsonPatch {
+
+    private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+    private JsonPatch() {
+    }
+
+    public static ArrayNode diff(JsonNode source, JsonNode target) {
+        ArrayNode patch = NODES.arrayNode();
+        diff(source, target, "", patch);
+        return patch;
+    }
+
+    /**
+     * Applica la patch sul documento dato, che viene modificato; restituisce la nuova radice
+     */
+    public static JsonNode apply(JsonNode document, JsonNode patch) {
+        JsonNode root = document;
+        for (JsonNode operation : patch) {
+            String op = operation.path("op").asText();
+            String path = operation.path("path").asText();
+            JsonNode value = operation.get("value");
+
+            if (path.isEmpty()) {
+                if (!"replace".equals(op) || value == null) {
+                    throw new IllegalArgumentException("Unsupported patch on document root: " + op);
+                }
+                root = value.deepCopy();
+                continue;
+            }
+
+            int slash = path.lastIndexOf('/');
+            JsonNode parent = resolve(root, path.substring(0, slash));
+            String token = unescape(path.substring(slash + 1));
+
+            switch (op) {
+                case "add":
+                    add(parent, token, value.deepCopy());
+                    break;
+                case "remove":
+                    remove(parent, token);
+                    break;
+                case "replace":
+                    replace(parent, token, value.deepCopy());
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported patch operation: " + op);
+            }
+        }
+        return root;
+    }
+
+    private static void diff(JsonNode source, JsonNode target, String path, ArrayNode patch) {
+        if (source.equals(target)) {
+            return;
+        }
+        if (source.isObject() && target.isObject() && sameKeys(source, target)) {
+            Iterator<String> names = source.fieldNames();
+            while (names.hasNext()) {
+                String name = names.next();
+                diff(source.get(name), target.get(name), path + "/" + escape(name), patch);
+            }
+            return;
+        }
+        if (source.isArray() && target.isArray()) {
+            int common = Math.min(source.size(), target.size());
+            for (int i = 0; i < common; i++) {
+                diff(source.get(i), target.get(i), path + "/" + i, patch);
+            }
+            // Rimozioni dalla coda, cosi' gli indici restano validi
+            for (int i = source.size() - 1; i >= common; i--) {
+                patch.addObject().put("op", "remove").put("path", path + "/" + i);
+            }
+            for (int i = common; i < target.size(); i++) {
+                patch.addObject().put("op", "add").put("path", path + "/" + i).set("value", target.get(i));
+            }
+            return;
+        }
+        patch.addObject().put("op", "replace").put("path", path).set("value", target);
+    }
+
+    private static boolean sameKeys(JsonNode source, JsonNode target) {
+        if (source.size() != target.size()) {
+            return false;
+        }
+        Iterator<String> a = source.fieldNames();
+        Iterator<String> b = target.fieldNames();
+        while (a.hasNext()) {
+            if (!a.next().equals(b.next())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static JsonNode resolve(JsonNode root, String pointer) {
+        JsonNode node = root;
+        if (!pointer.isEmpty()) {
+            for (String token : pointer.substring(1).split("/", -1)) {
+                node = node.isArray() ? node.get(index(token)) : node.get(unescape(token));
+                if (node == null) {
+                    throw new IllegalArgumentException("Patch path not found: " + pointer);
+                }
+            }
+        }
+        return node;
+    }
+
+    private static void add(JsonNode parent, String token, JsonNode value) {
+        if (parent.isArray()) {
+            ArrayNode array = (ArrayNode) parent;
+            if ("-".equals(token)) {
+                array.add(value);
+            } else {
+                array.insert(index(token), value);
+            }
+        } else if (parent.isObject()) {
+            ((ObjectNode) parent).set(token, value);
+        } else {
+            throw new IllegalArgumentException("Patch target is not a container: " + token);
+        }
+    }
+
+    // Sul posto: una chiave sostituita non si sposta in fondo all'oggetto
+    private static void replace(JsonNode parent, String token, JsonNode value) {
+        if (parent.isArray() && index(token) < parent.size()) {
+            ((ArrayNode) parent).set(index(token), value);
+        } else if (parent.isObject() && parent.has(token)) {
+            ((ObjectNode) parent).set(token, value);
+        } else {
+            throw new IllegalArgumentException("Patch path not found: " + token);
+        }
+    }
+
+    private static void remove(JsonNode parent, String token) {
+        JsonNode removed = parent.isArray()
+            ? ((ArrayNode) parent).remove(index(token))
+            : parent.isObject() ? ((ObjectNode) parent).remove(token) : null;
+        if (removed == null) {
+            throw new IllegalArgumentException("Patch path not found: " + token);
+        }
+    }
+
+    private static int index(String token) {
+        try {
+            return Integer.parseInt(token);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid array index in patch: " + token);
+        }
+    }
+
+    private static String escape(String name) {
+        return name.replace("~", "~0").replace("/", "~1");
+    }
+
+    private static String unescape(String token) {
+        return token.replace("~1", "/").replace("~0", "~");
+    }
+}
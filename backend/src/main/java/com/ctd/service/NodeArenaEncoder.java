@@ -0,0 +1,200 @@
+package com.ctd.service;
+
+import com.ctd.xanadu.node.NodeArena;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Codifica un contentJson salvato in un NodeArena direttamente dai token: i
+ * nodi finiscono in colonne di int off-heap e le stringhe in un pool UTF-8,
+ * senza creare DocumentNode, Content o Link e senza agganciare nulla al
+ * RootNode. Il tree ottenuto si legge con la normale API Node/Content.
+ *
+ * Come per NodeTreeDeserializer, "content" deve precedere "children" e i
+ * nodi senza content (maxDepthReached) vengono saltati.
+ */
+@Service
+@RequiredArgsConstructor
+public class NodeArenaEncoder {
+
+    private final ObjectMapper objectMapper;
+
+    public NodeArena encode(byte[] json) {
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            return readTree(parser);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid content JSON", e);
+        }
+    }
+
+    private NodeArena readTree(JsonParser parser) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Content JSON must be an object");
+        }
+
+        NodeArena.Builder arena = NodeArena.builder();
+        Deque<Frame> frames = new ArrayDeque<>();
+        frames.push(new Frame(null));
+        boolean hasRoot = false;
+
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            JsonToken token = parser.nextToken();
+
+            if (frame.inChildren) {
+                if (token == JsonToken.START_OBJECT) {
+                    frames.push(new Frame(frame));
+                } else if (token == JsonToken.END_ARRAY) {
+                    frame.inChildren = false;
+                } else {
+                    throw new IllegalArgumentException("Unexpected token in children: " + token);
+                }
+                continue;
+            }
+
+            if (token == JsonToken.END_OBJECT) {
+                frames.pop();
+                continue;
+            }
+
+            if (token != JsonToken.FIELD_NAME) {
+                throw new IllegalArgumentException("Unexpected token in node: " + token);
+            }
+
+            String field = parser.currentName();
+            token = parser.nextToken();
+
+            if ("content".equals(field) && token == JsonToken.START_OBJECT) {
+                readContent(parser, frame);
+                // Pre-ordine: il nodo entra nell'arena appena letto il suo content
+                frame.index = arena.add(frame.parent != null ? frame.parent.index : -1,
+                    frame.type, frame.value, frame.authorName, frame.versioned, frame.linkedToParent());
+                hasRoot = true;
+            } else if ("children".equals(field) && token == JsonToken.START_ARRAY) {
+                if (frame.index < 0) {
+                    throw new IllegalArgumentException("Node children must follow its content");
+                }
+                frame.inChildren = true;
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (!hasRoot) {
+            throw new IllegalArgumentException("Content JSON has no root content");
+        }
+        return arena.build();
+    }
+
+    private void readContent(JsonParser parser, Frame frame) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+
+            switch (field) {
+                case "type":
+                    frame.type = parser.getValueAsString();
+                    break;
+                case "value":
+                    if (token == JsonToken.VALUE_NUMBER_INT) {
+                        frame.value = parser.getIntValue();
+                    } else if (token.isScalarValue()) {
+                        frame.value = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "authorName":
+                    frame.authorName = parser.getValueAsString();
+                    break;
+                case "version":
+                    if (token != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        break;
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.currentName();
+                        parser.nextToken();
+                        if ("hasParent".equals(name)) {
+                            frame.versioned = parser.getValueAsBoolean();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    break;
+                case "links":
+                    if (token == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            frame.links.add(readLink(parser));
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (frame.type == null) {
+            throw new IllegalArgumentException("Content without type");
+        }
+    }
+
+    private String[] readLink(JsonParser parser) throws IOException {
+        String[] link = new String[4];
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "firstType": link[0] = parser.getValueAsString(); break;
+                case "firstValue": link[1] = parser.getValueAsString(); break;
+                case "secondType": link[2] = parser.getValueAsString(); break;
+                case "secondValue": link[3] = parser.getValueAsString(); break;
+                default: parser.skipChildren();
+            }
+        }
+        return link;
+    }
+
+    private static final class Frame {
+        private final Frame parent;
+        private int index = -1;
+        private boolean inChildren;
+
+        private String type;
+        private Object value;
+        private String authorName;
+        private boolean versioned;
+        private final List<String[]> links = new ArrayList<>();
+
+        private Frame(Frame parent) {
+            this.parent = parent;
+        }
+
+        // Il content e' collegato a quello del parent se tra i suoi link c'e' la coppia (questo, parent)
+        private boolean linkedToParent() {
+            if (parent == null) {
+                return false;
+            }
+            String ownValue = String.valueOf(value);
+            String parentValue = String.valueOf(parent.value);
+            for (String[] link : links) {
+                if (type.equals(link[0]) && ownValue.equals(link[1])
+                        && parent.type.equals(link[2]) && parentValue.equals(link[3])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.ctd.service;
+
+import com.ctd.xanadu.content.Author;
+import com.ctd.xanadu.content.Content;
+import com.ctd.xanadu.node.DocumentNode;
+import com.ctd.xanadu.node.Node;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadConstraints;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Ricostruisce un Node tree direttamente dai token del contentJson salvato,
+ * senza materializzare mappe intermedie. Lo stack dei nodi aperti e' esplicito,
+ * quindi la profondita' del documento non e' limitata dallo stack Java; per lo
+ * stesso motivo il parser non applica il limite di nesting di Jackson (1000
+ * livelli, cioe' circa 500 nodi annidati), pensato per il parsing ricorsivo.
+ *
+ * Il campo "content" di un nodo deve precedere "children": vale sia per
+ * l'output di NodeTreeSerializer sia per l'ordinamento delle chiavi di JSONB.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NodeTreeDeserializer {
+
+    private final ObjectMapper objectMapper;
+    private final XanaduService xanaduService;
+
+    private JsonFactory factory;
+
+    @PostConstruct
+    void init() {
+        factory = objectMapper.getFactory().copy()
+            .setStreamReadConstraints(StreamReadConstraints.builder().maxNestingDepth(Integer.MAX_VALUE).build());
+    }
+
+    public Node deserialize(String json, Author defaultAuthor) {
+        try (JsonParser parser = factory.createParser(json)) {
+            return readTree(parser, defaultAuthor);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid content JSON", e);
+        }
+    }
+
+    private Node readTree(JsonParser parser, Author defaultAuthor) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Content JSON must be an object");
+        }
+
+        Deque<Frame> frames = new ArrayDeque<>();
+        frames.push(new Frame(null));
+        Node root = null;
+        int nodeCount = 0;
+
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            JsonToken token = parser.nextToken();
+
+            if (frame.inChildren) {
+                if (token == JsonToken.START_OBJECT) {
+                    frames.push(new Frame(frame.node));
+                } else if (token == JsonToken.END_ARRAY) {
+                    frame.inChildren = false;
+                } else {
+                    throw new IllegalArgumentException("Unexpected token in children: " + token);
+                }
+                continue;
+            }
+
+            if (token == JsonToken.END_OBJECT) {
+                frames.pop();
+                if (frame.node == null) {
+                    // Placeholder senza content (es. maxDepthReached)
+                    continue;
+                }
+                if (frame.parent == null) {
+                    root = frame.node;
+                } else {
+                    // Ricostruisci link bidirezionale parent ↔ child
+                    frame.node.content().link(frame.parent.content());
+                }
+                continue;
+            }
+
+            if (token != JsonToken.FIELD_NAME) {
+                throw new IllegalArgumentException("Unexpected token in node: " + token);
+            }
+
+            String field = parser.currentName();
+            token = parser.nextToken();
+
+            if ("content".equals(field) && token == JsonToken.START_OBJECT) {
+                Content<?> content = readContent(parser, defaultAuthor);
+                DocumentNode.builder nodeBuilder = DocumentNode.builder.get().withContent(content);
+                if (frame.parent != null) {
+                    nodeBuilder.withParent(frame.parent);
+                } else {
+                    // La root ricostruita non va appesa al RootNode, che la terrebbe per sempre
+                    nodeBuilder.detached();
+                }
+                frame.node = nodeBuilder.build();
+                nodeCount++;
+            } else if ("children".equals(field) && token == JsonToken.START_ARRAY) {
+                if (frame.node == null) {
+                    throw new IllegalArgumentException("Node children must follow its content");
+                }
+                frame.inChildren = true;
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        if (root == null) {
+            throw new IllegalArgumentException("Content JSON has no root content");
+        }
+
+        log.debug("Deserialized node tree from JSON: {} nodes", nodeCount);
+        return root;
+    }
+
+    private Content<?> readContent(JsonParser parser, Author defaultAuthor) throws IOException {
+        String type = null;
+        Object value = null;
+        String authorName = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+
+            switch (field) {
+                case "type":
+                    type = parser.getValueAsString();
+                    break;
+                case "value":
+                    if (token == JsonToken.VALUE_NUMBER_INT) {
+                        value = parser.getIntValue();
+                    } else if (token.isScalarValue()) {
+                        value = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "authorName":
+                    authorName = parser.getValueAsString();
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (type == null) {
+            throw new IllegalArgumentException("Content without type");
+        }
+        return xanaduService.restoreContent(type, value, authorName, defaultAuthor);
+    }
+
+    private static final class Frame {
+        private final Node parent;
+        private Node node;
+        private boolean inChildren;
+
+        private Frame(Node parent) {
+            this.parent = parent;
+        }
+    }
+}
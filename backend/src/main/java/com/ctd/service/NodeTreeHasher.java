@@ -0,0 +1,289 @@
+package com.ctd.service;
+
+import com.ctd.model.HashScheme;
+import com.ctd.xanadu.node.MerkleHash;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ricalcola la Merkle root di un contentJson salvato direttamente dai token,
+ * senza ricostruire il Node tree: niente Content, Author o nodi agganciati al
+ * RootNode, memoria proporzionale alla sola profondita'. Usato dai controlli
+ * di integrita' su grandi volumi.
+ *
+ * Produce lo stesso hash calcolato da NodeTreeSerializer: un placeholder
+ * maxDepthReached vale MerkleHash.truncated(), come in scrittura. Il flag
+ * "linked" della foglia si ricava dai links del contenuto e dal tipo e valore
+ * del padre, come in NodeArenaEncoder. Con HashScheme.MERKLE si ricalcola
+ * invece la foglia del primo schema Merkle (senza flag).
+ *
+ * legacyHash ricalcola invece l'hash delle versioni precedenti alla Merkle
+ * root: SHA-256 del documento serializzato da ObjectMapper a partire da
+ * HashMap, con lo stesso ordine delle chiavi di allora.
+ */
+@Service
+@RequiredArgsConstructor
+public class NodeTreeHasher {
+
+    private final ObjectMapper objectMapper;
+    private final HashingService hashingService;
+
+    public byte[] hash(byte[] json) {
+        return hash(json, HashScheme.MERKLE_V2);
+    }
+
+    /**
+     * Merkle root del JSON secondo lo schema dato: MERKLE o MERKLE_V2
+     */
+    public byte[] hash(byte[] json, HashScheme scheme) {
+        try (JsonParser parser = objectMapper.getFactory().createParser(json)) {
+            return readTree(parser, scheme == HashScheme.MERKLE);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid content JSON", e);
+        }
+    }
+
+    /**
+     * SHA-256 in esadecimale del JSON come lo scriveva la serializzazione pre-Merkle
+     */
+    public String legacyHash(byte[] json) {
+        LegacyBuffer serialized = new LegacyBuffer(json.length);
+        try {
+            objectMapper.writeValue(serialized, toLegacyValue(objectMapper.readTree(json)));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid content JSON", e);
+        }
+        return hashingService.hash(serialized.bytes());
+    }
+
+    // Le mappe di allora erano HashMap: il loro ordine di iterazione non dipende da quello di JSONB
+    private static Object toLegacyValue(JsonNode node) {
+        if (node.isObject()) {
+            Map<String, Object> map = new HashMap<>();
+            Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                Map.Entry<String, JsonNode> field = fields.next();
+                map.put(field.getKey(), toLegacyValue(field.getValue()));
+            }
+            return map;
+        }
+        if (node.isArray()) {
+            List<Object> list = new ArrayList<>(node.size());
+            for (JsonNode element : node) {
+                list.add(toLegacyValue(element));
+            }
+            return list;
+        }
+        if (node.isIntegralNumber()) {
+            return node.numberValue();
+        }
+        if (node.isNumber()) {
+            return node.doubleValue();
+        }
+        if (node.isBoolean()) {
+            return node.booleanValue();
+        }
+        return node.isNull() ? null : node.asText();
+    }
+
+    private byte[] readTree(JsonParser parser, boolean v1) throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Content JSON must be an object");
+        }
+
+        Deque<Frame> frames = new ArrayDeque<>();
+        frames.push(new Frame(null));
+        byte[] root = null;
+
+        while (!frames.isEmpty()) {
+            Frame frame = frames.peek();
+            JsonToken token = parser.nextToken();
+
+            if (frame.inChildren) {
+                if (token == JsonToken.START_OBJECT) {
+                    frames.push(new Frame(frame));
+                } else if (token == JsonToken.END_ARRAY) {
+                    frame.inChildren = false;
+                } else {
+                    throw new IllegalArgumentException("Unexpected token in children: " + token);
+                }
+                continue;
+            }
+
+            if (token == JsonToken.END_OBJECT) {
+                frames.pop();
+                byte[] hash;
+                if (frame.node != null) {
+                    hash = frame.node.build();
+                } else if (frame.truncated) {
+                    hash = MerkleHash.truncated();
+                } else {
+                    throw new IllegalArgumentException("Node without content");
+                }
+                if (frames.isEmpty()) {
+                    root = hash;
+                } else {
+                    frames.peek().node.child(hash);
+                }
+                continue;
+            }
+
+            if (token != JsonToken.FIELD_NAME) {
+                throw new IllegalArgumentException("Unexpected token in node: " + token);
+            }
+
+            String field = parser.currentName();
+            token = parser.nextToken();
+
+            if ("content".equals(field) && token == JsonToken.START_OBJECT) {
+                frame.node = MerkleHash.node(readLeaf(parser, frame, v1));
+            } else if ("children".equals(field) && token == JsonToken.START_ARRAY) {
+                if (frame.node == null) {
+                    throw new IllegalArgumentException("Node children must follow its content");
+                }
+                frame.inChildren = true;
+            } else if ("maxDepthReached".equals(field)) {
+                frame.truncated = token == JsonToken.VALUE_TRUE;
+            } else {
+                parser.skipChildren();
+            }
+        }
+
+        return root;
+    }
+
+    private byte[] readLeaf(JsonParser parser, Frame frame, boolean v1) throws IOException {
+        Object value = null;
+        String authorName = null;
+        boolean versioned = false;
+        List<String[]> links = new ArrayList<>();
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+
+            switch (field) {
+                case "type":
+                    frame.type = parser.getValueAsString();
+                    break;
+                case "value":
+                    if (token == JsonToken.VALUE_NUMBER_INT && !v1) {
+                        value = parser.getIntValue();
+                    } else if (token.isScalarValue()) {
+                        value = parser.getValueAsString();
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                case "authorName":
+                    authorName = parser.getValueAsString();
+                    break;
+                case "version":
+                    if (token != JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                        break;
+                    }
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String name = parser.currentName();
+                        parser.nextToken();
+                        if ("hasParent".equals(name)) {
+                            versioned = parser.getValueAsBoolean();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    break;
+                case "links":
+                    if (token == JsonToken.START_ARRAY) {
+                        while (parser.nextToken() == JsonToken.START_OBJECT) {
+                            links.add(readLink(parser));
+                        }
+                    } else {
+                        parser.skipChildren();
+                    }
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+
+        if (frame.type == null) {
+            throw new IllegalArgumentException("Content without type");
+        }
+        frame.value = String.valueOf(value);
+        if (v1) {
+            return MerkleHash.leafHashV1(frame.type, (String) value, authorName);
+        }
+        return MerkleHash.leafHash(frame.type, value, authorName, versioned, frame.linkedToParent(links));
+    }
+
+    // firstType, firstValue, secondType, secondValue: l'ordine confrontato da linkedToParent
+    private static String[] readLink(JsonParser parser) throws IOException {
+        String[] link = new String[4];
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "firstType": link[0] = parser.getValueAsString(); break;
+                case "firstValue": link[1] = parser.getValueAsString(); break;
+                case "secondType": link[2] = parser.getValueAsString(); break;
+                case "secondValue": link[3] = parser.getValueAsString(); break;
+                default: parser.skipChildren();
+            }
+        }
+        return link;
+    }
+
+    // Espone il buffer interno: il digest legge la serializzazione senza la copia di writeValueAsBytes
+    private static final class LegacyBuffer extends ByteArrayOutputStream {
+        private LegacyBuffer(int size) {
+            super(size);
+        }
+
+        private ByteBuffer bytes() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    private static final class Frame {
+        private final Frame parent;
+        private MerkleHash.Builder node;
+        private boolean inChildren;
+        private boolean truncated;
+        private String type;
+        private String value;
+
+        private Frame(Frame parent) {
+            this.parent = parent;
+        }
+
+        // Stessa regola di MerkleHash.linkedToParent: un link che accoppia tipo e valore propri con quelli del padre
+        private boolean linkedToParent(List<String[]> links) {
+            if (parent == null) {
+                return false;
+            }
+            for (String[] link : links) {
+                if (type.equals(link[0]) && value.equals(link[1])
+                        && parent.type.equals(link[2]) && parent.value.equals(link[3])) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
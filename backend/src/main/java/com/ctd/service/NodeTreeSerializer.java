@@ -0,0 +1,194 @@
+package com.ctd.service;
+
+import com.ctd.xanadu.content.Content;
+import com.ctd.xanadu.content.version.Version;
+import com.ctd.xanadu.content.visitor.ToStringVisitor;
+import com.ctd.xanadu.node.DocumentNode;
+import com.ctd.xanadu.node.MerkleHash;
+import com.ctd.xanadu.node.Node;
+import com.ctd.xanadu.node.RootNode;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serializza un Node tree direttamente su JsonGenerator, senza mappe intermedie.
+ * Un solo passaggio produce il payload JSONB e il body HTTP; il contentHash
+ * e' la Merkle root dei soli nodi scritti, calcolata nello stesso passaggio:
+ * un sottoalbero oltre MAX_DEPTH conta come placeholder troncato, cosi' la
+ * root si puo' ricalcolare dal JSON salvato (vedi NodeTreeHasher).
+ * I link si scrivono ricavati dalla struttura, come li ricostruiscono
+ * NodeTreeDeserializer e NodeArena: cosi' ContentNodeStore puo' salvare i
+ * content senza link e rigenerarli identici in lettura.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NodeTreeSerializer {
+
+    private static final int MAX_DEPTH = 50;
+
+    private final ObjectMapper objectMapper;
+
+    /**
+     * Serializza il tree in memoria insieme alla sua Merkle root
+     */
+    public SerializedTree serialize(Node rootNode) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(1024);
+        byte[] root;
+        try {
+            root = write(rootNode, buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Node tree serialization failed", e);
+        }
+        return new SerializedTree(buffer.toByteArray(), MerkleHash.toHex(root));
+    }
+
+    /**
+     * Scrive il tree in streaming sull'OutputStream dato (non lo chiude) e restituisce la Merkle root
+     */
+    public byte[] write(Node rootNode, OutputStream out) throws IOException {
+        JsonFactory factory = objectMapper.getFactory();
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            return writeNode(generator, rootNode, 0, true, new Pass());
+        }
+    }
+
+    /*
+     * Un DocumentNode con l'hash gia' in cache si scrive senza ricalcolarlo:
+     * vale la cache solo se nel sottoalbero non c'e' stato un taglio a
+     * MAX_DEPTH, altrimenti si ricalcola la root con lo stesso limite.
+     * Gli hash calcolati qui senza tagli finiscono nella cache dei nodi.
+     */
+    private byte[] writeNode(JsonGenerator generator, Node node, int depth, boolean hashing, Pass pass)
+            throws IOException {
+        generator.writeStartObject();
+
+        if (depth >= MAX_DEPTH) {
+            generator.writeBooleanField("maxDepthReached", true);
+            generator.writeEndObject();
+            log.warn("Max depth {} reached during serialization", MAX_DEPTH);
+            pass.truncated = true;
+            return MerkleHash.truncated();
+        }
+
+        generator.writeFieldName("content");
+        writeContent(generator, node);
+        boolean cached = hashing && node instanceof DocumentNode && ((DocumentNode) node).isHashed();
+        MerkleHash.Builder hash = hashing && !cached ? MerkleHash.node(MerkleHash.leafHash(node)) : null;
+
+        boolean truncatedBefore = pass.truncated;
+        pass.truncated = false;
+        int childrenCount = 0;
+        generator.writeArrayFieldStart("children");
+        for (Node child : node.children()) {
+            if (child instanceof RootNode) {
+                continue;
+            }
+            byte[] childHash = writeNode(generator, child, depth + 1, hash != null, pass);
+            if (hash != null) {
+                hash.child(childHash);
+            }
+            childrenCount++;
+        }
+        generator.writeEndArray();
+        generator.writeNumberField("childrenCount", childrenCount);
+
+        generator.writeEndObject();
+
+        boolean truncated = pass.truncated;
+        pass.truncated = truncated || truncatedBefore;
+        if (!hashing) {
+            return null;
+        }
+        if (cached) {
+            return truncated ? MerkleHash.limited(node, MAX_DEPTH - depth) : node.merkleHash();
+        }
+        byte[] result = hash.build();
+        if (!truncated && node instanceof DocumentNode) {
+            ((DocumentNode) node).restoreHash(result);
+        }
+        return result;
+    }
+
+    private void writeContent(JsonGenerator generator, Node node) throws IOException {
+        Content<?> content = node.content();
+        generator.writeStartObject();
+        generator.writeStringField("type", content.typeName());
+
+        Object value = content.show();
+        generator.writeFieldName("value");
+        if (value == null) {
+            generator.writeNull();
+        } else if (value instanceof Integer) {
+            generator.writeNumber((Integer) value);
+        } else if (value instanceof String) {
+            generator.writeString((String) value);
+        } else {
+            generator.writeString(content.accept(ToStringVisitor.get()));
+        }
+
+        if (content.author() != null) {
+            generator.writeStringField("authorName", content.author().getName());
+        }
+
+        Version version = content.version();
+        generator.writeObjectFieldStart("version");
+        generator.writeBooleanField("hasParent", version.parent() != version);
+        generator.writeEndObject();
+
+        // Link ricavati dalla struttura, nell'ordine in cui li ricostruisce NodeTreeDeserializer:
+        // prima quelli dei figli collegati, poi quello verso il parent
+        generator.writeArrayFieldStart("links");
+        for (Node child : node.children()) {
+            if (!(child instanceof RootNode) && MerkleHash.linkedToParent(child)) {
+                writeLink(generator, child.content(), content);
+            }
+        }
+        if (MerkleHash.linkedToParent(node)) {
+            writeLink(generator, content, node.parent().content());
+        }
+        generator.writeEndArray();
+
+        generator.writeEndObject();
+    }
+
+    private static void writeLink(JsonGenerator generator, Content<?> first, Content<?> second) throws IOException {
+        generator.writeStartObject();
+        generator.writeStringField("firstType", first.typeName());
+        generator.writeStringField("secondType", second.typeName());
+        generator.writeStringField("firstValue", String.valueOf(first.show()));
+        generator.writeStringField("secondValue", String.valueOf(second.show()));
+        generator.writeEndObject();
+    }
+
+    // Se nel sottoalbero in scrittura c'e' stato un taglio a MAX_DEPTH
+    private static final class Pass {
+        private boolean truncated;
+    }
+
+    /**
+     * Risultato della serializzazione: JSON in UTF-8 e Merkle root in esadecimale
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class SerializedTree {
+        private final byte[] json;
+        private final String contentHash;
+
+        public String jsonString() {
+            return new String(json, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.ctd.service;
+
+import com.ctd.model.DocumentVersion;
+import com.ctd.model.NotarizationOutbox;
+import com.ctd.model.NotarizationStatus;
+import com.ctd.model.Transclusion;
+import com.ctd.repository.DocumentVersionRepository;
+import com.ctd.repository.NotarizationOutboxRepository;
+import com.ctd.repository.TransclusionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Outbox transazionale della notarizzazione: la riga viene scritta nella stessa
+ * transazione della versione, il NotarizationWorker la consuma in background
+ * e riporta iotaTxId e inclusion proof sull'entita' di destinazione.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class NotarizationOutboxService {
+
+    private final NotarizationOutboxRepository outboxRepository;
+    private final DocumentVersionRepository versionRepository;
+    private final TransclusionRepository transclusionRepository;
+
+    @Value("${notary.outbox.max-attempts:10}")
+    private int maxAttempts;
+
+    @Value("${notary.outbox.base-backoff-ms:1000}")
+    private long baseBackoffMs;
+
+    @Value("${notary.outbox.max-backoff-ms:300000}")
+    private long maxBackoffMs;
+
+    @Value("${notary.outbox.lease-ms:60000}")
+    private long leaseMs;
+
+    /**
+     * Accoda la notarizzazione; deve girare nella transazione che salva il target
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(NotarizationOutbox.TargetType targetType, UUID targetId,
+                        String contentHash, String metadata) {
+        NotarizationOutbox entry = NotarizationOutbox.builder()
+            .targetType(targetType)
+            .targetId(targetId)
+            .contentHash(contentHash)
+            .metadata(metadata)
+            .nextAttemptAt(Instant.now())
+            .build();
+        outboxRepository.save(entry);
+    }
+
+    /**
+     * Prende in carico fino a limit righe scadute. Il lease sposta next_attempt_at
+     * in avanti: se il worker muore a meta', la riga torna disponibile da sola.
+     * Quel next_attempt_at e' anche il token del lease: complete e fail lo
+     * confrontano, cosi' un worker il cui lease e' stato ripreso non scrive piu'.
+     */
+    @Transactional
+    public List<NotarizationOutbox> claimDue(int limit) {
+        Instant now = Instant.now();
+        List<NotarizationOutbox> due = outboxRepository.findDueForUpdate(now, limit);
+        // Alla precisione della colonna, perche' il token riletto dal database sia uguale
+        Instant leaseUntil = now.plusMillis(leaseMs).truncatedTo(ChronoUnit.MICROS);
+        for (NotarizationOutbox entry : due) {
+            entry.setNextAttemptAt(leaseUntil);
+            entry.setAttempts(entry.getAttempts() + 1);
+        }
+        return due;
+    }
+
+    /**
+     * Chiude una riga presa con claimDue; non fa nulla se il lease non e' piu' di chi chiama
+     */
+    @Transactional
+    public void complete(NotarizationOutbox entry, BatchNotarizer.Receipt receipt) {
+        if (outboxRepository.completeLeased(entry.getId(), entry.getNextAttemptAt()) == 0) {
+            log.debug("Lease on outbox {} lost, dropping receipt {}", entry.getId(), receipt.getTxId());
+            return;
+        }
+
+        switch (entry.getTargetType()) {
+            case VERSION:
+                versionRepository.findById(entry.getTargetId()).ifPresent(version -> backfill(version, receipt));
+                break;
+            case TRANSCLUSION:
+                transclusionRepository.findById(entry.getTargetId()).ifPresent(transclusion -> backfill(transclusion, receipt));
+                break;
+        }
+
+        log.debug("Notarized {} {}, IOTA tx: {}", entry.getTargetType(), entry.getTargetId(), receipt.getTxId());
+    }
+
+    /**
+     * Registra il fallimento di una riga presa con claimDue, con lo stesso controllo del lease di complete
+     */
+    @Transactional
+    public void fail(NotarizationOutbox claimed, Throwable error) {
+        NotarizationOutbox entry = outboxRepository.findByIdForUpdate(claimed.getId()).orElse(null);
+        if (entry == null || entry.getStatus() != NotarizationOutbox.Status.PENDING
+                || !entry.getNextAttemptAt().equals(claimed.getNextAttemptAt())) {
+            return;
+        }
+
+        entry.setLastError(String.valueOf(error.getMessage()));
+        if (entry.getAttempts() >= maxAttempts) {
+            entry.setStatus(NotarizationOutbox.Status.FAILED);
+            markTargetFailed(entry);
+            log.error("Giving up notarization of {} {} after {} attempts",
+                entry.getTargetType(), entry.getTargetId(), entry.getAttempts(), error);
+            return;
+        }
+
+        Duration backoff = backoff(entry.getAttempts());
+        entry.setNextAttemptAt(Instant.now().plus(backoff));
+        log.warn("Notarization of {} {} failed (attempt {}), retrying in {} ms: {}",
+            entry.getTargetType(), entry.getTargetId(), entry.getAttempts(), backoff.toMillis(), error.getMessage());
+    }
+
+    @Transactional(readOnly = true)
+    public long backlog() {
+        return outboxRepository.countByStatus(NotarizationOutbox.Status.PENDING);
+    }
+
+    // Esponenziale: base * 2^(attempts - 1), con tetto a max-backoff-ms
+    private Duration backoff(int attempts) {
+        int shift = Math.min(Math.max(attempts - 1, 0), 20);
+        return Duration.ofMillis(Math.min(baseBackoffMs << shift, maxBackoffMs));
+    }
+
+    private void backfill(DocumentVersion version, BatchNotarizer.Receipt receipt) {
+        version.setIotaTxId(receipt.getTxId());
+        version.setNotaryRoot(receipt.getRoot());
+        version.setNotaryProof(receipt.encodedProof());
+        version.setNotarizationStatus(NotarizationStatus.NOTARIZED);
+    }
+
+    private void backfill(Transclusion transclusion, BatchNotarizer.Receipt receipt) {
+        transclusion.setIotaTxId(receipt.getTxId());
+        transclusion.setNotaryRoot(receipt.getRoot());
+        transclusion.setNotaryProof(receipt.encodedProof());
+        transclusion.setNotarizationStatus(NotarizationStatus.NOTARIZED);
+    }
+
+    private void markTargetFailed(NotarizationOutbox entry) {
+        if (entry.getTargetType() == NotarizationOutbox.TargetType.VERSION) {
+            versionRepository.findById(entry.getTargetId())
+                .ifPresent(version -> version.setNotarizationStatus(NotarizationStatus.FAILED));
+        } else {
+            transclusionRepository.findById(entry.getTargetId())
+                .ifPresent(transclusion -> transclusion.setNotarizationStatus(NotarizationStatus.FAILED));
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.ctd.service;
+
+import com.ctd.model.NotarizationOutbox;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Consuma la notarization outbox in background. Un thread di polling prende in
+ * carico le righe scadute e le passa al BatchNotarizer; gli esiti vengono
+ * scritti dal pool di worker, cosi' il polling non attende mai il ledger.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class NotarizationWorker {
+
+    private final NotarizationOutboxService outboxService;
+    private final BatchNotarizer batchNotarizer;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${notary.outbox.poll-interval-ms:500}")
+    private long pollIntervalMs;
+
+    @Value("${notary.outbox.claim-size:100}")
+    private int claimSize;
+
+    @Value("${notary.outbox.workers:4}")
+    private int workers;
+
+    @Value("${notary.outbox.max-in-flight:1000}")
+    private int maxInFlight;
+
+    private final AtomicLong backlog = new AtomicLong();
+    private Semaphore inFlight;
+    private ScheduledExecutorService poller;
+    private ExecutorService workerPool;
+
+    @PostConstruct
+    void start() {
+        inFlight = new Semaphore(maxInFlight);
+        poller = Executors.newSingleThreadScheduledExecutor(daemon("notary-outbox-poller"));
+        workerPool = Executors.newFixedThreadPool(workers, daemon("notary-outbox-worker"));
+
+        Gauge.builder("notary.outbox.backlog", backlog, AtomicLong::get)
+            .description("Notarizzazioni in attesa nella outbox")
+            .register(meterRegistry);
+
+        poller.scheduleWithFixedDelay(this::poll, pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    void stop() throws InterruptedException {
+        poller.shutdown();
+        workerPool.shutdown();
+        // Le righe non completate restano PENDING e ripartono al prossimo avvio
+        workerPool.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    void poll() {
+        try {
+            backlog.set(outboxService.backlog());
+
+            int permits = Math.min(claimSize, inFlight.availablePermits());
+            if (permits == 0 || !inFlight.tryAcquire(permits)) {
+                return;
+            }
+
+            List<NotarizationOutbox> claimed = outboxService.claimDue(permits);
+            inFlight.release(permits - claimed.size());
+
+            for (NotarizationOutbox entry : claimed) {
+                batchNotarizer.submit(entry.getContentHash(), entry.getMetadata())
+                    .whenCompleteAsync((receipt, error) -> {
+                        try {
+                            if (error == null) {
+                                outboxService.complete(entry, receipt);
+                            } else {
+                                outboxService.fail(entry, error);
+                            }
+                        } catch (RuntimeException e) {
+                            // La riga resta in lease e verra' ripresa alla scadenza
+                            log.error("Could not record notarization result for outbox {}", entry.getId(), e);
+                        } finally {
+                            inFlight.release();
+                        }
+                    }, workerPool);
+            }
+
+            if (!claimed.isEmpty()) {
+                log.debug("Submitted {} outbox entries for notarization", claimed.size());
+            }
+        } catch (RuntimeException e) {
+            log.error("Notarization outbox poll failed", e);
+        }
+    }
+
+    private static java.util.concurrent.ThreadFactory daemon(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+}
@@ -0,0 +1,257 @@
+package com.ctd.service;
+
+import com.ctd.dto.projection.VersionNotary;
+import com.ctd.dto.request.VerifyBatchRequest;
+import com.ctd.dto.response.VerificationResponse;
+import com.ctd.exception.ResourceNotFoundException;
+import com.ctd.model.NotarizationStatus;
+import com.ctd.repository.DocumentVersionRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Verifica delle versioni contro il ledger, singola o in blocco.
+ *
+ * Nella verifica in blocco le versioni vengono raggruppate per iotaTxId e
+ * divise in chunk; ogni chunk fa una sola chiamata IotaService.verifyAll su
+ * un pool limitato. Le verifiche positive restano in cache per iotaTxId:
+ * una tx ancorata non cambia, quindi non serve rileggerla dal ledger.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VerificationService {
+
+    private final DocumentVersionRepository versionRepository;
+    private final IotaService iotaService;
+
+    @Value("${verification.batch.parallelism:16}")
+    private int parallelism;
+
+    @Value("${verification.batch.chunk-size:64}")
+    private int chunkSize;
+
+    @Value("${verification.cache.max-entries:100000}")
+    private int cacheMaxEntries;
+
+    private ExecutorService executor;
+
+    // iotaTxId -> hash gia' verificato sul ledger (LRU)
+    private Map<String, String> verifiedAnchors;
+
+    @PostConstruct
+    void start() {
+        AtomicInteger counter = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "verification-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        verifiedAnchors = Collections.synchronizedMap(new LinkedHashMap<>(1024, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > cacheMaxEntries;
+            }
+        });
+    }
+
+    @PreDestroy
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    @Transactional(readOnly = true)
+    public VerificationResponse verifyVersion(UUID versionId) {
+        VersionNotary version = versionRepository.findNotaryById(versionId)
+            .orElseThrow(() -> new ResourceNotFoundException("Version not found: " + versionId));
+        return verifyChunk(List.of(version)).get(0);
+    }
+
+    public boolean verifyInclusion(String contentHash, List<String> proof, String notaryRoot, String iotaTxId) {
+        String computedRoot = rootOf(contentHash, proof);
+        return computedRoot != null && computedRoot.equals(notaryRoot) && isAnchored(iotaTxId, notaryRoot);
+    }
+
+    /**
+     * Risolve le versioni richieste: per id oppure tutte quelle di un documento
+     */
+    @Transactional(readOnly = true)
+    public List<VersionNotary> resolve(VerifyBatchRequest request) {
+        if (request.getDocumentId() != null) {
+            List<VersionNotary> versions = versionRepository.findNotaryByDocumentId(request.getDocumentId());
+            if (versions.isEmpty()) {
+                throw new ResourceNotFoundException("Document not found: " + request.getDocumentId());
+            }
+            return versions;
+        }
+        return versionRepository.findNotaryByIdIn(request.getVersionIds());
+    }
+
+    /**
+     * Gli id richiesti che resolve non ha trovato, nell'ordine della richiesta
+     * e senza duplicati; vuoto per una richiesta per documento
+     */
+    public List<UUID> unresolved(VerifyBatchRequest request, List<VersionNotary> versions) {
+        if (request.getDocumentId() != null) {
+            return List.of();
+        }
+        Set<UUID> missing = new LinkedHashSet<>(request.getVersionIds());
+        versions.forEach(v -> missing.remove(v.getVersionId()));
+        return new ArrayList<>(missing);
+    }
+
+    /**
+     * Verifica in parallelo e consegna i risultati al sink man mano che i chunk
+     * terminano, nel thread chiamante. Se il sink fallisce (client disconnesso)
+     * i chunk ancora in coda vengono annullati.
+     */
+    public void verifyBatch(List<VersionNotary> versions, ResultSink sink) throws IOException {
+        // Stessa tx nello stesso chunk: una sola lettura dal ledger
+        List<VersionNotary> sorted = new ArrayList<>(versions);
+        sorted.sort(Comparator.comparing(VersionNotary::getIotaTxId, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        CompletionService<List<VerificationResponse>> completion = new ExecutorCompletionService<>(executor);
+        List<Future<List<VerificationResponse>>> futures = new ArrayList<>();
+        for (int from = 0; from < sorted.size(); from += chunkSize) {
+            List<VersionNotary> chunk = sorted.subList(from, Math.min(from + chunkSize, sorted.size()));
+            futures.add(completion.submit(() -> verifyChunk(chunk)));
+        }
+
+        boolean done = false;
+        try {
+            for (int i = 0; i < futures.size(); i++) {
+                for (VerificationResponse response : completion.take().get()) {
+                    sink.accept(response);
+                }
+                sink.flush();
+            }
+            done = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch verification interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Batch verification failed", e.getCause());
+        } finally {
+            if (!done) {
+                futures.forEach(f -> f.cancel(true));
+            }
+        }
+        log.info("Verified {} versions in {} chunks", versions.size(), futures.size());
+    }
+
+    private List<VerificationResponse> verifyChunk(List<VersionNotary> chunk) {
+        // Hash da ancorare per ogni versione: la root del batch o il contentHash (legacy)
+        String[] anchored = new String[chunk.size()];
+        boolean[] cached = new boolean[chunk.size()];
+        Map<String, String> lookups = new HashMap<>();
+
+        for (int i = 0; i < chunk.size(); i++) {
+            VersionNotary version = chunk.get(i);
+            if (version.getNotarizationStatus() != NotarizationStatus.NOTARIZED || version.getIotaTxId() == null) {
+                continue;
+            }
+            String hash = version.getNotaryRoot() != null
+                ? rootOf(version.getContentHash(), BatchNotarizer.Receipt.decodeProof(version.getNotaryProof()))
+                : version.getContentHash();
+            if (hash == null || (version.getNotaryRoot() != null && !hash.equals(version.getNotaryRoot()))) {
+                continue;
+            }
+            anchored[i] = hash;
+            cached[i] = hash.equals(verifiedAnchors.get(version.getIotaTxId()));
+            if (!cached[i]) {
+                lookups.putIfAbsent(version.getIotaTxId(), hash);
+            }
+        }
+
+        Map<String, Boolean> ledger = lookups.isEmpty() ? Map.of() : iotaService.verifyAll(lookups);
+        ledger.forEach((txId, ok) -> {
+            if (ok) {
+                verifiedAnchors.put(txId, lookups.get(txId));
+            }
+        });
+
+        List<VerificationResponse> responses = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            VersionNotary version = chunk.get(i);
+            String txId = version.getIotaTxId();
+            boolean verified = cached[i] || (anchored[i] != null
+                && Boolean.TRUE.equals(ledger.get(txId)) && anchored[i].equals(lookups.get(txId)));
+            responses.add(toResponse(version, verified));
+        }
+        return responses;
+    }
+
+    private boolean isAnchored(String iotaTxId, String hash) {
+        if (hash.equals(verifiedAnchors.get(iotaTxId))) {
+            return true;
+        }
+        boolean verified = iotaService.verify(iotaTxId, hash);
+        if (verified) {
+            verifiedAnchors.put(iotaTxId, hash);
+        }
+        return verified;
+    }
+
+    private static String rootOf(String contentHash, List<String> proof) {
+        try {
+            return BatchNotarizer.computeRoot(contentHash, proof);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static VerificationResponse toResponse(VersionNotary version, boolean verified) {
+        NotarizationStatus status = version.getNotarizationStatus();
+        String message;
+        if (status == NotarizationStatus.PENDING) {
+            message = "Notarization pending";
+        } else if (status == NotarizationStatus.FAILED) {
+            message = "Notarization failed";
+        } else {
+            message = verified ? "Content verified on IOTA" : "Verification failed";
+        }
+
+        return VerificationResponse.builder()
+            .versionId(version.getVersionId())
+            .iotaTxId(version.getIotaTxId())
+            .contentHash(version.getContentHash())
+            .notaryRoot(version.getNotaryRoot())
+            .notarizationStatus(status)
+            .verified(verified)
+            .message(message)
+            .build();
+    }
+
+    /**
+     * Destinazione dei risultati di una verifica in blocco
+     */
+    public interface ResultSink {
+        void accept(VerificationResponse response) throws IOException;
+
+        void flush() throws IOException;
+    }
+}
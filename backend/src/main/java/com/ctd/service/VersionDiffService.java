@@ -0,0 +1,527 @@
+package com.ctd.service;
+
+import com.ctd.dto.projection.VersionTag;
+import com.ctd.exception.BadRequestException;
+import com.ctd.service.ContentNodeStore.Decomposed;
+import com.ctd.service.ContentNodeStore.PendingNode;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Diff lato server tra due versioni di un documento, come edit script:
+ * update (content cambiato), remove (sottoalbero tolto) e insert (sottoalbero
+ * nuovo, completo). I path sono indici di figli a partire dalla radice ("" e'
+ * la radice, "/0/2" il terzo figlio del primo figlio): "from" nel tree di
+ * partenza, "to" in quello di arrivo.
+ *
+ * Il confronto lavora sui nodi di content_nodes (vedi ContentNodeStore), non
+ * su Node tree materializzati: ogni nodo ha un hash Merkle, e due sottoalberi
+ * con lo stesso hash vengono saltati senza leggerli. Tra i figli si tolgono
+ * prima prefisso e suffisso comuni; nella parte centrale restano fermi i
+ * figli con lo stesso hash nello stesso ordine, e solo i tratti tra questi
+ * vengono appaiati per posizione: [A,B,C] -> [A,X,B,C'] e' un insert di X e
+ * un update di C, non tre update.
+ * I nodi si leggono un livello alla volta a partire dalle due radici, solo
+ * dove gli hash differiscono: per versioni in content_nodes il costo e'
+ * lineare nella parte cambiata (piu' i sottoalberi inseriti). Le versioni
+ * inline o salvate come delta vanno invece ricostruite e scomposte per intero.
+ *
+ * Il content si confronta e si scrive senza i link (ContentNodeStore li
+ * toglie gia' dai nodi): sono derivati dalla struttura e contengono il valore
+ * del parent, quindi rinominare un nodo cambierebbe tutti i suoi figli diretti.
+ *
+ * Lo script e' scritto in streaming; quello tra una versione e il suo parent
+ * (il caso della review) viene tenuto in una cache LRU limitata in byte.
+ */
+@Service
+@RequiredArgsConstructor
+public class VersionDiffService {
+
+    private final DocumentService documentService;
+    private final ContentNodeStore contentNodeStore;
+    private final ObjectMapper objectMapper;
+
+    @Value("${diff.cache.max-bytes:67108864}")
+    private long cacheMaxBytes;
+
+    @Value("${diff.cache.max-entry-bytes:1048576}")
+    private int cacheMaxEntryBytes;
+
+    // "from:to" -> edit script di versioni adiacenti (LRU sui byte totali)
+    private final LinkedHashMap<String, byte[]> adjacentDiffs = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedBytes;
+
+    /**
+     * Prepara il diff tra due versioni del documento; lo script viene calcolato
+     * mentre si scrive. ETag: coppia di contentHash, le versioni sono immutabili.
+     */
+    public VersionDiff diff(UUID documentId, UUID fromVersionId, UUID toVersionId) {
+        VersionTag from = documentService.getVersionTag(fromVersionId);
+        VersionTag to = documentService.getVersionTag(toVersionId);
+        if (!from.getDocumentId().equals(documentId) || !to.getDocumentId().equals(documentId)) {
+            throw new BadRequestException("Version does not belong to document");
+        }
+
+        String eTag = "diff-" + from.getContentHash() + "-" + to.getContentHash();
+        boolean adjacent = fromVersionId.equals(to.getParentVersionId());
+        String cacheKey = fromVersionId + ":" + toVersionId;
+
+        if (adjacent) {
+            byte[] cached;
+            synchronized (adjacentDiffs) {
+                cached = adjacentDiffs.get(cacheKey);
+            }
+            if (cached != null) {
+                return new VersionDiff(eTag, out -> out.write(cached));
+            }
+        }
+
+        // I contenuti si caricano solo se il client non ha gia' il diff (304)
+        if (!adjacent) {
+            return new VersionDiff(eTag, out -> write(from, to, out));
+        }
+        return new VersionDiff(eTag, out -> {
+            CachingOutputStream tee = new CachingOutputStream(out, cacheMaxEntryBytes);
+            write(from, to, tee);
+            if (tee.cached() != null) {
+                cache(cacheKey, tee.cached());
+            }
+        });
+    }
+
+    private void cache(String key, byte[] script) {
+        synchronized (adjacentDiffs) {
+            byte[] previous = adjacentDiffs.put(key, script);
+            cachedBytes += script.length - (previous != null ? previous.length : 0);
+            Iterator<byte[]> eldest = adjacentDiffs.values().iterator();
+            while (cachedBytes > cacheMaxBytes && eldest.hasNext()) {
+                cachedBytes -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+    }
+
+    // Versioni in content_nodes lette per livelli solo dove servono; le altre ricostruite e scomposte in memoria
+    private NodeSource source(VersionTag version) {
+        if (version.getRootNodeHash() != null) {
+            return new StoredNodes(contentNodeStore, version.getRootNodeHash());
+        }
+        String json = documentService.getVersionContent(version.getVersionId()).getContentJson();
+        Decomposed tree = contentNodeStore.decompose(json.getBytes(StandardCharsets.UTF_8));
+        if (tree == null) {
+            throw new BadRequestException("Version " + version.getVersionId()
+                + " has a truncated tree and cannot be diffed");
+        }
+        return new DecomposedNodes(tree);
+    }
+
+    private void write(VersionTag from, VersionTag to, OutputStream out) throws IOException {
+        NodeSource source = source(from);
+        NodeSource target = source(to);
+        prefetch(source, target);
+
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.writeStartObject();
+            generator.writeStringField("fromVersionId", from.getVersionId().toString());
+            generator.writeStringField("toVersionId", to.getVersionId().toString());
+            generator.writeArrayFieldStart("ops");
+
+            EditScript script = new EditScript(generator, source, target, objectMapper);
+            script.diff(source.root(), target.root(), "", "");
+
+            generator.writeEndArray();
+            generator.writeNumberField("opsCount", script.count);
+            generator.writeEndObject();
+        }
+    }
+
+    /*
+     * Legge per livelli, con una query per livello e lato, tutti i nodi che
+     * EditScript visitera': le coppie con hash diverso e i sottoalberi inseriti
+     */
+    private static void prefetch(NodeSource source, NodeSource target) {
+        List<String[]> pairs = new ArrayList<>();
+        pairs.add(new String[] { source.root(), target.root() });
+        List<String> inserted = new ArrayList<>();
+
+        while (!pairs.isEmpty() || !inserted.isEmpty()) {
+            Set<String> sourceLevel = new HashSet<>();
+            Set<String> targetLevel = new HashSet<>(inserted);
+            for (String[] pair : pairs) {
+                if (!pair[0].equals(pair[1])) {
+                    sourceLevel.add(pair[0]);
+                    targetLevel.add(pair[1]);
+                }
+            }
+            source.fetch(sourceLevel);
+            target.fetch(targetLevel);
+
+            List<String[]> nextPairs = new ArrayList<>();
+            List<String> nextInserted = new ArrayList<>();
+            for (String hash : inserted) {
+                nextInserted.addAll(target.get(hash).children);
+            }
+            for (String[] pair : pairs) {
+                if (pair[0].equals(pair[1])) {
+                    continue;
+                }
+                List<String> ca = source.get(pair[0]).children;
+                List<String> cb = target.get(pair[1]).children;
+                Alignment alignment = new Alignment(ca, cb);
+                for (int[] paired : alignment.paired) {
+                    nextPairs.add(new String[] { ca.get(paired[0]), cb.get(paired[1]) });
+                }
+                for (int inserted : alignment.inserted) {
+                    nextInserted.add(cb.get(inserted));
+                }
+            }
+            pairs = nextPairs;
+            inserted = nextInserted;
+        }
+    }
+
+    /*
+     * Figli appaiati. Prefisso e suffisso comuni si saltano; nella parte
+     * centrale ogni figlio di b prende il primo figlio di a con lo stesso hash
+     * non ancora preso, e di questi abbinamenti restano fermi quelli nella
+     * sottosequenza crescente piu' lunga (gli altri sarebbero spostamenti, che
+     * lo script non ha). Tra un figlio fermo e il successivo i figli si
+     * appaiano per posizione (paired, indici in a e in b), l'eccedenza e'
+     * rimossa (removed, indici in a) o inserita (inserted, indici in b).
+     */
+    static final class Alignment {
+        final List<int[]> paired = new ArrayList<>();
+        final List<Integer> removed = new ArrayList<>();
+        final List<Integer> inserted = new ArrayList<>();
+
+        Alignment(List<String> ca, List<String> cb) {
+            int prefix = 0;
+            while (prefix < ca.size() && prefix < cb.size() && ca.get(prefix).equals(cb.get(prefix))) {
+                prefix++;
+            }
+            int suffix = 0;
+            while (suffix < ca.size() - prefix && suffix < cb.size() - prefix
+                    && ca.get(ca.size() - 1 - suffix).equals(cb.get(cb.size() - 1 - suffix))) {
+                suffix++;
+            }
+            int endA = ca.size() - suffix;
+            int endB = cb.size() - suffix;
+
+            int ia = prefix;
+            int ib = prefix;
+            for (int[] kept : kept(ca, cb, prefix, endA, endB)) {
+                align(ia, kept[0], ib, kept[1]);
+                ia = kept[0] + 1;
+                ib = kept[1] + 1;
+            }
+            align(ia, endA, ib, endB);
+        }
+
+        private void align(int fromA, int toA, int fromB, int toB) {
+            int n = Math.min(toA - fromA, toB - fromB);
+            for (int i = 0; i < n; i++) {
+                paired.add(new int[] { fromA + i, fromB + i });
+            }
+            for (int i = fromA + n; i < toA; i++) {
+                removed.add(i);
+            }
+            for (int i = fromB + n; i < toB; i++) {
+                inserted.add(i);
+            }
+        }
+
+        // Coppie (a, b) con lo stesso hash che restano ferme, in ordine
+        private static List<int[]> kept(List<String> ca, List<String> cb, int prefix, int endA, int endB) {
+            if (endA == prefix || endB == prefix) {
+                return List.of();
+            }
+            Map<String, ArrayDeque<Integer>> positions = new HashMap<>();
+            for (int i = prefix; i < endA; i++) {
+                positions.computeIfAbsent(ca.get(i), hash -> new ArrayDeque<>()).add(i);
+            }
+            List<int[]> matches = new ArrayList<>();
+            for (int j = prefix; j < endB; j++) {
+                ArrayDeque<Integer> candidates = positions.get(cb.get(j));
+                if (candidates != null && !candidates.isEmpty()) {
+                    matches.add(new int[] { candidates.poll(), j });
+                }
+            }
+            if (matches.size() <= 1) {
+                return matches;
+            }
+
+            // Sottosequenza crescente piu' lunga sugli indici in a (patience sorting)
+            int[] tails = new int[matches.size()];
+            int[] previous = new int[matches.size()];
+            int length = 0;
+            for (int m = 0; m < matches.size(); m++) {
+                int a = matches.get(m)[0];
+                int low = 0;
+                int high = length;
+                while (low < high) {
+                    int middle = (low + high) >>> 1;
+                    if (matches.get(tails[middle])[0] < a) {
+                        low = middle + 1;
+                    } else {
+                        high = middle;
+                    }
+                }
+                previous[m] = low > 0 ? tails[low - 1] : -1;
+                tails[low] = m;
+                if (low == length) {
+                    length++;
+                }
+            }
+            int[][] kept = new int[length][];
+            for (int m = tails[length - 1], k = length - 1; m >= 0; m = previous[m], k--) {
+                kept[k] = matches.get(m);
+            }
+            return Arrays.asList(kept);
+        }
+    }
+
+    private interface NodeSource {
+        String root();
+
+        void fetch(Collection<String> hashes);
+
+        PendingNode get(String hash);
+    }
+
+    private static final class DecomposedNodes implements NodeSource {
+        private final Decomposed tree;
+
+        private DecomposedNodes(Decomposed tree) {
+            this.tree = tree;
+        }
+
+        @Override
+        public String root() {
+            return tree.root;
+        }
+
+        @Override
+        public void fetch(Collection<String> hashes) {
+        }
+
+        @Override
+        public PendingNode get(String hash) {
+            return tree.nodes.get(hash);
+        }
+    }
+
+    private static final class StoredNodes implements NodeSource {
+        private final ContentNodeStore store;
+        private final String root;
+        private final Map<String, PendingNode> nodes = new HashMap<>();
+
+        private StoredNodes(ContentNodeStore store, String root) {
+            this.store = store;
+            this.root = root;
+        }
+
+        @Override
+        public String root() {
+            return root;
+        }
+
+        @Override
+        public void fetch(Collection<String> hashes) {
+            List<String> missing = new ArrayList<>();
+            for (String hash : hashes) {
+                if (!nodes.containsKey(hash)) {
+                    missing.add(hash);
+                }
+            }
+            if (!missing.isEmpty()) {
+                nodes.putAll(store.load(missing));
+            }
+        }
+
+        @Override
+        public PendingNode get(String hash) {
+            PendingNode node = nodes.get(hash);
+            if (node == null) {
+                throw new IllegalStateException("Content node missing: " + hash);
+            }
+            return node;
+        }
+    }
+
+    private static final class EditScript {
+        private final JsonGenerator generator;
+        private final NodeSource source;
+        private final NodeSource target;
+        private final ObjectMapper objectMapper;
+        private int count;
+
+        private EditScript(JsonGenerator generator, NodeSource source, NodeSource target, ObjectMapper objectMapper) {
+            this.generator = generator;
+            this.source = source;
+            this.target = target;
+            this.objectMapper = objectMapper;
+        }
+
+        private void diff(String sourceHash, String targetHash, String fromPath, String toPath) throws IOException {
+            // Stesso hash Merkle: sottoalbero identico, niente da visitare
+            if (sourceHash.equals(targetHash)) {
+                return;
+            }
+            PendingNode a = source.get(sourceHash);
+            PendingNode b = target.get(targetHash);
+
+            if (!a.content.equals(b.content) && !withoutLinks(a.content).equals(withoutLinks(b.content))) {
+                generator.writeStartObject();
+                generator.writeStringField("op", "update");
+                generator.writeStringField("from", fromPath);
+                generator.writeStringField("to", toPath);
+                generator.writeFieldName("content");
+                generator.writeRawValue(b.content);
+                generator.writeEndObject();
+                count++;
+            }
+
+            List<String> ca = a.children;
+            List<String> cb = b.children;
+
+            Alignment alignment = new Alignment(ca, cb);
+            for (int[] paired : alignment.paired) {
+                diff(ca.get(paired[0]), cb.get(paired[1]), fromPath + "/" + paired[0], toPath + "/" + paired[1]);
+            }
+            for (int ia : alignment.removed) {
+                generator.writeStartObject();
+                generator.writeStringField("op", "remove");
+                generator.writeStringField("from", fromPath + "/" + ia);
+                generator.writeEndObject();
+                count++;
+            }
+            for (int ib : alignment.inserted) {
+                generator.writeStartObject();
+                generator.writeStringField("op", "insert");
+                generator.writeStringField("to", toPath + "/" + ib);
+                generator.writeFieldName("node");
+                writeSubtree(cb.get(ib));
+                generator.writeEndObject();
+                count++;
+            }
+        }
+
+        // Confronto per campi: i nodi inline scomposti da JSONB hanno le chiavi in un altro ordine
+        private JsonNode withoutLinks(String content) throws IOException {
+            JsonNode node = objectMapper.readTree(content);
+            if (node instanceof ObjectNode) {
+                ((ObjectNode) node).remove("links");
+            }
+            return node;
+        }
+
+        // Stesso layout di NodeTreeSerializer
+        private void writeSubtree(String hash) throws IOException {
+            PendingNode node = target.get(hash);
+            generator.writeStartObject();
+            generator.writeFieldName("content");
+            generator.writeRawValue(node.content);
+            generator.writeArrayFieldStart("children");
+            for (String child : node.children) {
+                writeSubtree(child);
+            }
+            generator.writeEndArray();
+            generator.writeNumberField("childrenCount", node.children.size());
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Diff pronto da scrivere, con il suo ETag
+     */
+    public static final class VersionDiff {
+        private final String eTag;
+        private final Writer writer;
+
+        private VersionDiff(String eTag, Writer writer) {
+            this.eTag = eTag;
+            this.writer = writer;
+        }
+
+        public String getETag() {
+            return eTag;
+        }
+
+        public void writeTo(OutputStream out) throws IOException {
+            writer.write(out);
+        }
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+        void write(OutputStream out) throws IOException;
+    }
+
+    // Scrive sulla response e tiene una copia finche' non supera maxBytes
+    private static final class CachingOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final int maxBytes;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream(1024);
+
+        private CachingOutputStream(OutputStream out, int maxBytes) {
+            this.out = out;
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (copy != null) {
+                copy.write(b);
+                checkSize();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (copy != null) {
+                copy.write(b, off, len);
+                checkSize();
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        private void checkSize() {
+            if (copy.size() > maxBytes) {
+                copy = null;
+            }
+        }
+
+        private byte[] cached() {
+            return copy != null ? copy.toByteArray() : null;
+        }
+    }
+}
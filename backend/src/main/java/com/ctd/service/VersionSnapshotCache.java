@@ -0,0 +1,572 @@
+package com.ctd.service;
+
+import com.ctd.dto.projection.VersionTag;
+import com.ctd.model.HashScheme;
+import com.ctd.repository.DocumentRepository;
+import com.ctd.xanadu.content.Author;
+import com.ctd.xanadu.node.MerkleHash;
+import com.ctd.xanadu.node.Node;
+import com.ctd.xanadu.node.NodeArena;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Cache su disco locale delle versioni codificate come NodeArena, una per
+ * contentHash in un file <contentHash>.snap. Le letture mappano il file in
+ * memoria e il tree si legge direttamente dalla pagina mappata, senza passare
+ * da Postgres ne' copiare i byte sull'heap.
+ *
+ * Le versioni sono immutabili: un file non va mai invalidato, solo rimosso
+ * quando la cache supera max-bytes (LRU sui byte totali). All'avvio vengono
+ * indicizzati i file gia' presenti e pre-caricate le versioni correnti.
+ *
+ * Un file trovato su disco non e' fidato: la directory deve appartenere al
+ * processo e non essere scrivibile da altri, l'header porta la versione del
+ * formato e lo SHA-256 dell'arena, e quando il file viene mappato tutti gli
+ * hash dell'arena si ricalcolano e la radice deve coincidere con il
+ * contentHash della versione (un file appena scritto si mappa subito, senza
+ * ricontrollarlo). Per questo su disco finiscono solo le versioni MERKLE_V2
+ * la cui Merkle root si ricalcola dall'arena: quelle con hash legacy o del
+ * primo schema Merkle non si codificano affatto, i tree troncati solo la
+ * prima volta.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VersionSnapshotCache implements ApplicationRunner {
+
+    private static final int MAGIC = 0x584e5331; // "XNS1"
+    // Da incrementare a ogni modifica del layout dell'header o di NodeArena
+    private static final int FORMAT_VERSION = 4;
+    private static final int DIGEST = 32;
+    private static final int HEADER = 4 * Integer.BYTES + DIGEST;
+    private static final int FLAG_EXACT = 1;
+    private static final String SUFFIX = ".snap";
+    private static final Pattern CONTENT_HASH = Pattern.compile("[0-9a-f]{64}");
+    private static final int MAX_UNCACHEABLE = 4096;
+
+    private final DocumentService documentService;
+    private final DocumentRepository documentRepository;
+    private final NodeArenaEncoder nodeArenaEncoder;
+    private final NodeTreeSerializer nodeTreeSerializer;
+    private final XanaduService xanaduService;
+    private final HashingService hashingService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${versions.snapshot-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${versions.snapshot-cache.directory:${user.home}/.ctd/snapshots}")
+    private String directoryName;
+
+    @Value("${versions.snapshot-cache.max-bytes:268435456}")
+    private long maxBytes;
+
+    @Value("${versions.snapshot-cache.warm-up-limit:1000}")
+    private int warmUpLimit;
+
+    private Path directory;
+
+    // contentHash -> file in cache (LRU); snapshot null finche' il file non viene mappato
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<String, Boolean> uncacheable = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_UNCACHEABLE;
+        }
+    };
+    private long totalBytes;
+
+    private Counter hits;
+    private Counter misses;
+    private Counter corrupted;
+
+    @PostConstruct
+    void init() {
+        hits = Counter.builder("versions.snapshot.cache")
+            .description("Letture dalla snapshot cache su disco")
+            .tag("result", "hit")
+            .register(meterRegistry);
+        misses = Counter.builder("versions.snapshot.cache")
+            .description("Letture dalla snapshot cache su disco")
+            .tag("result", "miss")
+            .register(meterRegistry);
+        corrupted = Counter.builder("versions.snapshot.cache")
+            .description("Letture dalla snapshot cache su disco")
+            .tag("result", "corrupted")
+            .register(meterRegistry);
+        Gauge.builder("versions.snapshot.cache.bytes", this, VersionSnapshotCache::totalBytes)
+            .description("Byte occupati dalla snapshot cache su disco")
+            .register(meterRegistry);
+        Gauge.builder("versions.snapshot.cache.size", this, VersionSnapshotCache::size)
+            .description("Versioni nella snapshot cache su disco")
+            .register(meterRegistry);
+
+        if (!enabled) {
+            log.info("Version snapshot cache disabled");
+            return;
+        }
+
+        directory = Paths.get(directoryName);
+        try {
+            if (!openDirectory()) {
+                enabled = false;
+                return;
+            }
+            index();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open snapshot cache directory " + directory, e);
+        }
+        log.info("Version snapshot cache in {}: {} snapshots, {} of {} bytes",
+            directory, size(), totalBytes(), maxBytes);
+    }
+
+    /**
+     * Warm-up in background delle versioni correnti, dalla piu' recente
+     */
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled || warmUpLimit <= 0 || args.containsOption("integrity-scan")) {
+            return;
+        }
+        Thread warmUp = new Thread(this::warmUp, "snapshot-cache-warm-up");
+        warmUp.setDaemon(true);
+        warmUp.start();
+    }
+
+    void warmUp() {
+        int loaded = 0;
+        try {
+            for (VersionTag tag : documentRepository.findCurrentVersionTags(Limit.of(warmUpLimit))) {
+                if (get(tag) != null) {
+                    loaded++;
+                }
+            }
+            log.info("Snapshot cache warm-up: {} current versions ready", loaded);
+        } catch (RuntimeException e) {
+            log.warn("Snapshot cache warm-up stopped after {} versions", loaded, e);
+        }
+    }
+
+    /**
+     * Snapshot della versione: dal file mappato se c'e', altrimenti codificato
+     * dal contenuto salvato, scritto su disco e mappato. Null se la cache e'
+     * spenta o la versione non va in cache (schema diverso da MERKLE_V2, o tree
+     * troncato, troppo grande o rifiutato dall'encoder a un tentativo
+     * precedente): il chiamante legge allora il contenuto salvato. Se l'encoder
+     * fallisce lo snapshot porta solo il JSON salvato (isEncoded() e' false).
+     * Dopo un miss lo snapshot restituito porta anche il JSON appena letto
+     * (storedJson), cosi' il chiamante non lo rilegge dal database.
+     */
+    public Snapshot get(VersionTag tag) {
+        String contentHash = tag.getContentHash();
+        // Il contentHash diventa un nome di file: si accetta solo l'esadecimale di SHA-256
+        if (!enabled || tag.getHashScheme() != HashScheme.MERKLE_V2
+                || contentHash == null || !CONTENT_HASH.matcher(contentHash).matches()
+                || isUncacheable(contentHash)) {
+            return null;
+        }
+        Snapshot cached = lookup(contentHash);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        byte[] json = documentService.getVersionContent(tag.getVersionId()).getContentJson().getBytes(StandardCharsets.UTF_8);
+        Snapshot encoded;
+        try {
+            encoded = encode(json);
+        } catch (RuntimeException e) {
+            log.warn("Could not encode version {}, serving the stored JSON", tag.getVersionId(), e);
+            markUncacheable(contentHash);
+            return Snapshot.stored(json);
+        }
+        long bytes = HEADER + encoded.arena.byteSize();
+        if (bytes > maxBytes || !encoded.rootMatches(contentHash)) {
+            markUncacheable(contentHash);
+            return encoded.withStoredJson(json);
+        }
+        try {
+            // Dal file appena scritto, senza ricontrollarlo: il buffer dell'encoder si libera subito
+            Path file = write(contentHash, encoded);
+            Snapshot mapped = new Snapshot(NodeArena.wrap(mapArena(file)), encoded.exact, null);
+            put(contentHash, bytes, mapped);
+            return mapped.withStoredJson(json);
+        } catch (IOException e) {
+            log.warn("Could not write snapshot {} to the cache", contentHash, e);
+            return encoded.withStoredJson(json);
+        }
+    }
+
+    public long totalBytes() {
+        synchronized (entries) {
+            return totalBytes;
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private Snapshot lookup(String contentHash) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(contentHash);
+        }
+        if (entry == null) {
+            return null;
+        }
+        if (entry.snapshot != null) {
+            return entry.snapshot;
+        }
+
+        // File indicizzato all'avvio e non ancora mappato: formato, checksum e hash si verificano qui
+        try {
+            Snapshot mapped = load(entry.file, contentHash);
+            entry.snapshot = mapped;
+            return mapped;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Discarding snapshot {}: {}", entry.file, e.getMessage());
+            corrupted.increment();
+            remove(contentHash, entry);
+            return null;
+        }
+    }
+
+    private Snapshot encode(byte[] json) {
+        NodeArena arena = nodeArenaEncoder.encode(json);
+
+        // Se l'arena riscrive esattamente il JSON salvato, la struttura si puo' servire senza leggere il database.
+        // Il confronto avviene in streaming, senza bufferizzare la riscrittura
+        MatchingOutputStream rewritten = new MatchingOutputStream(json);
+        try {
+            nodeTreeSerializer.write(arena.root(this::storedAuthor), rewritten);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return new Snapshot(arena, rewritten.matches(), null);
+    }
+
+    private Author storedAuthor(String name) {
+        return name != null ? xanaduService.createAuthor(name) : null;
+    }
+
+    private Path write(String contentHash, Snapshot snapshot) throws IOException {
+        ByteBuffer arena = snapshot.arena.bytes();
+        ByteBuffer header = ByteBuffer.allocate(HEADER)
+            .putInt(MAGIC)
+            .putInt(FORMAT_VERSION)
+            .putInt(snapshot.exact ? FLAG_EXACT : 0)
+            .putInt(arena.remaining())
+            .put(MerkleHash.fromHex(hashingService.hash(arena)))
+            .flip();
+
+        // Scrittura su file temporaneo e rename atomico: un file .snap e' sempre completo
+        Path temp = Files.createTempFile(directory, contentHash, ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+            while (arena.hasRemaining()) {
+                channel.write(arena);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temp);
+            throw e;
+        }
+        return Files.move(temp, directory.resolve(contentHash + SUFFIX),
+            StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Snapshot load(Path file, String contentHash) throws IOException {
+        MappedByteBuffer mapped = map(file);
+        if (mapped.capacity() < HEADER || mapped.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("not a snapshot file");
+        }
+        if (mapped.getInt(Integer.BYTES) != FORMAT_VERSION) {
+            throw new IllegalArgumentException("snapshot format " + mapped.getInt(Integer.BYTES));
+        }
+        int length = mapped.getInt(3 * Integer.BYTES);
+        if (length != mapped.capacity() - HEADER) {
+            throw new IllegalArgumentException("truncated snapshot");
+        }
+
+        // Il digest dei byte mappati scarta i file danneggiati prima di decodificare l'arena;
+        // la garanzia di integrita' resta il ricalcolo degli hash
+        ByteBuffer arena = mapped.slice(HEADER, length);
+        if (!hashingService.hash(arena).equals(HashingService.toHex(digest(mapped)))) {
+            throw new IllegalArgumentException("checksum mismatch");
+        }
+        boolean exact = (mapped.getInt(2 * Integer.BYTES) & FLAG_EXACT) != 0;
+        Snapshot snapshot = new Snapshot(NodeArena.wrap(arena), exact, null);
+        if (!snapshot.arena.verifyHashes() || !snapshot.rootMatches(contentHash)) {
+            throw new IllegalArgumentException("hash mismatch");
+        }
+        return snapshot;
+    }
+
+    private static ByteBuffer mapArena(Path file) throws IOException {
+        MappedByteBuffer mapped = map(file);
+        return mapped.slice(HEADER, mapped.capacity() - HEADER);
+    }
+
+    private static MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    // Versioni da non ricodificare a ogni richiesta; limitate come l'LRU, si perdono al riavvio
+    private boolean isUncacheable(String contentHash) {
+        synchronized (entries) {
+            return uncacheable.containsKey(contentHash);
+        }
+    }
+
+    private void markUncacheable(String contentHash) {
+        synchronized (entries) {
+            uncacheable.put(contentHash, Boolean.TRUE);
+        }
+    }
+
+    private void put(String contentHash, long bytes, Snapshot snapshot) {
+        synchronized (entries) {
+            Entry previous = entries.put(contentHash, new Entry(directory.resolve(contentHash + SUFFIX), bytes, snapshot));
+            if (previous != null) {
+                totalBytes -= previous.bytes;
+            }
+            totalBytes += bytes;
+            evict(contentHash);
+        }
+    }
+
+    // Rimuove i file meno usati finche' la cache non rientra in max-bytes
+    private void evict(String keep) {
+        Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Entry> next = eldest.next();
+            if (next.getKey().equals(keep)) {
+                continue;
+            }
+            eldest.remove();
+            totalBytes -= next.getValue().bytes;
+            delete(next.getValue().file);
+        }
+    }
+
+    private void remove(String contentHash, Entry entry) {
+        synchronized (entries) {
+            if (entries.remove(contentHash, entry)) {
+                totalBytes -= entry.bytes;
+            }
+        }
+        delete(entry.file);
+    }
+
+    // Un file ancora mappato resta leggibile anche dopo la cancellazione, fino al GC del buffer
+    private void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("Could not delete snapshot {}", file, e);
+        }
+    }
+
+    /*
+     * Crea la directory accessibile al solo utente del processo; una directory
+     * esistente di un altro utente o scrivibile da altri disattiva la cache
+     */
+    private boolean openDirectory() throws IOException {
+        if (!directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(directory);
+            return true;
+        }
+
+        if (!Files.exists(directory)) {
+            Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(
+                PosixFilePermissions.fromString("rwx------")));
+        }
+        String owner = Files.getOwner(directory).getName();
+        Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(directory);
+        if (!owner.equals(System.getProperty("user.name"))
+                || permissions.contains(PosixFilePermission.GROUP_WRITE)
+                || permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+            log.warn("Version snapshot cache disabled: {} is owned by {} with permissions {}",
+                directory, owner, PosixFilePermissions.toString(permissions));
+            return false;
+        }
+        return true;
+    }
+
+    // Indicizza i file gia' su disco, dal meno recente: i piu' recenti restano in cima all'LRU
+    private void index() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(directory)) {
+            files = listing.filter(Files::isRegularFile).toList();
+        }
+
+        synchronized (entries) {
+            files.stream()
+                .filter(file -> file.getFileName().toString().endsWith(".tmp"))
+                .forEach(this::delete);
+            files.stream()
+                .filter(file -> isSnapshotFile(file.getFileName().toString()))
+                .sorted(Comparator.comparing(VersionSnapshotCache::lastModified))
+                .forEach(file -> {
+                    String name = file.getFileName().toString();
+                    long bytes = file.toFile().length();
+                    entries.put(name.substring(0, name.length() - SUFFIX.length()), new Entry(file, bytes, null));
+                    totalBytes += bytes;
+                });
+            evict(null);
+        }
+    }
+
+    private static boolean isSnapshotFile(String name) {
+        return name.endsWith(SUFFIX)
+            && CONTENT_HASH.matcher(name.substring(0, name.length() - SUFFIX.length())).matches();
+    }
+
+    private static byte[] digest(ByteBuffer mapped) {
+        byte[] digest = new byte[DIGEST];
+        mapped.get(4 * Integer.BYTES, digest);
+        return digest;
+    }
+
+    private static long lastModified(Path file) {
+        return file.toFile().lastModified();
+    }
+
+    private static final class Entry {
+        private final Path file;
+        private final long bytes;
+        private volatile Snapshot snapshot;
+
+        private Entry(Path file, long bytes, Snapshot snapshot) {
+            this.file = file;
+            this.bytes = bytes;
+            this.snapshot = snapshot;
+        }
+    }
+
+    // Confronta i byte scritti con quelli attesi man mano che arrivano
+    private static final class MatchingOutputStream extends OutputStream {
+        private final byte[] expected;
+        private int position;
+        private boolean matches = true;
+
+        private MatchingOutputStream(byte[] expected) {
+            this.expected = expected;
+        }
+
+        @Override
+        public void write(int b) {
+            if (matches && (position >= expected.length || expected[position] != (byte) b)) {
+                matches = false;
+            }
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            if (matches && (position + len > expected.length
+                    || !Arrays.equals(b, off, off + len, expected, position, position + len))) {
+                matches = false;
+            }
+            position += len;
+        }
+
+        private boolean matches() {
+            return matches && position == expected.length;
+        }
+    }
+
+    /**
+     * Versione codificata, letta dalla pagina mappata. exact indica che il tree
+     * riserializzato coincide byte per byte con il contentJson salvato;
+     * storedJson e' quel contentJson quando e' stato appena letto dal database.
+     */
+    public static final class Snapshot {
+        private final NodeArena arena;
+        private final boolean exact;
+        private final byte[] storedJson;
+
+        private Snapshot(NodeArena arena, boolean exact, byte[] storedJson) {
+            this.arena = arena;
+            this.exact = exact;
+            this.storedJson = storedJson;
+        }
+
+        private Snapshot withStoredJson(byte[] json) {
+            return new Snapshot(arena, exact, json);
+        }
+
+        // Solo il JSON salvato, senza arena: l'encoder non l'ha accettato
+        private static Snapshot stored(byte[] json) {
+            return new Snapshot(null, false, json);
+        }
+
+        private boolean rootMatches(String contentHash) {
+            return MerkleHash.toHex(arena.root(name -> null).merkleHash()).equals(contentHash);
+        }
+
+        public boolean isExact() {
+            return exact;
+        }
+
+        /**
+         * False quando lo snapshot porta solo storedJson: il tree non si legge dall'arena
+         */
+        public boolean isEncoded() {
+            return arena != null;
+        }
+
+        /**
+         * contentJson salvato, se gia' letto durante questa richiesta; altrimenti null
+         */
+        public byte[] storedJson() {
+            return storedJson;
+        }
+
+        public Node root(Function<String, Author> authors) {
+            return arena.root(authors);
+        }
+    }
+}
@@ -7,11 +7,6 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 @Service
 @RequiredArgsConstructor
 @Slf4j
@@ -19,6 +14,9 @@ public class XanaduService {
 
     private final ObjectMapper objectMapper;
 
+    // Un solo Author per nome, condiviso tra nodi e richieste
+    private final AuthorRegistry authorRegistry = new AuthorRegistry();
+
     /**
      * Crea un nuovo documento Xanadu con contenuto iniziale
      */
@@ -29,9 +27,10 @@ public class XanaduService {
             .withAuthor(author)
             .build();
 
-        // Crea DocumentNode root
+        // Crea DocumentNode root, non appeso al RootNode: il documento vive quanto la richiesta
         Node rootNode = DocumentNode.builder.get()
             .withContent(content)
+            .detached()
             .build();
 
         log.debug("Created Xanadu document with root node for title: {}", title);
@@ -132,162 +131,54 @@ public class XanaduService {
     }
 
     /**
-     * Serializza un Node tree in JSON per persistenza con ricorsione completa
-     */
-    public Map<String, Object> serializeNodeTree(Node rootNode) {
-        return serializeNodeRecursive(rootNode, 50, 0);
-    }
-
-    /**
-     * Serializza ricorsivamente un Node tree con depth limit
-     */
-    private Map<String, Object> serializeNodeRecursive(Node node, int maxDepth, int currentDepth) {
-        Map<String, Object> json = new HashMap<>();
-
-        if (currentDepth >= maxDepth) {
-            json.put("maxDepthReached", true);
-            log.warn("Max depth {} reached during serialization", maxDepth);
-            return json;
-        }
-
-        // Serializza content
-        Content<?> content = node.content();
-        json.put("content", serializeContent(content));
-
-        // Serializza children ricorsivamente
-        java.util.List<Map<String, Object>> childrenData = node.children().stream()
-            .filter(n -> !(n instanceof RootNode))
-            .map(child -> serializeNodeRecursive(child, maxDepth, currentDepth + 1))
-            .collect(java.util.stream.Collectors.toList());
-
-        json.put("children", childrenData);
-        json.put("childrenCount", childrenData.size());
-
-        log.debug("Serialized node at depth {}: type={}, childrenCount={}",
-            currentDepth, content.getClass().getSimpleName(), childrenData.size());
-
-        return json;
-    }
-
-    /**
-     * Serializza un Content in JSON (helper)
-     */
-    private Map<String, Object> serializeContent(Content<?> content) {
-        Map<String, Object> data = new HashMap<>();
-        data.put("type", content.getClass().getSimpleName());
-        data.put("value", content.show());
-
-        if (content.author() != null) {
-            data.put("authorName", content.author().getName());
-        }
-
-        // Serializza version info
-        if (content.version() != null) {
-            Map<String, Object> versionData = new HashMap<>();
-            versionData.put("hasParent", content.version().parent() != content.version());
-            data.put("version", versionData);
-        }
-
-        // Serializza links bidirectional
-        List<Map<String, Object>> linksData = new ArrayList<>();
-        if (content.links() != null && !content.links().isEmpty()) {
-            for (Link<?, ?> link : content.links()) {
-                Map<String, Object> linkJson = new HashMap<>();
-                linkJson.put("firstType", link.first().getClass().getSimpleName());
-                linkJson.put("secondType", link.second().getClass().getSimpleName());
-                linkJson.put("firstValue", String.valueOf(link.first().show()));
-                linkJson.put("secondValue", String.valueOf(link.second().show()));
-                linksData.add(linkJson);
-            }
-        }
-        data.put("links", linksData);
-
-        return data;
-    }
-
-    /**
-     * Deserializza JSON in Node tree (type-aware e ricorsivo)
+     * Ricostruisce un Content dai campi salvati (type-aware)
      */
-    @SuppressWarnings("unchecked")
-    public Node deserializeNodeTree(Map<String, Object> json, Author defaultAuthor) {
-        Map<String, Object> contentData = (Map<String, Object>) json.get("content");
-        String contentType = (String) contentData.get("type");
-        String authorName = (String) contentData.get("authorName");
-
+    public Content<?> restoreContent(String contentType, Object value, String authorName, Author defaultAuthor) {
         Author author = authorName != null ?
-            Author.getNewAuthor(authorName) : defaultAuthor;
-
-        Content<?> content;
+            authorRegistry.intern(authorName) : defaultAuthor;
 
-        // Deserializzazione type-aware
         switch (contentType) {
             case "StringContent":
-                String stringValue = (String) contentData.get("value");
-                content = StringContent.builder.get()
-                    .withContent(stringValue)
+                return StringContent.builder.get()
+                    .withContent((String) value)
                     .withAuthor(author)
                     .build();
-                break;
 
             case "IntegerContent":
-                Object intValueObj = contentData.get("value");
-                Integer intValue = intValueObj instanceof Integer ?
-                    (Integer) intValueObj :
-                    Integer.parseInt(String.valueOf(intValueObj));
-                content = IntegerContent.builder.get()
+                Integer intValue = value instanceof Integer ?
+                    (Integer) value :
+                    Integer.parseInt(String.valueOf(value));
+                return IntegerContent.builder.get()
                     .withContent(intValue)
                     .withAuthor(author)
                     .build();
-                break;
 
             case "ImageContent":
-                String imageUrl = (String) contentData.get("value");
-                content = ImageContent.builder.get()
-                    .withContent(imageUrl)
+                return ImageContent.builder.get()
+                    .withContent((String) value)
                     .withAuthor(author)
                     .build();
-                break;
 
             case "TranscludedContent":
                 // Simplified: store as string reference for MVP
-                String transcludedValue = String.valueOf(contentData.get("value"));
-                content = StringContent.builder.get()
-                    .withContent("TRANSCLUDED: " + transcludedValue)
+                return StringContent.builder.get()
+                    .withContent("TRANSCLUDED: " + value)
                     .withAuthor(author)
                     .build();
-                break;
 
             default:
                 log.warn("Unknown content type: {}, defaulting to StringContent", contentType);
-                content = StringContent.builder.get()
-                    .withContent(String.valueOf(contentData.get("value")))
+                return StringContent.builder.get()
+                    .withContent(String.valueOf(value))
                     .withAuthor(author)
                     .build();
         }
-
-        Node node = DocumentNode.builder.get()
-            .withContent(content)
-            .build();
-
-        // Ricorri nei children se presenti
-        Object childrenObj = json.get("children");
-        if (childrenObj instanceof List) {
-            List<Map<String, Object>> children = (List<Map<String, Object>>) childrenObj;
-            for (Map<String, Object> childJson : children) {
-                Node childNode = deserializeNodeTree(childJson, defaultAuthor);
-                // Ricostruisci link bidirezionale parent ↔ child
-                childNode.content().link(node.content());
-            }
-        }
-
-        log.debug("Deserialized node tree from JSON: type={}", contentType);
-        return node;
     }
 
     /**
-     * Crea un Author Xanadu
+     * Restituisce l'Author Xanadu canonico per il nome dato
      */
     public Author createAuthor(String name) {
-        return Author.getNewAuthor(name);
+        return authorRegistry.intern(name);
     }
 }
@@ -1,35 +1,193 @@
 package com.ctd.xanadu.content;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractCollection;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
+/*
+ * Published content is remembered only while it is reachable from
+ * elsewhere: the history is not stable, and content drops out of
+ * getPublishedContent (and hasPublished) once the trees holding it are
+ * gone. It is not an audit trail; the stored versions are.
+ */
 public class Author {
 
+	private static final int CHUNK_BITS = 5;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
 	private String name;
-	private Collection<Content<?>> publishedContent;
+	/*
+	 * Published content, held weakly: a content points back at its author,
+	 * so strong entries would keep every tree this author ever touched
+	 * alive for as long as the author is interned. The identity set
+	 * de-duplicates without a lock; the log keeps publication order in
+	 * fixed-size chunks that are only appended to, so a reader bounds it
+	 * by the published size and never copies or sorts. A chunk whose
+	 * entries have all been released is dropped.
+	 */
+	private final ConcurrentMap<Entry, Boolean> published = new ConcurrentHashMap<>();
+	private final ReferenceQueue<Content<?>> released = new ReferenceQueue<>();
+	private final Object appendLock = new Object();
+	private volatile Entry[][] chunks = new Entry[4][];
+	private int[] live = new int[4];
+	private volatile int size;
+	private final Collection<Content<?>> publishedView = new PublishedView();
 
 	public String getName() {
 		return name;
 	}
 
+	/*
+	 * Read-only view, in publication order, of the content still reachable.
+	 * Entries disappear once their content is collected, so two iterations
+	 * (or size() and an iteration) may disagree.
+	 */
 	public Collection<Content<?>> getPublishedContent() {
-		return publishedContent;
+		return publishedView;
+	}
+
+	public boolean hasPublished(Content<?> content) {
+		return content != null && published.containsKey(new Entry(content, null));
 	}
 
 	private Author(String name) {
 		this.name = name;
-		this.publishedContent = List.of();
 	}
 
+	/* Appenders serialize on the log only; readers and size() never lock */
 	public void addPublishedContent(Content<?> content) {
-		this.publishedContent = Stream.concat(publishedContent.stream(), Stream.of(content)).distinct()
-				.collect(Collectors.toList());
+		purge();
+		Entry entry = new Entry(content, released);
+		if (published.putIfAbsent(entry, Boolean.TRUE) != null) {
+			// Not in the log: a cleared reference is never enqueued, so purge won't count it
+			entry.clear();
+			return;
+		}
+		synchronized (appendLock) {
+			int index = size;
+			int chunk = index >>> CHUNK_BITS;
+			Entry[][] current = chunks;
+			if (chunk == current.length) {
+				current = Arrays.copyOf(current, current.length << 1);
+				live = Arrays.copyOf(live, current.length);
+			}
+			if (current[chunk] == null) {
+				current[chunk] = new Entry[CHUNK_SIZE];
+			}
+			current[chunk][index & CHUNK_MASK] = entry;
+			live[chunk]++;
+			entry.index = index;
+			chunks = current;
+			size = index + 1;
+		}
 	}
 
 	public static Author getNewAuthor(String name) {
 		return new Author(name);
 	}
 
+	private void purge() {
+		Entry entry;
+		while ((entry = (Entry) released.poll()) != null) {
+			published.remove(entry);
+			synchronized (appendLock) {
+				int chunk = entry.index >>> CHUNK_BITS;
+				if (--live[chunk] == 0 && chunk < size >>> CHUNK_BITS) {
+					chunks[chunk] = null;
+				}
+			}
+		}
+	}
+
+	/* Identity of the content, which stays valid (by the reference itself) once cleared */
+	private static final class Entry extends WeakReference<Content<?>> {
+
+		private final int hash;
+		private int index;
+
+		private Entry(Content<?> content, ReferenceQueue<Content<?>> queue) {
+			super(content, queue);
+			this.hash = System.identityHashCode(content);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (o == this) {
+				return true;
+			}
+			if (!(o instanceof Entry)) {
+				return false;
+			}
+			Content<?> content = get();
+			return content != null && content == ((Entry) o).get();
+		}
+	}
+
+	private class PublishedView extends AbstractCollection<Content<?>> {
+
+		/*
+		 * Iterates the log up to the size published when it starts; each
+		 * content is taken strongly before hasNext reports it, and released
+		 * ones are skipped
+		 */
+		@Override
+		public Iterator<Content<?>> iterator() {
+			int bound = size;
+			Entry[][] log = chunks;
+			return new Iterator<>() {
+				private int index;
+				private Content<?> next;
+
+				@Override
+				public boolean hasNext() {
+					while (next == null && index < bound) {
+						Entry[] chunk = log[index >>> CHUNK_BITS];
+						if (chunk == null) {
+							index = (index | CHUNK_MASK) + 1;
+							continue;
+						}
+						Entry entry = chunk[index & CHUNK_MASK];
+						next = entry != null ? entry.get() : null;
+						index++;
+					}
+					return next != null;
+				}
+
+				@Override
+				public Content<?> next() {
+					if (!hasNext()) {
+						throw new NoSuchElementException();
+					}
+					Content<?> content = next;
+					next = null;
+					return content;
+				}
+			};
+		}
+
+		/* Released content not yet purged may still be counted */
+		@Override
+		public int size() {
+			purge();
+			return published.size();
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			return o instanceof Content && hasPublished((Content<?>) o);
+		}
+	}
+
 }
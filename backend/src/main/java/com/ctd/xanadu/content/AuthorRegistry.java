@@ -0,0 +1,65 @@
+package com.ctd.xanadu.content;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * Interns Author instances by name so every node of a tree, and every
+ * request running at the same time, resolves to the same object. Entries
+ * are held weakly: once no content references an author any more it is
+ * collected and its slot is purged on the next lookup.
+ */
+public final class AuthorRegistry {
+
+	private final ConcurrentMap<String, AuthorRef> authors = new ConcurrentHashMap<>();
+	private final ReferenceQueue<Author> released = new ReferenceQueue<>();
+
+	public Author intern(String name) {
+		purge();
+		AuthorRef ref = authors.get(name);
+		Author author = ref != null ? ref.get() : null;
+		if (author != null) {
+			return author;
+		}
+
+		Author candidate = Author.getNewAuthor(name);
+		AuthorRef candidateRef = new AuthorRef(name, candidate, released);
+		while (true) {
+			AuthorRef current = authors.putIfAbsent(name, candidateRef);
+			if (current == null) {
+				return candidate;
+			}
+			Author existing = current.get();
+			if (existing != null) {
+				return existing;
+			}
+			if (authors.replace(name, current, candidateRef)) {
+				return candidate;
+			}
+		}
+	}
+
+	public int size() {
+		purge();
+		return authors.size();
+	}
+
+	private void purge() {
+		AuthorRef ref;
+		while ((ref = (AuthorRef) released.poll()) != null) {
+			authors.remove(ref.name, ref);
+		}
+	}
+
+	private static final class AuthorRef extends WeakReference<Author> {
+
+		private final String name;
+
+		private AuthorRef(String name, Author author, ReferenceQueue<Author> queue) {
+			super(author, queue);
+			this.name = name;
+		}
+	}
+}
@@ -2,8 +2,6 @@ package com.ctd.xanadu.content;
 
 import java.util.Collection;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import com.ctd.xanadu.content.version.Version;
 import com.ctd.xanadu.content.visitor.ContentVisitor;
 
@@ -14,7 +12,7 @@ public abstract class Content<T> {
 	private  T content;
 	private Author author;
 	private Optional<Version> version;
-	private Collection<Link<?,?>> links;
+	private final LinkStore links = new LinkStore();
 
 	protected void setContent(T content) {
 		this.content = content;
@@ -29,7 +27,8 @@ public abstract class Content<T> {
 	}
 
 	protected void setLinks(Collection<Link<?, ?>> links) {
-		this.links = links;
+		this.links.clear();
+		links.forEach(this.links::add);
 	}
 
 	public Author author() {
@@ -44,21 +43,25 @@ public abstract class Content<T> {
 		return this.version.get();
 	}
 
+	/* Read-only view, indexable without copying */
 	public  Collection<Link<?, ?>> links(){
-		return this.links;
+		return this.links.snapshot();
 	}
 
 	public  T show() {
 		return this.content;
 	}
 
+	/* Type name as serialized and hashed; views over stored trees report the stored one */
+	public String typeName() {
+		return getClass().getSimpleName();
+	}
+
 	/* Return a new Link<T,R> Object, add it to c.links and this.links */
 	public abstract <R> void link(Content<R> c);
 
 	void addLink(Link<?, ?> l) {
-		this.links = Stream.concat(links.stream(), Stream.of(l))
-				.distinct()
-				.collect(Collectors.toList());
+		this.links.add(l);
 	}
 
 
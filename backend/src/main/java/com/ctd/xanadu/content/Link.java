@@ -18,6 +18,24 @@ public class Link<T extends Content<?>, R extends Content<?>> {
 		return this.second;
 	}
 
+	/* Two links are the same link when they join the same pair of contents */
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof Link)) {
+			return false;
+		}
+		Link<?, ?> other = (Link<?, ?>) o;
+		return first.equals(other.first) && second.equals(other.second);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * first.hashCode() + second.hashCode();
+	}
+
 
 	public static <T extends Content<?>, R extends Content<?>> Link<T, R> getNewLink(T t, R r) {
 		return new Link<T, R>(t, r);
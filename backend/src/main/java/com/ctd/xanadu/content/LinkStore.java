@@ -0,0 +1,121 @@
+package com.ctd.xanadu.content;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.RandomAccess;
+import java.util.function.Consumer;
+
+/*
+ * Per-content link store: a growable array for ordered iteration plus an
+ * open-addressed index over Link.hashCode() for the de-dup check, so add()
+ * and contains() are amortized O(1). Slots below size are never rewritten
+ * and growing copies into a new array, which lets snapshot() expose a
+ * read-only view without copying.
+ */
+final class LinkStore {
+
+	private static final int MIN_CAPACITY = 4;
+
+	private Link<?, ?>[] links = new Link<?, ?>[MIN_CAPACITY];
+	private int size;
+	/* Slots hold index + 1 into links, 0 marks an empty slot */
+	private int[] index = new int[MIN_CAPACITY << 1];
+	private Collection<Link<?, ?>> snapshot = Collections.emptyList();
+
+	boolean add(Link<?, ?> l) {
+		int slot = find(l);
+		if (index[slot] != 0) {
+			return false;
+		}
+		if (size == links.length) {
+			links = Arrays.copyOf(links, size << 1);
+		}
+		links[size++] = l;
+		index[slot] = size;
+		if (size << 1 > index.length) {
+			rehash(index.length << 1);
+		}
+		return true;
+	}
+
+	boolean contains(Link<?, ?> l) {
+		return index[find(l)] != 0;
+	}
+
+	int size() {
+		return size;
+	}
+
+	void clear() {
+		links = new Link<?, ?>[MIN_CAPACITY];
+		index = new int[MIN_CAPACITY << 1];
+		size = 0;
+		snapshot = Collections.emptyList();
+	}
+
+	Collection<Link<?, ?>> snapshot() {
+		if (snapshot.size() != size) {
+			snapshot = new Snapshot(links, size);
+		}
+		return snapshot;
+	}
+
+	private int find(Link<?, ?> l) {
+		int mask = index.length - 1;
+		int slot = spread(l.hashCode()) & mask;
+		while (index[slot] != 0 && !links[index[slot] - 1].equals(l)) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void rehash(int capacity) {
+		int[] table = new int[capacity];
+		int mask = capacity - 1;
+		for (int i = 0; i < size; i++) {
+			int slot = spread(links[i].hashCode()) & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = i + 1;
+		}
+		this.index = table;
+	}
+
+	private static int spread(int h) {
+		return h ^ (h >>> 16);
+	}
+
+	private static final class Snapshot extends AbstractList<Link<?, ?>> implements RandomAccess {
+
+		private final Link<?, ?>[] links;
+		private final int size;
+
+		private Snapshot(Link<?, ?>[] links, int size) {
+			this.links = links;
+			this.size = size;
+		}
+
+		@Override
+		public Link<?, ?> get(int i) {
+			if (i < 0 || i >= size) {
+				throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+			}
+			return links[i];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+
+		@Override
+		public void forEach(Consumer<? super Link<?, ?>> action) {
+			for (int i = 0; i < size; i++) {
+				action.accept(links[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,111 @@
+package com.ctd.xanadu.node;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/*
+ * Append-only children container shared by DocumentNode and RootNode.
+ * Elements live in fixed-size chunks that are never rewritten once filled,
+ * so snapshot() hands out an immutable view in O(1) that stays valid while
+ * the vector keeps growing. De-duplication is by identity, like the
+ * Stream.distinct() it replaces (Node does not override equals).
+ *
+ * Most nodes have a handful of children, so nothing is allocated before the
+ * first add, and small vectors de-duplicate by scanning their first chunk;
+ * the identity set is only built once a vector outgrows SCAN_LIMIT.
+ */
+final class ChildVector {
+
+	private static final int CHUNK_BITS = 5;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final int SCAN_LIMIT = 8;
+	private static final Node[][] EMPTY = new Node[0][];
+
+	private Node[][] chunks = EMPTY;
+	private int size;
+	private Set<Node> members;
+	private Collection<Node> snapshot = Collections.emptyList();
+
+	boolean add(Node n) {
+		if (contains(n)) {
+			return false;
+		}
+		if (members != null) {
+			members.add(n);
+		} else if (size == SCAN_LIMIT) {
+			// The first SCAN_LIMIT children all sit in the first chunk
+			members = Collections.newSetFromMap(new IdentityHashMap<>());
+			for (int i = 0; i < size; i++) {
+				members.add(chunks[0][i]);
+			}
+			members.add(n);
+		}
+		int chunk = size >>> CHUNK_BITS;
+		if (chunk == chunks.length) {
+			chunks = Arrays.copyOf(chunks, Math.max(1, chunks.length << 1));
+		}
+		if (chunks[chunk] == null) {
+			chunks[chunk] = new Node[CHUNK_SIZE];
+		}
+		chunks[chunk][size & CHUNK_MASK] = n;
+		size++;
+		return true;
+	}
+
+	boolean contains(Node n) {
+		if (members != null) {
+			return members.contains(n);
+		}
+		for (int i = 0; i < size; i++) {
+			if (chunks[0][i] == n) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	Collection<Node> snapshot() {
+		if (snapshot.size() != size) {
+			snapshot = new Snapshot(chunks, size);
+		}
+		return snapshot;
+	}
+
+	private static final class Snapshot extends AbstractList<Node> implements RandomAccess {
+
+		private final Node[][] chunks;
+		private final int size;
+
+		private Snapshot(Node[][] chunks, int size) {
+			this.chunks = chunks;
+			this.size = size;
+		}
+
+		@Override
+		public Node get(int index) {
+			if (index < 0 || index >= size) {
+				throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+			}
+			return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+}
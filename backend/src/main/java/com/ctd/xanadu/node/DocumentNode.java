@@ -2,8 +2,6 @@ package com.ctd.xanadu.node;
 
 import java.util.Collection;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 import com.ctd.xanadu.content.Content;
 import com.ctd.xanadu.node.visitor.NodeVisitor;
@@ -11,19 +9,28 @@ import com.ctd.xanadu.node.visitor.NodeVisitor;
 
 public class DocumentNode implements Node {
 
-	private Collection<Node> children;
+	private static final Collection<Node> LEAF = List.of(RootNode.getInstance());
+
+	/* Null until the first child: most nodes in a tree are leaves */
+	private ChildVector children;
 	private Content<?> content;
     private Node parent;
+	/*
+	 * Hash of the subtree, cleared up to the root whenever a descendant gains
+	 * a child. A node is only hashed when all its children are, so clearing
+	 * stops at the first ancestor that is already unhashed.
+	 */
+	private volatile byte[] hash;
 
 	private DocumentNode(Content<?> content, Node parent) {
 		this.content = content;
 		this.parent = parent;
-		this.children = List.of(RootNode.getInstance());
 	}
 
+	/* A leaf still reports the RootNode sentinel, as visitors expect */
 	@Override
 	public Collection<Node> children() {
-		return this.children;
+		return children == null || children.isEmpty() ? LEAF : children.snapshot();
 	}
 
 	@Override
@@ -39,11 +46,64 @@ public class DocumentNode implements Node {
 
 	@Override
 	public void addChild(Node newChild) {
-		this.children = Stream.concat(children.stream(), Stream.of(newChild))
-				.distinct()
-				.dropWhile(i -> i.equals(RootNode.getInstance()))
-				.collect(Collectors.toList());
+		if (newChild == RootNode.getInstance()) {
+			return;
+		}
+		if (children == null) {
+			children = new ChildVector();
+		}
+		if (children.add(newChild)) {
+			for (Node n = this; n instanceof DocumentNode && ((DocumentNode) n).hash != null; n = n.parent()) {
+				((DocumentNode) n).hash = null;
+			}
+		}
+	}
+
+	/*
+	 * Cached after the first call. Links count through the "linked" flag, so a
+	 * content must be linked to its parent's before the subtree is hashed, as
+	 * XanaduService does right after attaching a section.
+	 */
+	@Override
+	public byte[] merkleHash() {
+		byte[] cached = hash;
+		return cached != null ? cached.clone() : MerkleHash.of(this).clone();
+	}
+
+	public boolean isHashed() {
+		return hash != null;
+	}
+
+	byte[] cachedHash() {
+		return hash;
+	}
+
+	void cacheHash(byte[] hash) {
+		this.hash = hash;
+	}
 
+	/* Seeds the cache with a hash known from storage, so the subtree is not rehashed; children must be hashed first */
+	public void restoreHash(byte[] hash) {
+		if (hash.length != MerkleHash.LENGTH) {
+			throw new IllegalArgumentException("Not a Merkle hash");
+		}
+		if (children != null) {
+			for (Node child : children.snapshot()) {
+				if (child instanceof DocumentNode && !((DocumentNode) child).isHashed()) {
+					throw new IllegalStateException("Children must be hashed before their parent");
+				}
+			}
+		}
+		this.hash = hash.clone();
+	}
+
+	/* A node not registered with its parent, for views over read-only trees (see NodeArena) */
+	static DocumentNode detached(Content<?> content, Node parent, Collection<Node> children) {
+		DocumentNode node = new DocumentNode(content, parent);
+		for (Node child : children) {
+			node.addChild(child);
+		}
+		return node;
 	}
 
 	@Override
@@ -55,6 +115,7 @@ public class DocumentNode implements Node {
 
 		private Content<?> content;
 		private Node parent = RootNode.getInstance();
+		private boolean attached = true;
 
 		public builder withContent(Content<?> content) {
 			this.content = content;
@@ -66,13 +127,22 @@ public class DocumentNode implements Node {
 			return this;
 		}
 
+		/* Don't register the node with its parent: a root built this way is not kept by the RootNode singleton */
+		public builder detached() {
+			this.attached = false;
+			return this;
+		}
+
 
 		@Override
 		public DocumentNode build() {
 			DocumentNode newNode = new DocumentNode(content, parent);
-			parent.addChild(newNode);
+			if (attached) {
+				parent.addChild(newNode);
+			}
 			this.content = null;
 			this.parent = RootNode.getInstance();
+			this.attached = true;
 			return newNode;
 
 		}
@@ -0,0 +1,273 @@
+package com.ctd.xanadu.node;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+
+import com.ctd.xanadu.content.Content;
+import com.ctd.xanadu.content.Link;
+import com.ctd.xanadu.content.visitor.ToStringVisitor;
+
+/*
+ * Merkle hashing of node trees.
+ *
+ * leaf(content) = SHA-256(0x03 | text(type) | value | text(author) | flags)
+ * node          = SHA-256(0x01 | leaf(content) | hash(child_1) | ... | hash(child_n))
+ * truncated     = SHA-256(0x02)
+ *
+ *   text(s)  0x00 for null, else 0x01 | length (4 bytes, big-endian) | UTF-8
+ *   value    0x00 for null, 0x01 | length | UTF-8 for a string,
+ *            0x02 | 4 bytes (big-endian) for an integer
+ *   flags    0x01 if the content has a parent version,
+ *            0x02 if it is linked to its parent's content
+ *
+ * Every field is length-prefixed, so no choice of strings makes two leaves
+ * collide, and null is distinct from "" and from "null". Links are derived
+ * from the structure and the "linked" flag: the flag is covered, the link
+ * array is not. A content is linked when one of its links pairs its type and
+ * value with its parent's, the rule the stored form is read back with (see
+ * NodeArenaEncoder), so a tree hashes the same from the heap, the JSON and
+ * the arena.
+ *
+ * A node past the serializer's depth limit is stored as a placeholder and
+ * hashes as "truncated", so the root covers exactly what the stored JSON
+ * holds and can be recomputed from it.
+ *
+ * DocumentNode caches the hash of its subtree; adding a child clears the
+ * cache up to the root, so after an edit only that path is rehashed.
+ *
+ * leafHashV1 is the leaf of the first Merkle scheme (fields joined by 0x1f,
+ * no flags). It is kept only to verify versions stored under it.
+ */
+public final class MerkleHash {
+
+	public static final int LENGTH = 32;
+
+	private static final byte LEAF_V1 = 0x00;
+	private static final byte NODE = 0x01;
+	private static final byte TRUNCATED = 0x02;
+	private static final byte LEAF = 0x03;
+	private static final byte SEPARATOR = 0x1f;
+
+	private static final byte ABSENT = 0x00;
+	private static final byte STRING = 0x01;
+	private static final byte INTEGER = 0x02;
+
+	private static final byte VERSIONED = 0x01;
+	private static final byte LINKED = 0x02;
+
+	private static final byte[] EMPTY = digest().digest();
+	private static final byte[] TRUNCATED_HASH = digest().digest(new byte[] { TRUNCATED });
+
+	/* One leaf digest per thread: a leaf is hashed for every node of every tree */
+	private static final ThreadLocal<MessageDigest> LEAF_DIGEST = ThreadLocal.withInitial(MerkleHash::digest);
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private MerkleHash() {
+	}
+
+	/* Post-order without recursion: one pending builder per open node; cached subtrees are not entered */
+	static byte[] of(DocumentNode root) {
+		Deque<Frame> frames = new ArrayDeque<>();
+		frames.push(new Frame(root));
+		byte[] hash = null;
+
+		while (!frames.isEmpty()) {
+			Frame frame = frames.peek();
+			if (hash != null) {
+				frame.builder.child(hash);
+				hash = null;
+			}
+			if (!frame.children.hasNext()) {
+				frames.pop();
+				hash = frame.builder.build();
+				frame.node.cacheHash(hash);
+				continue;
+			}
+			Node child = frame.children.next();
+			if (child instanceof DocumentNode) {
+				DocumentNode node = (DocumentNode) child;
+				hash = node.cachedHash();
+				if (hash == null) {
+					frames.push(new Frame(node));
+				}
+			} else if (!(child instanceof RootNode)) {
+				hash = child.merkleHash();
+			}
+		}
+		return hash;
+	}
+
+	/*
+	 * Hash of the subtree as a serializer with the given depth limit writes it:
+	 * nodes at maxDepth are placeholders. Caches are neither used nor filled,
+	 * since they hold the hash of the whole subtree.
+	 */
+	public static byte[] limited(Node root, int maxDepth) {
+		if (maxDepth <= 0) {
+			return truncated();
+		}
+		Builder builder = node(leafHash(root));
+		for (Node child : root.children()) {
+			if (!(child instanceof RootNode)) {
+				builder.child(limited(child, maxDepth - 1));
+			}
+		}
+		return builder.build();
+	}
+
+	/* Leaf of the node's content; the parent decides the "linked" flag */
+	public static byte[] leafHash(Node node) {
+		Content<?> content = node.content();
+		Object value = content.show();
+		if (value != null && !(value instanceof String) && !(value instanceof Integer)) {
+			value = content.accept(ToStringVisitor.get());
+		}
+		return leafHash(content.typeName(), value, content.author() != null ? content.author().getName() : null,
+				content.version().parent() != content.version(), linkedToParent(node));
+	}
+
+	/* Same leaf as leafHash(Node), from the fields a stored node carries; value is a String, an Integer or null */
+	public static byte[] leafHash(String type, Object value, String authorName, boolean versioned, boolean linked) {
+		MessageDigest md = LEAF_DIGEST.get();
+		md.reset();
+		md.update(LEAF);
+		text(md, type);
+		if (value instanceof Integer) {
+			md.update(INTEGER);
+			int v = (Integer) value;
+			md.update(new byte[] { (byte) (v >>> 24), (byte) (v >>> 16), (byte) (v >>> 8), (byte) v });
+		} else {
+			text(md, (String) value);
+		}
+		text(md, authorName);
+		md.update((byte) ((versioned ? VERSIONED : 0) | (linked ? LINKED : 0)));
+		return md.digest();
+	}
+
+	/* Leaf of the first Merkle scheme, for versions stored under it */
+	public static byte[] leafHashV1(String type, String value, String authorName) {
+		MessageDigest md = LEAF_DIGEST.get();
+		md.reset();
+		md.update(LEAF_V1);
+		md.update(type.getBytes(StandardCharsets.UTF_8));
+		md.update(SEPARATOR);
+		md.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+		md.update(SEPARATOR);
+		if (authorName != null) {
+			md.update(authorName.getBytes(StandardCharsets.UTF_8));
+		}
+		return md.digest();
+	}
+
+	/* A content is linked to its parent's when one of its links pairs the two by type and value */
+	public static boolean linkedToParent(Node node) {
+		Node parent = node.parent();
+		if (parent == null || parent instanceof RootNode) {
+			return false;
+		}
+		Content<?> content = node.content();
+		String type = content.typeName();
+		String value = String.valueOf(content.show());
+		String parentType = parent.content().typeName();
+		String parentValue = String.valueOf(parent.content().show());
+		for (Link<?, ?> link : content.links()) {
+			if (type.equals(link.first().typeName()) && value.equals(String.valueOf(link.first().show()))
+					&& parentType.equals(link.second().typeName())
+					&& parentValue.equals(String.valueOf(link.second().show()))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/* Incremental node hash for callers that walk a serialized tree */
+	public static Builder node(byte[] leafHash) {
+		return new Builder(leafHash);
+	}
+
+	/* Hash of the RootNode sentinel and of anything that has no content */
+	static byte[] empty() {
+		return EMPTY;
+	}
+
+	/* Hash of a maxDepthReached placeholder, in place of the subtree it cuts off */
+	public static byte[] truncated() {
+		return TRUNCATED_HASH.clone();
+	}
+
+	public static String toHex(byte[] hash) {
+		char[] out = new char[hash.length << 1];
+		for (int i = 0; i < hash.length; i++) {
+			out[i << 1] = HEX[(hash[i] >> 4) & 0x0f];
+			out[(i << 1) + 1] = HEX[hash[i] & 0x0f];
+		}
+		return new String(out);
+	}
+
+	public static byte[] fromHex(String hex) {
+		if (hex.length() != LENGTH << 1) {
+			throw new IllegalArgumentException("Not a Merkle hash: " + hex);
+		}
+		byte[] hash = new byte[LENGTH];
+		for (int i = 0; i < LENGTH; i++) {
+			hash[i] = (byte) Integer.parseInt(hex, i << 1, (i << 1) + 2, 16);
+		}
+		return hash;
+	}
+
+	private static void text(MessageDigest md, String s) {
+		if (s == null) {
+			md.update(ABSENT);
+			return;
+		}
+		byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+		md.update(STRING);
+		md.update(new byte[] { (byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16),
+				(byte) (bytes.length >>> 8), (byte) bytes.length });
+		md.update(bytes);
+	}
+
+	public static final class Builder {
+
+		private final MessageDigest md = digest();
+
+		private Builder(byte[] leafHash) {
+			md.update(NODE);
+			md.update(leafHash);
+		}
+
+		public Builder child(byte[] childHash) {
+			md.update(childHash);
+			return this;
+		}
+
+		public byte[] build() {
+			return md.digest();
+		}
+	}
+
+	private static final class Frame {
+
+		private final DocumentNode node;
+		private final Builder builder;
+		private final Iterator<Node> children;
+
+		private Frame(DocumentNode node) {
+			this.node = node;
+			this.builder = new Builder(leafHash(node));
+			this.children = node.children().iterator();
+		}
+	}
+
+	private static MessageDigest digest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 algorithm not available", e);
+		}
+	}
+}
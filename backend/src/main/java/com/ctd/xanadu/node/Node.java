@@ -16,6 +16,9 @@ public interface Node {
 
 	void addChild(Node newChild);
 
+	/* Merkle hash of the subtree rooted here (see MerkleHash); do not modify the array */
+	byte[] merkleHash();
+
 	<T> T accept(NodeVisitor<T> visitor);
 
     default Stream<Node> flattened() {
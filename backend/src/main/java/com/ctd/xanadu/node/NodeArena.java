@@ -0,0 +1,457 @@
+package com.ctd.xanadu.node;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+import com.ctd.xanadu.content.Author;
+import com.ctd.xanadu.content.Content;
+import com.ctd.xanadu.content.ImageContent;
+import com.ctd.xanadu.content.IntegerContent;
+import com.ctd.xanadu.content.Link;
+import com.ctd.xanadu.content.StringContent;
+import com.ctd.xanadu.content.version.Version;
+import com.ctd.xanadu.content.visitor.ContentVisitor;
+import com.ctd.xanadu.node.visitor.NodeVisitor;
+
+/*
+ * Compact read-only form of a node tree, in a single ByteBuffer (direct, so
+ * off-heap, when built here):
+ *
+ *   header   magic | node count | pool size
+ *   columns  parent | first child | next sibling | child count |
+ *            type | value | author | flags          one int per node each
+ *   hashes   Merkle hash of every subtree           32 bytes per node
+ *   pool     UTF-8 strings as length | bytes, each stored once
+ *
+ * Nodes are numbered in pre-order: the root is 0 and a parent comes before
+ * its children. type, author and string values are pool offsets (-1 when
+ * absent), integer values sit in the value column itself.
+ *
+ * The Node and Content objects handed out are flyweights over an index;
+ * fields are decoded when read. The tree is immutable, so addChild and link
+ * are rejected. Visitors are typed on the heap classes, so accept hands them
+ * detached heap copies: a DocumentNode over the flyweight children (one
+ * level at a time) and a content rebuilt through buildFrom, which does not
+ * publish it on the author. A null value is stored as absent and hashed as
+ * null, yet show() reports it as "null", the string the heap renders.
+ * Links mirror NodeTreeDeserializer: a linked content is linked to its
+ * parent's, so they are derived from the structure instead of stored.
+ */
+public final class NodeArena {
+
+	public static final int MAGIC = 0x584e4132; // "XNA2"
+
+	private static final int HEADER = 12;
+	private static final int PARENT = 0;
+	private static final int FIRST_CHILD = 1;
+	private static final int NEXT_SIBLING = 2;
+	private static final int CHILD_COUNT = 3;
+	private static final int TYPE = 4;
+	private static final int VALUE = 5;
+	private static final int AUTHOR = 6;
+	private static final int FLAGS = 7;
+	private static final int COLUMNS = 8;
+	private static final int NODE_BYTES = COLUMNS * Integer.BYTES + MerkleHash.LENGTH;
+
+	private static final int FLAG_INTEGER = 1;
+	private static final int FLAG_VERSIONED = 2;
+	private static final int FLAG_LINKED = 4;
+
+	private static final Collection<Node> LEAF = List.of(RootNode.getInstance());
+
+	private final ByteBuffer buffer;
+	private final int size;
+	private final int hashes;
+	private final int pool;
+	private final int poolSize;
+
+	private NodeArena(ByteBuffer buffer, int size, int poolSize) {
+		this.buffer = buffer;
+		this.size = size;
+		this.hashes = HEADER + size * COLUMNS * Integer.BYTES;
+		this.pool = hashes + size * MerkleHash.LENGTH;
+		this.poolSize = poolSize;
+	}
+
+	/* Read-only view over an encoded arena; the bytes are not copied */
+	public static NodeArena wrap(ByteBuffer bytes) {
+		ByteBuffer buffer = bytes.slice().asReadOnlyBuffer();
+		if (buffer.remaining() < HEADER || buffer.getInt(0) != MAGIC) {
+			throw new IllegalArgumentException("Not a node arena");
+		}
+		int size = buffer.getInt(4);
+		int poolSize = buffer.getInt(8);
+		if (size < 1 || poolSize < 0 || HEADER + (long) size * NODE_BYTES + poolSize != buffer.remaining()) {
+			throw new IllegalArgumentException("Corrupted node arena");
+		}
+		return new NodeArena(buffer, size, poolSize);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int byteSize() {
+		return buffer.capacity();
+	}
+
+	/* The encoded form, e.g. to write it out; read-only */
+	public ByteBuffer bytes() {
+		return buffer.duplicate();
+	}
+
+	/*
+	 * Recomputes every subtree hash from the columns and the pool and checks
+	 * it against the stored one. wrap() only checks the layout: an arena read
+	 * from outside the process is trusted only after this.
+	 */
+	public boolean verifyHashes() {
+		byte[][] computed = new byte[size][];
+		for (int i = size - 1; i >= 0; i--) {
+			int value = column(VALUE, i);
+			int flags = column(FLAGS, i);
+			Object stored = (flags & FLAG_INTEGER) != 0 ? Integer.valueOf(value) : string(value);
+			MerkleHash.Builder node = MerkleHash.node(MerkleHash.leafHash(string(column(TYPE, i)), stored,
+					string(column(AUTHOR, i)), (flags & FLAG_VERSIONED) != 0, (flags & FLAG_LINKED) != 0));
+			for (int c = column(FIRST_CHILD, i); c >= 0; c = column(NEXT_SIBLING, c)) {
+				if (c <= i || c >= size) {
+					return false;
+				}
+				node.child(computed[c]);
+			}
+			computed[i] = node.build();
+
+			byte[] hash = new byte[MerkleHash.LENGTH];
+			buffer.get(hashes + i * MerkleHash.LENGTH, hash);
+			if (!Arrays.equals(hash, computed[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* Authors are resolved by name when read, e.g. through AuthorRegistry::intern; the name is null when none was stored */
+	public Node root(Function<String, Author> authors) {
+		return new ArenaNode(this, authors, 0);
+	}
+
+	private int column(int column, int index) {
+		return buffer.getInt(HEADER + (column * size + index) * Integer.BYTES);
+	}
+
+	private String string(int offset) {
+		if (offset < 0) {
+			return null;
+		}
+		int length = buffer.getInt(pool + offset);
+		if (length < 0 || offset + Integer.BYTES + length > poolSize) {
+			throw new IllegalStateException("Corrupted node arena string pool");
+		}
+		byte[] bytes = new byte[length];
+		buffer.get(pool + offset + Integer.BYTES, bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static final class ArenaNode implements Node {
+
+		private final NodeArena arena;
+		private final Function<String, Author> authors;
+		private final int index;
+
+		private ArenaNode(NodeArena arena, Function<String, Author> authors, int index) {
+			this.arena = arena;
+			this.authors = authors;
+			this.index = index;
+		}
+
+		@Override
+		public Node parent() {
+			int parent = arena.column(PARENT, index);
+			return parent < 0 ? RootNode.getInstance() : new ArenaNode(arena, authors, parent);
+		}
+
+		/* A leaf reports the RootNode sentinel, like DocumentNode */
+		@Override
+		public Collection<Node> children() {
+			return arena.column(CHILD_COUNT, index) == 0 ? LEAF : new Children(arena, authors, index);
+		}
+
+		@Override
+		public Content<?> content() {
+			return new ArenaContent(arena, authors, index);
+		}
+
+		@Override
+		public void addChild(Node newChild) {
+			throw new UnsupportedOperationException("Node arena is read-only");
+		}
+
+		@Override
+		public byte[] merkleHash() {
+			byte[] hash = new byte[MerkleHash.LENGTH];
+			arena.buffer.get(arena.hashes + index * MerkleHash.LENGTH, hash);
+			return hash;
+		}
+
+		@Override
+		public <T> T accept(NodeVisitor<T> visitor) {
+			return visitor.visitDocumentNode(DocumentNode.detached(content(), parent(), children()));
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof ArenaNode && ((ArenaNode) o).arena == arena && ((ArenaNode) o).index == index;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(arena) * 31 + index;
+		}
+	}
+
+	private static final class Children extends AbstractCollection<Node> {
+
+		private final NodeArena arena;
+		private final Function<String, Author> authors;
+		private final int parent;
+
+		private Children(NodeArena arena, Function<String, Author> authors, int parent) {
+			this.arena = arena;
+			this.authors = authors;
+			this.parent = parent;
+		}
+
+		@Override
+		public Iterator<Node> iterator() {
+			return new Iterator<>() {
+				private int next = arena.column(FIRST_CHILD, parent);
+
+				@Override
+				public boolean hasNext() {
+					return next >= 0;
+				}
+
+				@Override
+				public Node next() {
+					if (next < 0) {
+						throw new NoSuchElementException();
+					}
+					Node node = new ArenaNode(arena, authors, next);
+					next = arena.column(NEXT_SIBLING, next);
+					return node;
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return arena.column(CHILD_COUNT, parent);
+		}
+	}
+
+	private static final class ArenaContent extends Content<Object> {
+
+		private final NodeArena arena;
+		private final Function<String, Author> authors;
+		private final int index;
+
+		private ArenaContent(NodeArena arena, Function<String, Author> authors, int index) {
+			this.arena = arena;
+			this.authors = authors;
+			this.index = index;
+		}
+
+		@Override
+		public Object show() {
+			int value = arena.column(VALUE, index);
+			if ((arena.column(FLAGS, index) & FLAG_INTEGER) != 0) {
+				return Integer.valueOf(value);
+			}
+			String text = arena.string(value);
+			return text != null ? text : "null";
+		}
+
+		@Override
+		public String typeName() {
+			return arena.string(arena.column(TYPE, index));
+		}
+
+		@Override
+		public Author author() {
+			return authors.apply(arena.string(arena.column(AUTHOR, index)));
+		}
+
+		@Override
+		public Version version() {
+			Version version = Version.getNewVersion(this);
+			return (arena.column(FLAGS, index) & FLAG_VERSIONED) != 0 ? version.getChildVersion() : version;
+		}
+
+		/* Children's links first, then the link to the parent: the order NodeTreeDeserializer adds them */
+		@Override
+		public Collection<Link<?, ?>> links() {
+			List<Link<?, ?>> links = new ArrayList<>();
+			for (int child = arena.column(FIRST_CHILD, index); child >= 0; child = arena.column(NEXT_SIBLING, child)) {
+				if ((arena.column(FLAGS, child) & FLAG_LINKED) != 0) {
+					links.add(Link.getNewLink(new ArenaContent(arena, authors, child), this));
+				}
+			}
+			if ((arena.column(FLAGS, index) & FLAG_LINKED) != 0) {
+				links.add(Link.getNewLink(this, new ArenaContent(arena, authors, arena.column(PARENT, index))));
+			}
+			return links;
+		}
+
+		@Override
+		public <R> void link(Content<R> c) {
+			throw new UnsupportedOperationException("Node arena is read-only");
+		}
+
+		/* Dispatched on the stored value and type, as XanaduService.restoreContent does */
+		@Override
+		public <W> W accept(ContentVisitor<W> visitor) {
+			if (show() instanceof Integer) {
+				return visitor.visitIntegerContent(IntegerContent.builder.get().buildFrom(as()));
+			}
+			if ("ImageContent".equals(typeName())) {
+				return visitor.visitImageContent(ImageContent.builder.get().buildFrom(as()));
+			}
+			return visitor.visitStringContent(StringContent.builder.get().buildFrom(as()));
+		}
+
+		/* show() already returns the type the caller asks for: Integer or String */
+		@SuppressWarnings("unchecked")
+		private <V> Content<V> as() {
+			return (Content<V>) (Content<?>) this;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof ArenaContent && ((ArenaContent) o).arena == arena && ((ArenaContent) o).index == index;
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(arena) * 31 + index;
+		}
+	}
+
+	/*
+	 * Nodes are added in pre-order, each with the index of its parent (-1 for
+	 * the root, which must come first). Subtree hashes are computed in build().
+	 */
+	public static final class Builder {
+
+		private int[] columns = new int[COLUMNS * 64];
+		private int[] lastChild = new int[64];
+		private byte[][] leaves = new byte[64][];
+		private int size;
+		private final Map<String, Integer> strings = new HashMap<>();
+		private final ByteArrayOutputStream pool = new ByteArrayOutputStream(1024);
+
+		private Builder() {
+		}
+
+		/* value is a String, an Integer or null; returns the index of the new node */
+		public int add(int parent, String type, Object value, String authorName, boolean versioned, boolean linked) {
+			if (size == 0 ? parent != -1 : parent < 0 || parent >= size) {
+				throw new IllegalArgumentException("Invalid parent " + parent + " for node " + size);
+			}
+			if (size == lastChild.length) {
+				columns = Arrays.copyOf(columns, columns.length << 1);
+				lastChild = Arrays.copyOf(lastChild, lastChild.length << 1);
+				leaves = Arrays.copyOf(leaves, leaves.length << 1);
+			}
+
+			int index = size++;
+			int base = index * COLUMNS;
+			columns[base + PARENT] = parent;
+			columns[base + FIRST_CHILD] = -1;
+			columns[base + NEXT_SIBLING] = -1;
+			columns[base + TYPE] = intern(type);
+			columns[base + VALUE] = value instanceof Integer ? (Integer) value : intern((String) value);
+			columns[base + AUTHOR] = intern(authorName);
+			columns[base + FLAGS] = (value instanceof Integer ? FLAG_INTEGER : 0)
+					| (versioned ? FLAG_VERSIONED : 0)
+					| (linked && parent >= 0 ? FLAG_LINKED : 0);
+			lastChild[index] = -1;
+			leaves[index] = MerkleHash.leafHash(type, value, authorName, versioned, linked && parent >= 0);
+
+			if (parent >= 0) {
+				int previous = lastChild[parent];
+				if (previous < 0) {
+					columns[parent * COLUMNS + FIRST_CHILD] = index;
+				} else {
+					columns[previous * COLUMNS + NEXT_SIBLING] = index;
+				}
+				lastChild[parent] = index;
+				columns[parent * COLUMNS + CHILD_COUNT]++;
+			}
+			return index;
+		}
+
+		public NodeArena build() {
+			if (size == 0) {
+				throw new IllegalStateException("Node arena without nodes");
+			}
+
+			/* Children have higher indices than their parent: one backward pass hashes bottom-up */
+			byte[][] hashes = new byte[size][];
+			for (int i = size - 1; i >= 0; i--) {
+				MerkleHash.Builder node = MerkleHash.node(leaves[i]);
+				for (int c = columns[i * COLUMNS + FIRST_CHILD]; c >= 0; c = columns[c * COLUMNS + NEXT_SIBLING]) {
+					node.child(hashes[c]);
+				}
+				hashes[i] = node.build();
+			}
+
+			ByteBuffer buffer = ByteBuffer.allocateDirect(HEADER + size * NODE_BYTES + pool.size());
+			buffer.putInt(MAGIC).putInt(size).putInt(pool.size());
+			for (int column = 0; column < COLUMNS; column++) {
+				for (int i = 0; i < size; i++) {
+					buffer.putInt(columns[i * COLUMNS + column]);
+				}
+			}
+			for (byte[] hash : hashes) {
+				buffer.put(hash);
+			}
+			buffer.put(pool.toByteArray());
+			buffer.flip();
+			return wrap(buffer);
+		}
+
+		private int intern(String s) {
+			if (s == null) {
+				return -1;
+			}
+			Integer offset = strings.get(s);
+			if (offset != null) {
+				return offset;
+			}
+			offset = pool.size();
+			byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+			pool.write(bytes.length >>> 24);
+			pool.write(bytes.length >>> 16);
+			pool.write(bytes.length >>> 8);
+			pool.write(bytes.length);
+			pool.writeBytes(bytes);
+			strings.put(s, offset);
+			return offset;
+		}
+	}
+}
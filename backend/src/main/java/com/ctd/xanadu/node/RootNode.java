@@ -1,8 +1,6 @@
 package com.ctd.xanadu.node;
 
 import java.util.Optional;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 import java.util.Collection;
 import java.util.List;
 
@@ -13,10 +11,11 @@ import com.ctd.xanadu.node.visitor.NodeVisitor;
 public class RootNode implements Node {
 
 	private static Optional<RootNode> instance = Optional.empty();
-	private Collection<Node> children;
+	private final ChildVector children = new ChildVector();
+	private final Collection<Node> leaf;
 
 	private RootNode() {
-		this.children = List.of(this);
+		this.leaf = List.of(this);
 	}
 
 	@Override
@@ -25,8 +24,8 @@ public class RootNode implements Node {
 	}
 
 	@Override
-	public Collection<Node> children() {
-		return this.children;
+	public synchronized Collection<Node> children() {
+		return children.isEmpty() ? leaf : children.snapshot();
 	}
 
 	@Override
@@ -34,12 +33,17 @@ public class RootNode implements Node {
 		return EmptyContent.getInstance();
 	}
 
+	/* Every top-level node of every request lands here, hence the lock */
 	@Override
-	public void addChild(Node newChild) {
-		this.children = Stream.concat(children.stream(), Stream.of(newChild))
-				.distinct()
-				.filter(i -> !i.equals(RootNode.getInstance()))
-				.collect(Collectors.toList());
+	public synchronized void addChild(Node newChild) {
+		if (newChild != this) {
+			children.add(newChild);
+		}
+	}
+
+	@Override
+	public byte[] merkleHash() {
+		return MerkleHash.empty();
 	}
 
 	@Override
@@ -0,0 +1,3 @@
+-- I link sono derivati dalla struttura: le nuove righe salvano il content senza link
+-- e solo il flag "collegato al parent"; NULL per le righe scritte prima, con i link nel content
+ALTER TABLE content_nodes ADD COLUMN linked BOOLEAN;
@@ -0,0 +1,6 @@
+-- Notarizzazione a batch: root del Merkle tree ancorata e inclusion proof
+ALTER TABLE document_versions ADD COLUMN notary_root VARCHAR(64);
+ALTER TABLE document_versions ADD COLUMN notary_proof TEXT;
+
+ALTER TABLE transclusions ADD COLUMN notary_root VARCHAR(64);
+ALTER TABLE transclusions ADD COLUMN notary_proof TEXT;
@@ -0,0 +1,19 @@
+-- Stato di notarizzazione: le scritture committano PENDING, il worker completa
+ALTER TABLE document_versions ADD COLUMN notarization_status VARCHAR(20) NOT NULL DEFAULT 'NOTARIZED';
+ALTER TABLE transclusions ADD COLUMN notarization_status VARCHAR(20) NOT NULL DEFAULT 'NOTARIZED';
+
+-- Outbox transazionale per la notarizzazione asincrona
+CREATE TABLE notarization_outbox (
+    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+    target_type VARCHAR(20) NOT NULL,
+    target_id UUID NOT NULL,
+    content_hash VARCHAR(64) NOT NULL,
+    metadata TEXT,
+    status VARCHAR(20) NOT NULL,
+    attempts INT NOT NULL DEFAULT 0,
+    next_attempt_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    last_error TEXT,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_outbox_due ON notarization_outbox(status, next_attempt_at);
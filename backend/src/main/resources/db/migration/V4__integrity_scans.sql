@@ -0,0 +1,26 @@
+-- Scansioni di integrita': content_json ri-hashato contro content_hash
+CREATE TABLE integrity_scans (
+    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+    status VARCHAR(20) NOT NULL,
+    cursor_id UUID,                      -- ultima versione elaborata (keyset su id)
+    rows_scanned BIGINT NOT NULL DEFAULT 0,
+    bytes_scanned BIGINT NOT NULL DEFAULT 0,
+    mismatches BIGINT NOT NULL DEFAULT 0,
+    started_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    finished_at TIMESTAMP
+);
+
+CREATE INDEX idx_integrity_scans_started ON integrity_scans(started_at DESC);
+
+CREATE TABLE integrity_mismatches (
+    id UUID PRIMARY KEY DEFAULT uuid_generate_v4(),
+    scan_id UUID NOT NULL REFERENCES integrity_scans(id) ON DELETE CASCADE,
+    version_id UUID NOT NULL,
+    stored_hash VARCHAR(64) NOT NULL,
+    computed_hash VARCHAR(64),
+    error TEXT,
+    detected_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_integrity_mismatches_scan ON integrity_mismatches(scan_id);
@@ -0,0 +1,2 @@
+-- Paginazione keyset dell'elenco documenti: ORDER BY created_at DESC, id DESC
+CREATE INDEX idx_documents_created_at_id ON documents(created_at DESC, id DESC);
@@ -0,0 +1,7 @@
+-- Indici coprenti per le lineage WITH RECURSIVE: ogni passo e' un index-only scan
+-- Risalita (figlio -> parent): lookup per id, serve parent_version_id
+CREATE INDEX idx_docversions_id_parent ON document_versions(id) INCLUDE (parent_version_id);
+
+-- Discesa (parent -> figli): lookup per parent_version_id, serve id
+DROP INDEX IF EXISTS idx_docversions_parent;
+CREATE INDEX idx_docversions_parent ON document_versions(parent_version_id) INCLUDE (id);
@@ -0,0 +1,13 @@
+-- Storage content-addressed dei Node tree: un nodo per hash Merkle, condiviso tra versioni
+CREATE TABLE content_nodes (
+    hash VARCHAR(64) PRIMARY KEY,
+    content TEXT NOT NULL,
+    children TEXT NOT NULL DEFAULT '',
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+-- Le nuove versioni puntano alla radice; content_json resta solo per le versioni esistenti
+ALTER TABLE document_versions ADD COLUMN root_node_hash VARCHAR(64) REFERENCES content_nodes(hash);
+ALTER TABLE document_versions ALTER COLUMN content_json DROP NOT NULL;
+ALTER TABLE document_versions ADD CONSTRAINT chk_docversions_content
+    CHECK (content_json IS NOT NULL OR root_node_hash IS NOT NULL);
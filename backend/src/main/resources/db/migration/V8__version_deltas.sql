@@ -0,0 +1,10 @@
+-- Versioni salvate come JSON Patch rispetto al parent, con snapshot completo ogni K versioni
+-- TEXT e non JSONB: la patch deve restare byte per byte (JSONB riordina le chiavi dei valori)
+ALTER TABLE document_versions ADD COLUMN content_delta TEXT;
+-- Delta da rigiocare a partire dall'ultimo snapshot (0 = versione completa)
+ALTER TABLE document_versions ADD COLUMN delta_depth INT NOT NULL DEFAULT 0;
+
+ALTER TABLE document_versions DROP CONSTRAINT chk_docversions_content;
+ALTER TABLE document_versions ADD CONSTRAINT chk_docversions_content
+    CHECK (content_json IS NOT NULL OR root_node_hash IS NOT NULL
+           OR (content_delta IS NOT NULL AND parent_version_id IS NOT NULL));
@@ -0,0 +1,11 @@
+-- Schema dell'hash in content_hash: MERKLE (root di MerkleHash) o NULL per le versioni
+-- scritte prima del marcatore, che possono avere ancora lo SHA-256 dell'intero documento
+ALTER TABLE document_versions ADD COLUMN hash_scheme VARCHAR(20);
+
+-- content_nodes e delta sono successivi alla Merkle root: queste righe sono sicuramente MERKLE
+UPDATE document_versions SET hash_scheme = 'MERKLE'
+WHERE root_node_hash IS NOT NULL OR content_delta IS NOT NULL;
+
+-- Esito per riga della scansione: MISMATCH o LEGACY (hash pre-Merkle non riproducibile)
+ALTER TABLE integrity_mismatches ADD COLUMN outcome VARCHAR(20) NOT NULL DEFAULT 'MISMATCH';
+ALTER TABLE integrity_scans ADD COLUMN legacy_rows BIGINT NOT NULL DEFAULT 0;
@@ -0,0 +1,80 @@
+package com.ctd.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CanonicalJsonTest {
+
+    /* RFC 8785, Appendix B: bit pattern IEEE 754 -> forma canonica */
+    @ParameterizedTest
+    @CsvSource({
+            "0000000000000000, 0",
+            "8000000000000000, 0",
+            "0000000000000001, 5e-324",
+            "8000000000000001, -5e-324",
+            "7fefffffffffffff, 1.7976931348623157e+308",
+            "ffefffffffffffff, -1.7976931348623157e+308",
+            "4340000000000000, 9007199254740992",
+            "c340000000000000, -9007199254740992",
+            "4430000000000000, 295147905179352830000",
+            "44b52d02c7e14af5, 9.999999999999997e+22",
+            "44b52d02c7e14af6, 1e+23",
+            "44b52d02c7e14af7, 1.0000000000000001e+23",
+            "444b1ae4d6e2ef4e, 999999999999999700000",
+            "444b1ae4d6e2ef4f, 999999999999999900000",
+            "444b1ae4d6e2ef50, 1e+21",
+            "3eb0c6f7a0b5ed8c, 9.999999999999997e-7",
+            "3eb0c6f7a0b5ed8d, 0.000001",
+            "41b3de4355555553, 333333333.3333332",
+            "41b3de4355555554, 333333333.33333325",
+            "41b3de4355555555, 333333333.3333333",
+            "41b3de4355555556, 333333333.3333334",
+            "41b3de4355555557, 333333333.33333343",
+            "becbf647612f3696, -0.0000033333333333333333",
+            "43143ff3c1cb0959, 1424953923781206.2"
+    })
+    void numbersFollowAppendixB(String bits, String expected) throws IOException {
+        double d = Double.longBitsToDouble(Long.parseUnsignedLong(bits, 16));
+        assertEquals(expected, canonical(d));
+    }
+
+    @Test
+    void integerValuedDoublesAboveTwoToThe53ArePadded() throws IOException {
+        assertEquals("12345678901234567000", canonical(1.2345678901234567e19));
+    }
+
+    @Test
+    void nonFiniteNumbersAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> canonical(Double.NaN));
+        assertThrows(IllegalArgumentException.class, () -> canonical(Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    void safeIntegersAreWrittenExactly() throws IOException {
+        assertEquals("9007199254740991", canonical(9007199254740991L));
+        assertEquals("-9007199254740991", canonical(BigInteger.valueOf(-9007199254740991L)));
+        assertEquals("42", canonical(42));
+    }
+
+    @Test
+    void integersBeyondTwoToThe53AreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> canonical(9007199254740992L));
+        assertThrows(IllegalArgumentException.class, () -> canonical(Long.MIN_VALUE));
+        assertThrows(IllegalArgumentException.class, () -> canonical(BigInteger.TEN.pow(20)));
+    }
+
+    private static String canonical(Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CanonicalJson.write(value, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,100 @@
+package com.ctd.service;
+
+import com.ctd.xanadu.content.Author;
+import com.ctd.xanadu.node.Node;
+import com.ctd.xanadu.node.RootNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class NodeTreeDeserializerTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final XanaduService xanaduService = new XanaduService(objectMapper);
+    private final NodeTreeDeserializer deserializer = new NodeTreeDeserializer(objectMapper, xanaduService);
+    private final Author defaultAuthor = xanaduService.createAuthor("default");
+
+    NodeTreeDeserializerTest() {
+        deserializer.init();
+    }
+
+    /* Lo stack dei nodi e' esplicito: una catena di 100k nodi non esaurisce lo stack ne' il limite di nesting */
+    @Test
+    void deserializesDeepChain() {
+        int depth = 100_000;
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            json.append("{\"content\":{\"type\":\"IntegerContent\",\"value\":").append(i).append("},\"children\":[");
+        }
+        for (int i = 0; i < depth; i++) {
+            json.append("]}");
+        }
+
+        Node node = deserializer.deserialize(json.toString(), defaultAuthor);
+
+        assertSame(RootNode.getInstance(), node.parent());
+        for (int i = 0; i < depth - 1; i++) {
+            assertEquals(i, node.content().show());
+            assertEquals(1, node.children().size());
+            Node child = node.children().iterator().next();
+            assertSame(node, child.parent());
+            node = child;
+        }
+        assertEquals(depth - 1, node.content().show());
+        assertEquals(List.of(RootNode.getInstance()), List.copyOf(node.children()));
+    }
+
+    /*
+     * JSONB restituisce le chiavi ordinate per lunghezza e poi per byte:
+     * "content" prima di "children", e dentro content "links" prima di "value".
+     * Lo stesso tree, con le chiavi nell'ordine del serializer, in quello di
+     * JSONB o con chiavi sconosciute in mezzo, si legge allo stesso modo.
+     */
+    @Test
+    void readsKeysInAnyOrderWithinContent() {
+        String serializerOrder = "{\"content\":{\"type\":\"StringContent\",\"value\":\"root\",\"authorName\":\"alice\",\"links\":[]},"
+            + "\"children\":[{\"content\":{\"type\":\"StringContent\",\"value\":\"child\",\"authorName\":\"bob\",\"links\":[]},"
+            + "\"children\":[],\"childrenCount\":0}],\"childrenCount\":1}";
+        String jsonbOrder = "{\"content\":{\"type\":\"StringContent\",\"links\":[],\"value\":\"root\",\"authorName\":\"alice\"},"
+            + "\"children\":[{\"content\":{\"type\":\"StringContent\",\"links\":[],\"value\":\"child\",\"authorName\":\"bob\"},"
+            + "\"children\":[],\"childrenCount\":0}],\"childrenCount\":1}";
+        String shuffled = "{\"childrenCount\":1,\"extra\":{\"children\":[1]},"
+            + "\"content\":{\"authorName\":\"alice\",\"value\":\"root\",\"links\":[{\"x\":1}],\"type\":\"StringContent\"},"
+            + "\"children\":[{\"content\":{\"value\":\"child\",\"authorName\":\"bob\",\"type\":\"StringContent\"},\"childrenCount\":0}]}";
+
+        List<String> expected = describe(deserializer.deserialize(serializerOrder, defaultAuthor));
+        assertEquals(List.of("0 StringContent root alice", "1 StringContent child bob"), expected);
+        assertEquals(expected, describe(deserializer.deserialize(jsonbOrder, defaultAuthor)));
+        assertEquals(expected, describe(deserializer.deserialize(shuffled, defaultAuthor)));
+    }
+
+    /* Un nodo si aggancia al padre quando ne legge il content: i children non possono precederlo */
+    @Test
+    void rejectsChildrenBeforeContent() {
+        String json = "{\"children\":[],\"content\":{\"type\":\"StringContent\",\"value\":\"root\"}}";
+
+        assertThrows(IllegalArgumentException.class, () -> deserializer.deserialize(json, defaultAuthor));
+    }
+
+    private static List<String> describe(Node root) {
+        List<String> nodes = new ArrayList<>();
+        describe(root, 0, nodes);
+        return nodes;
+    }
+
+    private static void describe(Node node, int depth, List<String> nodes) {
+        nodes.add(depth + " " + node.content().typeName() + " " + node.content().show()
+            + " " + node.content().author().getName());
+        for (Node child : node.children()) {
+            if (!(child instanceof RootNode)) {
+                describe(child, depth + 1, nodes);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.ctd.service;
+
+import com.ctd.service.VersionDiffService.Alignment;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class VersionDiffAlignmentTest {
+
+    /* Inserimento in mezzo e ultimo figlio cambiato: B resta fermo, C si confronta con C' */
+    @Test
+    void keepsUnchangedChildrenAroundAnInsert() {
+        Alignment alignment = new Alignment(List.of("A", "B", "C"), List.of("A", "X", "B", "C'"));
+
+        assertEquals(List.of("2-3"), pairs(alignment));
+        assertEquals(List.of(), alignment.removed);
+        assertEquals(List.of(1), alignment.inserted);
+    }
+
+    @Test
+    void removalInTheMiddleDoesNotShiftPairs() {
+        Alignment alignment = new Alignment(List.of("A", "B", "C", "D'"), List.of("A", "C", "D"));
+
+        assertEquals(List.of("3-2"), pairs(alignment));
+        assertEquals(List.of(1), alignment.removed);
+        assertEquals(List.of(), alignment.inserted);
+    }
+
+    /* Senza figli in comune nella parte centrale si appaia per posizione, come prima */
+    @Test
+    void pairsByPositionWithoutCommonChildren() {
+        Alignment alignment = new Alignment(List.of("A", "B", "C", "Z"), List.of("A", "X", "Y", "W", "Z"));
+
+        assertEquals(List.of("1-1", "2-2"), pairs(alignment));
+        assertEquals(List.of(), alignment.removed);
+        assertEquals(List.of(3), alignment.inserted);
+    }
+
+    /* Un figlio spostato non e' un abbinamento fermo: lo script non ha spostamenti */
+    @Test
+    void movedChildIsNotKept() {
+        Alignment alignment = new Alignment(List.of("B", "C", "D"), List.of("D", "B", "C"));
+
+        assertEquals(List.of(), pairs(alignment));
+        assertEquals(List.of(2), alignment.removed);
+        assertEquals(List.of(0), alignment.inserted);
+    }
+
+    @Test
+    void duplicatesAreMatchedInOrder() {
+        Alignment alignment = new Alignment(List.of("S", "T", "S", "U"), List.of("S'", "S", "T", "S", "U'"));
+
+        assertEquals(List.of("3-4"), pairs(alignment));
+        assertEquals(List.of(), alignment.removed);
+        assertEquals(List.of(0), alignment.inserted);
+    }
+
+    @Test
+    void identicalChildrenNeedNothing() {
+        Alignment alignment = new Alignment(List.of("A", "B"), List.of("A", "B"));
+
+        assertEquals(List.of(), pairs(alignment));
+        assertEquals(List.of(), alignment.removed);
+        assertEquals(List.of(), alignment.inserted);
+    }
+
+    private static List<String> pairs(Alignment alignment) {
+        List<String> pairs = new ArrayList<>();
+        for (int[] pair : alignment.paired) {
+            pairs.add(pair[0] + "-" + pair[1]);
+        }
+        return pairs;
+    }
+}
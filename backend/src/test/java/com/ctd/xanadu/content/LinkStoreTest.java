@@ -0,0 +1,108 @@
+package com.ctd.xanadu.content;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class LinkStoreTest {
+
+	private final Author author = Author.getNewAuthor("test");
+
+	/* A hub linked from many contents, each link added twice from both ends */
+	@Test
+	void deduplicatesAndKeepsInsertionOrder() {
+		StringContent hub = content("hub");
+		List<StringContent> spokes = spokes(10_000);
+		for (StringContent spoke : spokes) {
+			hub.link(spoke);
+		}
+		for (StringContent spoke : spokes) {
+			hub.link(spoke);
+			hub.addLink(Link.getNewLink(hub, spoke));
+		}
+
+		Collection<Link<?, ?>> links = hub.links();
+		assertEquals(spokes.size(), links.size());
+		int i = 0;
+		for (Link<?, ?> link : links) {
+			assertSame(hub, link.first());
+			assertSame(spokes.get(i++), link.second());
+		}
+		for (StringContent spoke : spokes) {
+			assertEquals(1, spoke.links().size());
+		}
+	}
+
+	/* The reverse link joins another pair, so it is a distinct link */
+	@Test
+	void directionMatters() {
+		StringContent a = content("a");
+		StringContent b = content("b");
+		a.link(b);
+		b.link(a);
+
+		assertEquals(2, a.links().size());
+		assertEquals(2, b.links().size());
+	}
+
+	@Test
+	void snapshotIsStableWhileLinksGrow() {
+		StringContent hub = content("hub");
+		List<StringContent> spokes = spokes(100);
+		for (StringContent spoke : spokes.subList(0, 50)) {
+			hub.link(spoke);
+		}
+		Collection<Link<?, ?>> before = hub.links();
+		assertSame(before, hub.links());
+
+		for (StringContent spoke : spokes.subList(50, 100)) {
+			hub.link(spoke);
+		}
+		assertEquals(50, before.size());
+		assertEquals(100, hub.links().size());
+	}
+
+	/* Neither taking the view nor walking it with forEach allocates, whatever the link count */
+	@Test
+	void iterationDoesNotAllocate() {
+		StringContent hub = content("hub");
+		for (StringContent spoke : spokes(10_000)) {
+			hub.link(spoke);
+		}
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		int[] visited = new int[1];
+		for (int i = 0; i < 100; i++) {
+			hub.links().forEach(link -> visited[0]++);
+		}
+
+		visited[0] = 0;
+		long before = threads.getCurrentThreadAllocatedBytes();
+		for (int i = 0; i < 100; i++) {
+			hub.links().forEach(link -> visited[0]++);
+		}
+		long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+		assertEquals(100 * 10_000, visited[0]);
+		// Margin for the lambdas and the measurement: one object per element would be megabytes
+		assertTrue(allocated < 16 * 1024, "allocated " + allocated + " bytes");
+	}
+
+	private List<StringContent> spokes(int count) {
+		List<StringContent> spokes = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			spokes.add(content("spoke " + i));
+		}
+		return spokes;
+	}
+
+	private StringContent content(String text) {
+		return StringContent.builder.get().withContent(text).withAuthor(author).build();
+	}
+}
@@ -0,0 +1,89 @@
+package com.ctd.xanadu.node;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.ctd.xanadu.content.Author;
+import com.ctd.xanadu.content.StringContent;
+
+class ChildVectorTest {
+
+	private final StringContent content = StringContent.builder.get()
+			.withContent("section").withAuthor(Author.getNewAuthor("test")).build();
+
+	@Test
+	void leafReportsRootNodeSentinel() {
+		DocumentNode leaf = node(null);
+		assertEquals(List.of(RootNode.getInstance()), List.copyOf(leaf.children()));
+
+		leaf.addChild(RootNode.getInstance());
+		assertEquals(List.of(RootNode.getInstance()), List.copyOf(leaf.children()));
+	}
+
+	/* Crosses the scan limit and several chunks: order is kept and duplicates are dropped */
+	@Test
+	void keepsInsertionOrderAndDropsDuplicates() {
+		DocumentNode parent = node(null);
+		List<Node> expected = new ArrayList<>();
+		for (int i = 0; i < 100; i++) {
+			expected.add(node(parent));
+			for (Node child : expected) {
+				parent.addChild(child);
+			}
+			assertEquals(expected, List.copyOf(parent.children()));
+		}
+	}
+
+	@Test
+	void snapshotStaysValidWhileGrowing() {
+		DocumentNode parent = node(null);
+		for (int i = 0; i < 40; i++) {
+			node(parent);
+		}
+		Collection<Node> snapshot = parent.children();
+		List<Node> before = List.copyOf(snapshot);
+		for (int i = 0; i < 40; i++) {
+			node(parent);
+		}
+
+		assertEquals(before, List.copyOf(snapshot));
+		assertEquals(80, parent.children().size());
+	}
+
+	/* 10k-100k children under one parent: identity de-duplication and order at scale */
+	@Test
+	void scalesToWideNodes() {
+		for (int count : new int[] { 10_000, 100_000 }) {
+			DocumentNode parent = node(null);
+			List<Node> children = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				children.add(node(parent));
+			}
+			for (int i = 0; i < count; i += 7) {
+				parent.addChild(children.get(i));
+			}
+
+			Collection<Node> snapshot = parent.children();
+			assertEquals(count, snapshot.size());
+			int i = 0;
+			for (Node child : snapshot) {
+				assertSame(children.get(i++), child);
+				assertFalse(child.children().isEmpty());
+				assertTrue(child.children().contains(RootNode.getInstance()));
+			}
+		}
+	}
+
+	private DocumentNode node(DocumentNode parent) {
+		DocumentNode.builder builder = DocumentNode.builder.get().withContent(content);
+		return parent != null ? builder.withParent(parent).build() : builder.detached().build();
+	}
+}
@@ -11,6 +11,7 @@ import type {
   UpdateDocumentRequest,
   TranscludeRequest,
   Transclusion,
+  VersionDiff,
 } from '../types';
 
 const api = axios.create({
@@ -58,14 +59,29 @@ export const documentApi = {
   create: (data: CreateDocumentRequest) =>
     api.post<Document>('/documents', data),
 
-  getAll: () =>
-    api.get<Document[]>('/documents'),
+  // The listing is paginated: follow X-Next-Cursor until the last page
+  getAll: async () => {
+    const documents: Document[] = [];
+    let cursor: string | undefined;
+    do {
+      const response = await api.get<Document[]>('/documents', { params: cursor ? { cursor } : undefined });
+      documents.push(...response.data);
+      cursor = response.headers['x-next-cursor'] || undefined;
+    } while (cursor);
+    return documents;
+  },
 
   getById: (id: string) =>
-    api.get<Document>(`/documents/${id}`),
-
-  getVersions: (id: string) =>
-    api.get<DocumentVersion[]>(`/documents/${id}/versions`),
+    api.get<Document>(`/documents/${id}?include=content`),
+
+  // One page of history, newest first; nextCursor is the X-Next-Cursor header (absent on the last page)
+  getVersions: async (id: string, cursor?: number) => {
+    const response = await api.get<DocumentVersion[]>(`/documents/${id}/versions`, {
+      params: cursor !== undefined ? { cursor } : undefined,
+    });
+    const next = response.headers['x-next-cursor'];
+    return { versions: response.data, nextCursor: next ? Number(next) : undefined };
+  },
 
   delete: (id: string) =>
     api.delete(`/documents/${id}`),
@@ -97,6 +113,9 @@ export const documentApi = {
   // Feature 3: Version Tree
   getVersionTree: (documentId: string) =>
     api.get(`/documents/${documentId}/version-tree`),
+
+  getVersionDiff: (documentId: string, fromVersionId: string, toVersionId: string) =>
+    api.get<VersionDiff>(`/documents/${documentId}/diff`, { params: { from: fromVersionId, to: toVersionId } }),
 };
 
 // Verification endpoints
@@ -18,10 +18,7 @@ export default function Dashboard() {
 
   const { data: documents, isLoading } = useQuery({
     queryKey: ['documents'],
-    queryFn: async () => {
-      const response = await documentApi.getAll();
-      return response.data;
-    },
+    queryFn: () => documentApi.getAll(),
   });
 
   const createMutation = useMutation({
@@ -1,10 +1,9 @@
 import { useState } from 'react';
 import { useParams, useNavigate } from 'react-router-dom';
-import { useQuery, useMutation, useQueryClient } from '@tanstack/react-query';
-import ReactDiffViewer from 'react-diff-viewer-continued';
+import { useQuery, useInfiniteQuery, useMutation, useQueryClient } from '@tanstack/react-query';
 import { documentApi, verificationApi } from '../lib/api';
 import { useAuthStore } from '../store/authStore';
-import type { UpdateDocumentRequest, TranscludeRequest } from '../types';
+import type { UpdateDocumentRequest, TranscludeRequest, DocumentVersion, VersionDiff } from '../types';
 import NodeTreeViewer from '../components/NodeTreeViewer';
 import VersionTreeGraph from '../components/VersionTreeGraph';
 
@@ -30,8 +29,9 @@ export default function DocumentDetail() {
   const [activeTab, setActiveTab] = useState<'incoming' | 'outgoing'>('incoming');
 
   const [comparisonData, setComparisonData] = useState<{
-    oldVersion: any;
-    newVersion: any;
+    oldVersion: DocumentVersion;
+    newVersion: DocumentVersion;
+    diff: VersionDiff;
   } | null>(null);
 
   const [showNodeStructure, setShowNodeStructure] = useState(false);
@@ -47,13 +47,14 @@ export default function DocumentDetail() {
 
   const [showVersionTreeModal, setShowVersionTreeModal] = useState(false);
 
-  const extractContent = (contentJson: Record<string, any>): string => {
-    if (contentJson?.content?.value) {
-      return contentJson.content.value;
-    }
-    return JSON.stringify(contentJson, null, 2);
+  // Only the edit script travels: unchanged subtrees are skipped server-side by Merkle hash
+  const compareVersions = async (oldVersion: DocumentVersion, newVersion: DocumentVersion) => {
+    const diff = await documentApi.getVersionDiff(id!, oldVersion.id, newVersion.id);
+    setComparisonData({ oldVersion, newVersion, diff: diff.data });
   };
 
+  const nodePath = (path?: string) => (path ? `root${path.replace(/\//g, ' › ')}` : 'root');
+
   const renderContentTypeAware = (contentJson: Record<string, any>) => {
     if (!contentJson?.content) {
       return <pre className="whitespace-pre-wrap text-gray-700">{JSON.stringify(contentJson, null, 2)}</pre>;
@@ -148,14 +149,19 @@ export default function DocumentDetail() {
     enabled: !!id,
   });
 
-  const { data: versions } = useQuery({
+  const {
+    data: versionPages,
+    fetchNextPage: fetchMoreVersions,
+    hasNextPage: hasMoreVersions,
+    isFetchingNextPage: isFetchingMoreVersions,
+  } = useInfiniteQuery({
     queryKey: ['document-versions', id],
-    queryFn: async () => {
-      const response = await documentApi.getVersions(id!);
-      return response.data;
-    },
+    queryFn: ({ pageParam }) => documentApi.getVersions(id!, pageParam),
+    initialPageParam: undefined as number | undefined,
+    getNextPageParam: (lastPage) => lastPage.nextCursor,
     enabled: !!id,
   });
+  const versions = versionPages?.pages.flatMap((page) => page.versions);
 
   const { data: incomingTransclusions } = useQuery({
     queryKey: ['transclusions-incoming', id],
@@ -177,10 +183,7 @@ export default function DocumentDetail() {
 
   const { data: allDocuments } = useQuery({
     queryKey: ['all-documents'],
-    queryFn: async () => {
-      const response = await documentApi.getAll();
-      return response.data;
-    },
+    queryFn: () => documentApi.getAll(),
     enabled: showTranscludeModal,
   });
 
@@ -545,7 +548,7 @@ export default function DocumentDetail() {
                           Version {version.versionNumber}
                         </p>
                         <p className="text-sm text-gray-500 mt-1">
-                          By {version.author?.name ?? 'Unknown'} on{' '}
+                          By {version.authorName ?? 'Unknown'} on{' '}
                           {new Date(version.createdAt * 1000).toLocaleString()}
                         </p>
                         {version.iotaTxId && (
@@ -555,10 +558,7 @@ export default function DocumentDetail() {
                         )}
                         {index < versions.length - 1 && (
                           <button
-                            onClick={() => setComparisonData({
-                              oldVersion: versions[index + 1],
-                              newVersion: version
-                            })}
+                            onClick={() => compareVersions(versions[index + 1], version)}
                             className="mt-2 px-3 py-1 text-xs bg-blue-600 text-white rounded hover:bg-blue-700"
                           >
                             Compare with v{versions[index + 1].versionNumber}
@@ -577,6 +577,15 @@ export default function DocumentDetail() {
                     </div>
                   </div>
                 ))}
+                {hasMoreVersions && (
+                  <button
+                    onClick={() => fetchMoreVersions()}
+                    disabled={isFetchingMoreVersions}
+                    className="w-full px-4 py-2 border border-gray-300 text-gray-700 rounded-md hover:bg-gray-50 text-sm disabled:opacity-50"
+                  >
+                    {isFetchingMoreVersions ? 'Loading...' : 'Load older versions'}
+                  </button>
+                )}
               </div>
             ) : (
               <p className="text-gray-500">No version history available</p>
@@ -759,7 +768,7 @@ export default function DocumentDetail() {
             <div className="grid grid-cols-2 gap-4 mb-6 text-sm">
               <div className="bg-red-50 p-3 rounded border border-red-200">
                 <p className="font-medium text-red-900">Version {comparisonData.oldVersion.versionNumber}</p>
-                <p className="text-gray-600">By {comparisonData.oldVersion.author?.name}</p>
+                <p className="text-gray-600">By {comparisonData.oldVersion.authorName}</p>
                 <p className="text-gray-600">{new Date(comparisonData.oldVersion.createdAt * 1000).toLocaleString()}</p>
                 {comparisonData.oldVersion.iotaTxId && (
                   <p className="text-xs text-green-600 mt-1">IOTA: {comparisonData.oldVersion.iotaTxId}</p>
@@ -767,7 +776,7 @@ export default function DocumentDetail() {
               </div>
               <div className="bg-green-50 p-3 rounded border border-green-200">
                 <p className="font-medium text-green-900">Version {comparisonData.newVersion.versionNumber}</p>
-                <p className="text-gray-600">By {comparisonData.newVersion.author?.name}</p>
+                <p className="text-gray-600">By {comparisonData.newVersion.authorName}</p>
                 <p className="text-gray-600">{new Date(comparisonData.newVersion.createdAt * 1000).toLocaleString()}</p>
                 {comparisonData.newVersion.iotaTxId && (
                   <p className="text-xs text-green-600 mt-1">IOTA: {comparisonData.newVersion.iotaTxId}</p>
@@ -775,18 +784,36 @@ export default function DocumentDetail() {
               </div>
             </div>
 
-            {/* Diff Viewer */}
-            <div className="border rounded-lg overflow-hidden">
-              <ReactDiffViewer
-                oldValue={extractContent(comparisonData.oldVersion.contentJson)}
-                newValue={extractContent(comparisonData.newVersion.contentJson)}
-                splitView={true}
-                showDiffOnly={false}
-                useDarkTheme={false}
-                leftTitle={`Version ${comparisonData.oldVersion.versionNumber}`}
-                rightTitle={`Version ${comparisonData.newVersion.versionNumber}`}
-              />
-            </div>
+            {/* Edit script */}
+            {comparisonData.diff.ops.length === 0 ? (
+              <p className="text-gray-500 italic">No differences between these versions.</p>
+            ) : (
+              <div className="space-y-3">
+                <p className="text-sm text-gray-600">
+                  {comparisonData.diff.opsCount} change{comparisonData.diff.opsCount === 1 ? '' : 's'}
+                </p>
+                {comparisonData.diff.ops.map((op, index) => (
+                  <div
+                    key={index}
+                    className={`border rounded-lg p-4 ${
+                      op.op === 'insert'
+                        ? 'bg-green-50 border-green-200'
+                        : op.op === 'remove'
+                          ? 'bg-red-50 border-red-200'
+                          : 'bg-blue-50 border-blue-200'
+                    }`}
+                  >
+                    <p className="text-xs font-semibold uppercase text-gray-700 mb-2">
+                      {op.op === 'update' && <>Updated {nodePath(op.to)}{op.from !== op.to && <> (was {nodePath(op.from)})</>}</>}
+                      {op.op === 'remove' && <>Removed {nodePath(op.from)}</>}
+                      {op.op === 'insert' && <>Inserted {nodePath(op.to)}</>}
+                    </p>
+                    {op.op === 'update' && op.content && renderContentTypeAware({ content: op.content })}
+                    {op.op === 'insert' && op.node && renderContentTypeAware(op.node)}
+                  </div>
+                ))}
+              </div>
+            )}
           </div>
         </div>
       )}
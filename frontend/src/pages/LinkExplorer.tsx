@@ -34,10 +34,7 @@ export default function LinkExplorer() {
   // Fetch all documents
   const { data: documents } = useQuery({
     queryKey: ['documents'],
-    queryFn: async () => {
-      const response = await documentApi.getAll();
-      return response.data;
-    },
+    queryFn: () => documentApi.getAll(),
   });
 
   // Fetch all links from all documents
@@ -24,10 +24,7 @@ export default function TransclusionGraph() {
   // Fetch all documents
   const { data: documents } = useQuery({
     queryKey: ['documents'],
-    queryFn: async () => {
-      const response = await documentApi.getAll();
-      return response.data;
-    },
+    queryFn: () => documentApi.getAll(),
   });
 
   // Fetch all transclusions
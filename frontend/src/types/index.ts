@@ -3,7 +3,8 @@ export type Role =
   | 'RESEARCHER'
   | 'HOSPITAL'
   | 'ETHICS_COMMITTEE'
-  | 'AUDITOR';
+  | 'AUDITOR'
+  | 'ADMIN';
 
 export type DocumentType =
   | 'PROTOCOL'
@@ -55,14 +56,33 @@ export interface Document {
   updatedAt: number; // Instant (epoch seconds)
 }
 
+// Version history entry; content is fetched on demand from /structure
 export interface DocumentVersion {
   id: string;
   versionNumber: number;
-  contentJson: Record<string, any>;
+  authorId: string;
+  authorName: string;
   contentHash: string;
-  author?: User;
-  createdAt: number; // Instant (epoch seconds)
   iotaTxId?: string;
+  notarizationStatus?: string;
+  parentVersionId?: string;
+  createdAt: number; // Instant (epoch seconds)
+}
+
+// Server-side edit script between two versions; paths are child indexes from the root ("" is the root)
+export interface VersionDiffOp {
+  op: 'update' | 'remove' | 'insert';
+  from?: string;
+  to?: string;
+  content?: Record<string, any>; // update: new content of the node
+  node?: Record<string, any>;    // insert: whole inserted subtree
+}
+
+export interface VersionDiff {
+  fromVersionId: string;
+  toVersionId: string;
+  ops: VersionDiffOp[];
+  opsCount: number;
 }
 
 export interface CreateDocumentRequest {